@@ -0,0 +1,33 @@
+package com.nameof.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * 支持异步访问的{@link CacheDao}，方法发出命令后立即返回，调用方可以在等待结果期间处理其他工作，
+ * 或者同时发出多个会话的读取命令.<br>
+ *
+ * 返回的{@link Future}在命令完成时由IO线程填充结果，可以通过{@link CacheFuture#getResult(Future)}获取
+ * @author ChengPan
+ */
+public interface AsyncCacheDao extends CacheDao {
+
+	Future<Map<String, Object>> getAllAttributeAsync(String key);
+
+	Future<Object> getAttributeAsync(String key, String fieldName);
+
+	Future<Boolean> existsAsync(String key);
+
+	Future<Long> getExpireAsync(String key);
+
+	Future<Void> setAllAttributesAsync(String key, Map<String, Object> attributes);
+
+	Future<Void> setAttributeAsync(String key, String fieldName, Object value);
+
+	Future<Void> removeAttributesAsync(String key, Collection<String> fieldNames);
+
+	Future<Void> setExpireAsync(String key, int expire);
+
+	Future<Void> delAsync(String key);
+}
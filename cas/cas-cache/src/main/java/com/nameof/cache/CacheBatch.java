@@ -0,0 +1,43 @@
+package com.nameof.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * 批量命令缓冲区，由{@link CacheDao#batch()}创建.<br>
+ *
+ * 调用各个方法时命令只会被缓存在本地，直到{@link #execute()}时才按顺序一次性发送到缓存中，
+ * 对于支持pipeline的实现只需要一次网络往返.<br>
+ *
+ * 读命令返回的{@link Future}在{@link #execute()}完成之后才可用，不要在execute之前调用其get方法.
+ *
+ * @author ChengPan
+ */
+public interface CacheBatch {
+
+	Future<Boolean> exists(String key);
+
+	Future<Map<String, Object>> getAllAttribute(String key);
+
+	Future<Object> getAttribute(String key, String fieldName);
+
+	void setAttribute(String key, String fieldName, Object value);
+
+	void setAllAttributes(String key, Map<String, Object> attributes);
+
+	void removeAttributes(String key, Collection<String> fieldNames);
+
+	void setExpire(String key, int expire);
+
+	void setPersist(String key);
+
+	void del(String key);
+
+	Future<Long> increment(String key, String fieldName, long delta);
+
+	/**
+	 * 发送缓冲区中的所有命令，并填充读命令的结果
+	 */
+	void execute();
+}
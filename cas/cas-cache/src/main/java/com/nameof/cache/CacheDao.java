@@ -33,4 +33,26 @@ public interface CacheDao {
 	void setPersist(String key);
 	
 	boolean exists(String key);
+	
+	/**
+	 * 将属性作为计数器原子地增加delta，属性不存在时从0开始计数.<br>
+	 * 计数器以十进制字符串存储，可以通过{@link #getAttribute(String, String)}读取为Long
+	 * @return 增加之后的值
+	 */
+	long increment(String key, String fieldName, long delta);
+	
+	/**
+	 * 创建批量命令缓冲区，缓冲的命令在{@link CacheBatch#execute()}时一次性发送
+	 * @return 新的批量命令缓冲区
+	 */
+	CacheBatch batch();
+	
+	/**
+	 * 在一次交互中提交会话的变更：写入新增或修改的属性，删除已移除的属性，并刷新过期时间
+	 * @param key
+	 * @param attributes 新增或修改的属性，可以为空
+	 * @param removedNames 已移除的属性名，可以为空
+	 * @param expire 过期时间，单位为秒，小于0则设置key永不过期
+	 */
+	void updateAttributes(String key, Map<String, Object> attributes, Collection<String> removedNames, int expire);
 }
@@ -0,0 +1,94 @@
+package com.nameof.cache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 由缓存实现在命令完成时填充结果的{@link Future}
+ * @author ChengPan
+ */
+public class CacheFuture<T> implements Future<T> {
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+
+	private volatile T value;
+
+	private volatile Throwable cause;
+
+	public static <T> CacheFuture<T> completed(T value) {
+		CacheFuture<T> future = new CacheFuture<>();
+		future.set(value);
+		return future;
+	}
+
+	/**
+	 * 获取已完成的批量命令结果，命令执行失败时抛出对应的运行时异常
+	 */
+	public static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for cache result", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("cache command failed", e.getCause());
+		}
+	}
+
+	public void set(T value) {
+		if (latch.getCount() > 0) {
+			this.value = value;
+			latch.countDown();
+		}
+	}
+
+	public void setException(Throwable cause) {
+		if (latch.getCount() > 0) {
+			this.cause = cause;
+			latch.countDown();
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return getValue();
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getValue();
+	}
+
+	private T getValue() throws ExecutionException {
+		if (cause != null) {
+			throw new ExecutionException(cause);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,27 @@
+package com.nameof.cache;
+
+import java.util.Collection;
+
+/**
+ * 支持一次交互加载会话的{@link CacheDao}，redis中由服务端的Lua脚本完成.<br>
+ *
+ * 加载时判断会话是否存在并读取属性，会话不存在时原子地创建会话并写入创建时间，
+ * 同一会话的并发请求得到相同的创建时间
+ * @author ChengPan
+ */
+public interface LoadableCacheDao extends CacheDao {
+
+	/**
+	 * 是否支持{@link #loadSession}，装饰器的支持情况取决于被装饰的实现
+	 */
+	boolean isLoadSupported();
+
+	/**
+	 * @param fieldNames 要读取的属性名，为null时读取全部属性
+	 * @param createTimeName 创建时间的属性名
+	 * @param createTime 会话不存在时写入的创建时间
+	 * @param expire 会话不存在时新会话的过期时间，单位为秒，小于0则永不过期
+	 */
+	SessionSnapshot loadSession(String key, Collection<String> fieldNames, String createTimeName,
+			Object createTime, int expire);
+}
@@ -0,0 +1,33 @@
+package com.nameof.cache;
+
+import java.util.Map;
+
+/**
+ * {@link LoadableCacheDao#loadSession}的结果：加载之前会话是否存在，以及读取到的属性
+ * @author ChengPan
+ */
+public class SessionSnapshot {
+
+	private final boolean existed;
+
+	private final Map<String, Object> attributes;
+
+	public SessionSnapshot(boolean existed, Map<String, Object> attributes) {
+		this.existed = existed;
+		this.attributes = attributes;
+	}
+
+	/**
+	 * @return false表示会话是本次加载时创建的
+	 */
+	public boolean isExisted() {
+		return existed;
+	}
+
+	/**
+	 * @return 读取到的属性，指定属性名时不存在的属性不包含在内
+	 */
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+}
@@ -0,0 +1,31 @@
+package com.nameof.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 支持带版本号提交会话变更的{@link CacheDao}.<br>
+ *
+ * 会话hash中的{@link #VERSION_KEY}是一个计数器，每次带版本号的提交原子地检查并加1，
+ * 提交方据此判断自加载会话之后是否有其他请求提交过同一会话
+ * @author ChengPan
+ */
+public interface VersionedCacheDao extends CacheDao {
+
+	/** 会话hash中的版本号属性，不存在时视为0 */
+	String VERSION_KEY = "@version";
+
+	/**
+	 * 是否支持带版本号提交，装饰器的支持情况取决于被装饰的实现
+	 */
+	boolean isVersioningSupported();
+
+	/**
+	 * 与{@link #updateAttributes(String, Map, Collection, int)}相同，同时原子地检查并增加版本号
+	 * @param expectedVersion 加载会话时读取到的版本号
+	 * @param force 为true时版本号不一致也写入（last-writer-wins），为false时不一致则放弃本次提交
+	 * @return 写入之后的版本号；force为false且版本号不一致时返回-1，不写入任何数据
+	 */
+	long updateAttributesVersioned(String key, Map<String, Object> attributes, Collection<String> removedNames,
+			int expire, long expectedVersion, boolean force);
+}
@@ -0,0 +1,373 @@
+package com.nameof.cache.affinity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.impl.AbstractCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+
+/**
+ * 会话粘滞（负载均衡按cookie将同一用户的请求转发到同一节点）时使用的{@link CacheDao}装饰器.<br>
+ *
+ * 节点第一次访问一个会话时从远程缓存加载全部属性，成为该会话的所有者，之后在本地保存权威的副本：
+ * 读取直接访问本地副本，写入先修改本地副本再写入远程缓存作为备份（远程缓存是
+ * {@link com.nameof.cache.writebehind.WriteBehindCacheDao}时异步写入）.<br>
+ *
+ * 成为所有者时通过{@link InvalidationChannel}通知其他节点，之前的所有者丢弃自己的副本；
+ * 节点宕机或负载均衡切换节点时，新节点从远程缓存加载并成为所有者，读不到前一个所有者尚未写入远程缓存的变更.
+ * 通知不保证送达，本地副本最多保存ttl秒，之后重新从远程缓存加载；订阅连接重建时丢弃全部副本.<br>
+ *
+ * 不是所有者时的写入直接交给远程缓存，不改变所有权.
+ * 副本中的属性值与会话共享引用，与{@link CacheDao}的其他实现一样，修改可变对象之后需要重新set
+ * @author ChengPan
+ */
+public class AffinityCacheDao extends AbstractCacheDao implements InvalidationChannel.Listener, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AffinityCacheDao.class);
+
+	private final CacheDao delegate;
+
+	private final InvalidationChannel channel;
+
+	private final long ttlMillis;
+
+	private final Map<String, OwnedSession> sessions;
+
+	/** 不是所有者时的写入在写入远程缓存前后各计数一次，加载期间计数改变时不保存副本，避免副本缺少该写入 */
+	private final AtomicLong unownedWrites = new AtomicLong();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong loadCount = new AtomicLong();
+
+	/**
+	 * @param delegate 远程缓存
+	 * @param channel 所有权变更的通知通道，可以为null
+	 * @param maxSize 本地最多保存的会话数，超过时淘汰最近最少使用的会话，被淘汰的会话下次访问时重新加载
+	 * @param ttl 本地副本的最长保存时间，单位为秒
+	 */
+	public AffinityCacheDao(CacheDao delegate, InvalidationChannel channel, final int maxSize, int ttl) {
+		this.delegate = delegate;
+		this.channel = channel;
+		this.ttlMillis = ttl * 1000L;
+		this.sessions = new LinkedHashMap<String, OwnedSession>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, OwnedSession> eldest) {
+				return size() > maxSize;
+			}
+		};
+		if (channel != null) {
+			channel.subscribe(this);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getAllAttribute(String key) {
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session != null) {
+				return new HashMap<>(session.attributes);
+			}
+		}
+		return load(key);
+	}
+
+	@Override
+	public Object getAttribute(String key, String fieldName) {
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session != null) {
+				return session.attributes.get(fieldName);
+			}
+		}
+		return load(key).get(fieldName);
+	}
+
+	@Override
+	public Collection<String> getAttributeKeys(String key) {
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session != null) {
+				return new HashSet<>(session.attributes.keySet());
+			}
+		}
+		return load(key).keySet();
+	}
+
+	@Override
+	public boolean exists(String key) {
+		synchronized (sessions) {
+			if (owned(key) != null) {
+				return true;
+			}
+		}
+		return !load(key).isEmpty();
+	}
+
+	@Override
+	public Long getExpire(String key) {
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session != null && session.expireTime != Long.MAX_VALUE) {
+				return (session.expireTime - System.currentTimeMillis()) / 1000;
+			}
+		}
+		return delegate.getExpire(key);
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		OwnedSession session;
+		synchronized (sessions) {
+			session = owned(key);
+			if (session == null) {
+				unownedWrites.incrementAndGet();
+			}
+			else {
+				session.attributes.putAll(attributes);
+			}
+		}
+		delegate.setAllAttributes(key, attributes);
+		if (session == null) {
+			unownedWrites.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		OwnedSession session;
+		synchronized (sessions) {
+			session = owned(key);
+			if (session == null) {
+				unownedWrites.incrementAndGet();
+			}
+			else {
+				session.attributes.put(fieldName, value);
+			}
+		}
+		delegate.setAttribute(key, fieldName, value);
+		if (session == null) {
+			unownedWrites.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void removeAttribute(String key, String fieldName) {
+		OwnedSession session;
+		synchronized (sessions) {
+			session = owned(key);
+			if (session == null) {
+				unownedWrites.incrementAndGet();
+			}
+			else {
+				session.attributes.remove(fieldName);
+			}
+		}
+		delegate.removeAttribute(key, fieldName);
+		if (session == null) {
+			unownedWrites.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		OwnedSession session;
+		synchronized (sessions) {
+			session = owned(key);
+			if (session == null) {
+				unownedWrites.incrementAndGet();
+			}
+			else {
+				if (removedNames != null) {
+					session.attributes.keySet().removeAll(removedNames);
+				}
+				if (attributes != null) {
+					session.attributes.putAll(attributes);
+				}
+				session.expire(expire);
+			}
+		}
+		delegate.updateAttributes(key, attributes, removedNames, expire);
+		if (session == null) {
+			unownedWrites.incrementAndGet();
+		}
+	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		unownedWrites.incrementAndGet();
+		long value = delegate.increment(key, fieldName, delta);
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session == null) {
+				unownedWrites.incrementAndGet();
+			}
+			else {
+				session.attributes.put(fieldName, value);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public void del(String key) {
+		synchronized (sessions) {
+			sessions.remove(key);
+			unownedWrites.incrementAndGet();
+		}
+		delegate.del(key);
+		unownedWrites.incrementAndGet();
+		publish(key);
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session != null) {
+				session.expire(expire);
+			}
+		}
+		delegate.setExpire(key, expire);
+	}
+
+	@Override
+	public void setPersist(String key) {
+		synchronized (sessions) {
+			OwnedSession session = owned(key);
+			if (session != null) {
+				session.expire(-1);
+			}
+		}
+		delegate.setPersist(key);
+	}
+
+	@Override
+	public void onInvalidate(String key) {
+		synchronized (sessions) {
+			sessions.remove(key);
+		}
+	}
+
+	@Override
+	public void onReset() {
+		synchronized (sessions) {
+			sessions.clear();
+		}
+	}
+
+	/**
+	 * 停止接收通知，并关闭远程缓存（如异步写入的装饰器）
+	 */
+	@Override
+	public void close() {
+		if (channel != null) {
+			channel.close();
+		}
+		if (delegate instanceof Closeable) {
+			try {
+				((Closeable) delegate).close();
+			} catch (IOException e) {
+				logger.warn("failed to close {}", delegate, e);
+			}
+		}
+	}
+
+	/**
+	 * 本地副本存在、未过期且未超过最长保存时间时返回副本，否则丢弃并返回null，调用方需持有sessions的锁
+	 */
+	private OwnedSession owned(String key) {
+		OwnedSession session = sessions.get(key);
+		if (session == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		if (now > session.expireTime || now > session.ownedUntil) {
+			sessions.remove(key);
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return session;
+	}
+
+	/**
+	 * 从远程缓存加载全部属性，会话存在时成为所有者并通知其他节点
+	 */
+	private Map<String, Object> load(String key) {
+		loadCount.incrementAndGet();
+		long writes = unownedWrites.get();
+		Map<String, Object> attributes = delegate.getAllAttribute(key);
+		if (attributes.isEmpty()) {
+			return attributes;
+		}
+		synchronized (sessions) {
+			//并发加载时不覆盖其他线程已保存的副本
+			if (unownedWrites.get() == writes && sessions.get(key) == null) {
+				sessions.put(key, new OwnedSession(new HashMap<>(attributes), System.currentTimeMillis() + ttlMillis));
+			}
+		}
+		publish(key);
+		return attributes;
+	}
+
+	private void publish(String key) {
+		if (channel != null) {
+			channel.publish(key);
+		}
+	}
+
+	/**
+	 * 访问本地副本的次数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * 从远程缓存加载的次数
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * 本节点拥有的会话数
+	 */
+	public int getOwnedCount() {
+		synchronized (sessions) {
+			return sessions.size();
+		}
+	}
+
+	private static class OwnedSession {
+
+		private final Map<String, Object> attributes;
+
+		private final long ownedUntil;
+
+		/** 会话的过期时间，加载时未知，之后按写入时的过期时间计算 */
+		private long expireTime = Long.MAX_VALUE;
+
+		OwnedSession(Map<String, Object> attributes, long ownedUntil) {
+			this.attributes = attributes;
+			this.ownedUntil = ownedUntil;
+		}
+
+		void expire(int expire) {
+			expireTime = expire < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + expire * 1000L;
+		}
+	}
+}
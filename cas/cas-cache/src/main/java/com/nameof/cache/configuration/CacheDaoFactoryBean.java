@@ -2,6 +2,7 @@ package com.nameof.cache.configuration;
 
 import org.redisson.Redisson;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.HashOperations;
@@ -13,6 +14,7 @@ import com.nameof.cache.CacheDao;
 import com.nameof.cache.impl.RedisCacheDao;
 import com.nameof.cache.impl.RedisTemplateCacheDao;
 import com.nameof.cache.impl.RedissonCacheDao;
+import com.nameof.common.redis.JedisTemplate;
 
 /**
  * 使用profile来选择缓存实现的另一种替代方式是使用FactoryBean
@@ -24,13 +26,16 @@ public class CacheDaoFactoryBean implements FactoryBean<CacheDao> {
 	@Value("${cache.dao}")
 	private String cacehDaoName;
 	
+	@Autowired
+	private JedisTemplate jedisTemplate;
+	
 	@Override
 	public CacheDao getObject() throws Exception {
 		switch (cacehDaoName) {
 			case "redisson":
 				return new RedissonCacheDao(Redisson.create());
 			case "redis":
-				return new RedisCacheDao();
+				return new RedisCacheDao(jedisTemplate);
 			case "redistemplate":
 				JedisConnectionFactory jcf = new JedisConnectionFactory();
 				JedisPoolConfig config = new JedisPoolConfig();
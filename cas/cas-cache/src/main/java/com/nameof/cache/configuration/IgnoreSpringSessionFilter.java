@@ -26,7 +26,8 @@ import com.nameof.common.constant.SessionAccessor;
  */
 @Component("springSessionRepositoryFilter")
 @Profile(value = {SessionAccessor.EHCACHE, SessionAccessor.MEMCACHED
-		, SessionAccessor.REDIS, SessionAccessor.REDIS_TEMPLATE, SessionAccessor.REDISSON})
+		, SessionAccessor.REDIS, SessionAccessor.REDIS_TEMPLATE, SessionAccessor.REDISSON
+		, SessionAccessor.LETTUCE, SessionAccessor.OFFHEAP})
 public class IgnoreSpringSessionFilter implements Filter {
 
 	@Override
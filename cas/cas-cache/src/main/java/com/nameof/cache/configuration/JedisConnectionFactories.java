@@ -0,0 +1,42 @@
+package com.nameof.cache.configuration;
+
+import java.util.HashSet;
+
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+
+import redis.clients.jedis.JedisPoolConfig;
+
+import com.nameof.common.redis.RedisTopology;
+
+/**
+ * 按{@link RedisTopology}创建spring-data-redis的连接工厂，供RedisTemplate和spring-session使用.<br>
+ *
+ * spring-data-redis的Jedis连接不支持从节点读取，redis.readFromReplica对这里创建的连接不生效
+ * @author ChengPan
+ */
+final class JedisConnectionFactories {
+
+	private JedisConnectionFactories() {
+	}
+
+	static JedisConnectionFactory create(RedisTopology topology, JedisPoolConfig poolConfig) {
+		JedisConnectionFactory factory;
+		switch (topology.getMode()) {
+			case CLUSTER:
+				factory = new JedisConnectionFactory(new RedisClusterConfiguration(topology.getNodes()), poolConfig);
+				break;
+			case SENTINEL:
+				factory = new JedisConnectionFactory(new RedisSentinelConfiguration(topology.getSentinelMaster(),
+						new HashSet<>(topology.getNodes())), poolConfig);
+				break;
+			default:
+				factory = new JedisConnectionFactory(poolConfig);
+				factory.setHostName(topology.getHost());
+				factory.setPort(topology.getPort());
+		}
+		factory.setUsePool(true);
+		return factory;
+	}
+}
@@ -0,0 +1,112 @@
+package com.nameof.cache.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import redis.clients.jedis.HostAndPort;
+
+import com.lambdaworks.redis.AbstractRedisClient;
+import com.lambdaworks.redis.RedisClient;
+import com.lambdaworks.redis.RedisClusterAsyncConnection;
+import com.lambdaworks.redis.RedisURI;
+import com.lambdaworks.redis.cluster.RedisClusterClient;
+import com.lambdaworks.redis.resource.ClientResources;
+import com.lambdaworks.redis.resource.DefaultClientResources;
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.impl.LettuceCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+import com.nameof.cache.near.LettuceInvalidationChannel;
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.cache.serializer.SessionSerializerRedisCodec;
+import com.nameof.common.constant.SessionAccessor;
+import com.nameof.common.enums.RedisModeEnum;
+import com.nameof.common.redis.RedisTopology;
+
+/**
+ * Lettuce只使用一个共享的异步连接，没有连接池配置；Lettuce 3.x不支持从节点读取，redis.readFromReplica不生效
+ * @author ChengPan
+ */
+@Configuration
+@Profile(SessionAccessor.LETTUCE)
+public class LettuceCacheDaoConfig extends NearCacheConfigSupport {
+	
+	@Autowired
+	private RedisTopology topology;
+	
+	@Autowired
+	private SessionSerializer serializer;
+	
+	@Value("${redis.timeout.socket:2000}")
+	private long timeoutMillis;
+	
+	@Bean
+	public ClientResources lettuceClientResources() {
+		return DefaultClientResources.create();
+	}
+	
+	@Bean
+	public AbstractRedisClient lettuceClient() {
+		if (topology.getMode() == RedisModeEnum.CLUSTER) {
+			List<RedisURI> seeds = new ArrayList<>();
+			for (HostAndPort node : topology.getHostAndPorts()) {
+				seeds.add(RedisURI.create(node.getHost(), node.getPort()));
+			}
+			return RedisClusterClient.create(lettuceClientResources(), seeds);
+		}
+		return RedisClient.create(lettuceClientResources(), redisUri());
+	}
+	
+	@Bean
+	public RedisClusterAsyncConnection<String, Object> lettuceConnection() {
+		SessionSerializerRedisCodec codec = new SessionSerializerRedisCodec(serializer);
+		AbstractRedisClient client = lettuceClient();
+		if (client instanceof RedisClusterClient) {
+			return ((RedisClusterClient) client).connectClusterAsync(codec);
+		}
+		return ((RedisClient) client).connectAsync(codec);
+	}
+	
+	@Bean
+	public CacheDao cacheDao() {
+		return nearCache(new LettuceCacheDao(lettuceConnection(), timeoutMillis));
+	}
+	
+	@Override
+	protected InvalidationChannel invalidationChannel() {
+		AbstractRedisClient client = lettuceClient();
+		if (client instanceof RedisClient) {
+			return new LettuceInvalidationChannel((RedisClient) client);
+		}
+		//集群中的消息会广播到所有节点，订阅任意一个种子节点即可
+		HostAndPort seed = topology.getHostAndPorts().iterator().next();
+		return new LettuceInvalidationChannel(RedisClient.create(lettuceClientResources(),
+				RedisURI.create(seed.getHost(), seed.getPort())));
+	}
+	
+	private RedisURI redisUri() {
+		RedisURI.Builder builder;
+		if (topology.getMode() == RedisModeEnum.SENTINEL) {
+			builder = null;
+			for (HostAndPort sentinel : topology.getHostAndPorts()) {
+				if (builder == null) {
+					builder = RedisURI.Builder.sentinel(sentinel.getHost(), sentinel.getPort(),
+							topology.getSentinelMaster());
+				}
+				else {
+					builder.withSentinel(sentinel.getHost(), sentinel.getPort());
+				}
+			}
+		}
+		else {
+			builder = RedisURI.Builder.redis(topology.getHost(), topology.getPort());
+		}
+		return builder.withTimeout(timeoutMillis, TimeUnit.MILLISECONDS).build();
+	}
+}
@@ -1,12 +1,16 @@
 package com.nameof.cache.configuration;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import com.nameof.cache.CacheDao;
+import com.nameof.cache.impl.AbstractMemcachedCacheDao;
+import com.nameof.cache.impl.MemcachedAttributeCacheDao;
 import com.nameof.cache.impl.MemcachedCacheDao;
+import com.nameof.cache.serializer.SessionSerializer;
 import com.nameof.common.constant.SessionAccessor;
 import com.whalin.MemCached.MemCachedClient;
 import com.whalin.MemCached.SockIOPool;
@@ -21,6 +25,18 @@ public class MemcachedCacheDaoConfig {
 	@Value("${memcached.port}")
 	private int memcachedPort;
 	
+	@Autowired
+	private SessionSerializer serializer;
+	
+	@Value("${memcached.expire:1800}")
+	private int defaultExpire;
+	
+	@Value("${memcached.cas.maxRetries:" + AbstractMemcachedCacheDao.DEFAULT_MAX_RETRIES + "}")
+	private int maxRetries;
+	
+	@Value("${memcached.perAttribute:false}")
+	private boolean perAttribute;
+	
 	@Bean
 	public MemCachedClient cacheClient() {
 		SockIOPool sockIOPool = SockIOPool.getInstance();  
@@ -31,6 +47,9 @@ public class MemcachedCacheDaoConfig {
 	
 	@Bean
 	public CacheDao cacheDao(MemCachedClient cacheClient) {
-		return new MemcachedCacheDao(cacheClient);
+		if (perAttribute) {
+			return new MemcachedAttributeCacheDao(cacheClient, serializer, defaultExpire, maxRetries);
+		}
+		return new MemcachedCacheDao(cacheClient, serializer, defaultExpire, maxRetries);
 	}
 }
@@ -0,0 +1,61 @@
+package com.nameof.cache.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.affinity.AffinityCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+import com.nameof.cache.near.NearCacheDao;
+import com.nameof.cache.writebehind.WriteBehindCacheDao;
+
+/**
+ * 远程缓存profile的公共配置，session.nearcache.enable开启时在{@link CacheDao}之前加入{@link NearCacheDao}；
+ * session.affinity.enable开启时改为加入{@link AffinityCacheDao}，并由{@link WriteBehindCacheDao}异步写入远程缓存
+ * @author ChengPan
+ */
+public abstract class NearCacheConfigSupport {
+	
+	@Value("${session.nearcache.enable:false}")
+	private boolean nearCacheEnable;
+	
+	@Value("${session.nearcache.size:10000}")
+	private int nearCacheSize;
+	
+	@Value("${session.nearcache.ttl:60}")
+	private int nearCacheTtl;
+	
+	@Value("${session.affinity.enable:false}")
+	private boolean affinityEnable;
+	
+	@Value("${session.affinity.size:10000}")
+	private int affinitySize;
+	
+	@Value("${session.affinity.ttl:600}")
+	private int affinityTtl;
+	
+	@Value("${session.writeBehind.queueSize:10000}")
+	private int writeBehindQueueSize;
+	
+	@Value("${session.writeBehind.threads:2}")
+	private int writeBehindThreads;
+	
+	@Value("${session.writeBehind.batchSize:64}")
+	private int writeBehindBatchSize;
+	
+	/**
+	 * 创建当前profile使用的失效通知通道
+	 */
+	protected abstract InvalidationChannel invalidationChannel();
+	
+	protected CacheDao nearCache(CacheDao cacheDao) {
+		if (affinityEnable) {
+			WriteBehindCacheDao writeBehind = new WriteBehindCacheDao(cacheDao, writeBehindQueueSize,
+					writeBehindThreads, writeBehindBatchSize);
+			return new AffinityCacheDao(writeBehind, invalidationChannel(), affinitySize, affinityTtl);
+		}
+		if (!nearCacheEnable) {
+			return cacheDao;
+		}
+		return new NearCacheDao(cacheDao, invalidationChannel(), nearCacheSize, nearCacheTtl);
+	}
+}
@@ -0,0 +1,46 @@
+package com.nameof.cache.configuration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.impl.OffHeapCacheDao;
+import com.nameof.cache.offheap.OffHeapStore;
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.common.constant.SessionAccessor;
+
+@Configuration
+@Profile(SessionAccessor.OFFHEAP)
+public class OffHeapCacheDaoConfig {
+
+	@Autowired
+	private SessionSerializer serializer;
+
+	@Value("${offheap.capacityMB:256}")
+	private long capacityMB;
+
+	@Value("${offheap.segments:16}")
+	private int segments;
+
+	@Value("${offheap.blockSize:256}")
+	private int blockSize;
+
+	@Value("${offheap.expire:1800}")
+	private int defaultExpire;
+
+	@Value("${offheap.sweepInterval:60}")
+	private int sweepInterval;
+
+	@Bean
+	public OffHeapStore offHeapStore() {
+		return new OffHeapStore(capacityMB * 1024 * 1024, segments, blockSize, sweepInterval);
+	}
+
+	@Bean
+	public CacheDao cacheDao(OffHeapStore offHeapStore) {
+		return new OffHeapCacheDao(offHeapStore, serializer, defaultExpire);
+	}
+}
@@ -1,19 +1,35 @@
 package com.nameof.cache.configuration;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import com.nameof.cache.CacheDao;
 import com.nameof.cache.impl.RedisCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+import com.nameof.cache.near.JedisInvalidationChannel;
+import com.nameof.cache.serializer.SessionSerializer;
 import com.nameof.common.constant.SessionAccessor;
+import com.nameof.common.redis.JedisTemplate;
 
 @Configuration
 @Profile(SessionAccessor.REDIS)
-public class RedisCacheDaoConfig {
+public class RedisCacheDaoConfig extends NearCacheConfigSupport {
+	
+	@Autowired
+	private SessionSerializer serializer;
+	
+	@Autowired
+	private JedisTemplate jedisTemplate;
 	
 	@Bean
 	public CacheDao cacheDao() {
-		return new RedisCacheDao();
+		return nearCache(new RedisCacheDao(jedisTemplate, serializer));
+	}
+	
+	@Override
+	protected InvalidationChannel invalidationChannel() {
+		return new JedisInvalidationChannel(jedisTemplate);
 	}
 }
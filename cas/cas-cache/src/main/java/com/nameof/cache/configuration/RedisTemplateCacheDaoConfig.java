@@ -1,53 +1,49 @@
 package com.nameof.cache.configuration;
 
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import redis.clients.jedis.JedisPoolConfig;
 
 import com.nameof.cache.CacheDao;
 import com.nameof.cache.impl.RedisTemplateCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+import com.nameof.cache.near.RedisTemplateInvalidationChannel;
+import com.nameof.cache.serializer.SessionRedisSerializer;
+import com.nameof.cache.serializer.SessionSerializer;
 import com.nameof.common.constant.SessionAccessor;
-import com.nameof.common.enums.DataFormatEnum;
+import com.nameof.common.enums.RedisModeEnum;
+import com.nameof.common.redis.RedisTopology;
 
 @Configuration
 @Profile(SessionAccessor.REDIS_TEMPLATE)
-public class RedisTemplateCacheDaoConfig {
+public class RedisTemplateCacheDaoConfig extends NearCacheConfigSupport {
 	
-	@Value("${redis.host}")
-	private String redisHost;
+	@Autowired
+	private RedisTopology topology;
 	
-	@Value("${redis.port}")
-	private int redisPort;
-	
-	@Value("${session.format}")
-	private DataFormatEnum format = DataFormatEnum.BINARY;
+	@Autowired
+	private SessionSerializer serializer;
 	
 	@Bean
 	public JedisConnectionFactory jedisConnectionFactory() {
-		JedisConnectionFactory jcf = new JedisConnectionFactory();
-		JedisPoolConfig config = new JedisPoolConfig();
-		jcf.setPoolConfig(config);
-		jcf.setUsePool(true);
-		jcf.setHostName(redisHost);
-		jcf.setPort(redisPort);
-		return jcf;
+		return JedisConnectionFactories.create(topology, new JedisPoolConfig());
 	}
 	
 	@Bean
 	public RedisTemplate<String, Object> redisTemplate(JedisConnectionFactory jcf) {
 		RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
 		redisTemplate.setConnectionFactory(jcf);
-		//default use jdk serialize
-		if (format == DataFormatEnum.JSON) {
-			redisTemplate.setDefaultSerializer(new GenericJackson2JsonRedisSerializer());
-		}
+		//key和属性名使用字符串，与RedisCacheDao写入的数据结构保持一致
+		redisTemplate.setKeySerializer(new StringRedisSerializer());
+		redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+		redisTemplate.setDefaultSerializer(new SessionRedisSerializer(serializer));
 		redisTemplate.afterPropertiesSet();
 		return redisTemplate;
 	}
@@ -55,6 +51,13 @@ public class RedisTemplateCacheDaoConfig {
 	@Bean
 	public CacheDao cacheDao(RedisTemplate<String, Object> redisTemplate) {
 		HashOperations<String, String, Object> opsForHash = redisTemplate.opsForHash();
-		return new RedisTemplateCacheDao(redisTemplate, opsForHash);
+		//集群连接不支持pipeline，批量命令逐条执行
+		boolean pipelined = topology.getMode() != RedisModeEnum.CLUSTER;
+		return nearCache(new RedisTemplateCacheDao(redisTemplate, opsForHash, pipelined));
+	}
+	
+	@Override
+	protected InvalidationChannel invalidationChannel() {
+		return new RedisTemplateInvalidationChannel(redisTemplate(jedisConnectionFactory()));
 	}
 }
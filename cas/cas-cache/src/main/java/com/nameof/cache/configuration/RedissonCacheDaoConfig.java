@@ -2,44 +2,66 @@ package com.nameof.cache.configuration;
 
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
-import org.redisson.codec.JsonJacksonCodec;
+import org.redisson.config.ClusterServersConfig;
 import org.redisson.config.Config;
-import org.springframework.beans.factory.annotation.Value;
+import org.redisson.config.ReadMode;
+import org.redisson.config.SentinelServersConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import com.nameof.cache.CacheDao;
 import com.nameof.cache.impl.RedissonCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+import com.nameof.cache.near.RedissonInvalidationChannel;
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.cache.serializer.SessionSerializerCodec;
 import com.nameof.common.constant.SessionAccessor;
-import com.nameof.common.enums.DataFormatEnum;
+import com.nameof.common.redis.RedisTopology;
 
 @Configuration
 @Profile(SessionAccessor.REDISSON)
-public class RedissonCacheDaoConfig {
+public class RedissonCacheDaoConfig extends NearCacheConfigSupport {
 	
-	@Value("${redis.host}")
-	private String redisHost;
+	@Autowired
+	private RedisTopology topology;
 	
-	@Value("${redis.port}")
-	private int redisPort;
-	
-	@Value("${session.format}")
-	private DataFormatEnum format = DataFormatEnum.BINARY;
+	@Autowired
+	private SessionSerializer serializer;
 	
 	@Bean
 	public RedissonClient redisson() {
 		Config config = new Config();
-		config.useSingleServer().setAddress(String.format("redis://%s:%d", redisHost, redisPort));
+		//开启从节点读取时，读命令发往从节点，写命令仍然发往主节点
+		ReadMode readMode = topology.isReadFromReplica() ? ReadMode.SLAVE : ReadMode.MASTER;
+		switch (topology.getMode()) {
+			case CLUSTER:
+				ClusterServersConfig cluster = config.useClusterServers().setReadMode(readMode);
+				for (String node : topology.getNodes()) {
+					cluster.addNodeAddress("redis://" + node);
+				}
+				break;
+			case SENTINEL:
+				SentinelServersConfig sentinel = config.useSentinelServers()
+						.setMasterName(topology.getSentinelMaster()).setReadMode(readMode);
+				for (String node : topology.getNodes()) {
+					sentinel.addSentinelAddress("redis://" + node);
+				}
+				break;
+			default:
+				config.useSingleServer().setAddress(String.format("redis://%s:%d", topology.getHost(), topology.getPort()));
+		}
 		return Redisson.create(config);
 	}
 	
 	@Bean
 	public CacheDao cacheDao(RedissonClient client) {
-		if (format == DataFormatEnum.JSON) {
-			//json则使用redisson默认的Jackson
-			return new RedissonCacheDao(client, new JsonJacksonCodec());
-		}
-		return new RedissonCacheDao(client);
+		return nearCache(new RedissonCacheDao(client, new SessionSerializerCodec(serializer)));
+	}
+	
+	@Override
+	protected InvalidationChannel invalidationChannel() {
+		return new RedissonInvalidationChannel(redisson());
 	}
 }
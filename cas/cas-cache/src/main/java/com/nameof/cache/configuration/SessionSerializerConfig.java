@@ -0,0 +1,36 @@
+package com.nameof.cache.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.cache.serializer.SessionSerializers;
+import com.nameof.cache.serializer.SizeAwareSessionSerializer;
+import com.nameof.common.enums.DataFormatEnum;
+
+/**
+ * 各{@link com.nameof.cache.CacheDao}实现共享的属性值序列化方式：session.format对应的序列化，
+ * 外层按大小压缩、告警和限制
+ * @author ChengPan
+ */
+@Configuration
+public class SessionSerializerConfig {
+
+	@Value("${session.format}")
+	private DataFormatEnum format = DataFormatEnum.BINARY;
+
+	@Value("${session.compress.threshold:0}")
+	private int compressThreshold;
+
+	@Value("${session.attribute.warnSize:0}")
+	private int warnSize;
+
+	@Value("${session.attribute.maxSize:0}")
+	private int maxSize;
+
+	@Bean
+	public SessionSerializer sessionSerializer() {
+		return new SizeAwareSessionSerializer(SessionSerializers.of(format), compressThreshold, warnSize, maxSize);
+	}
+}
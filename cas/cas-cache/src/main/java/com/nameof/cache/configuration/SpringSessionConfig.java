@@ -1,5 +1,6 @@
 package com.nameof.cache.configuration;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
@@ -12,9 +13,14 @@ import org.springframework.session.web.context.AbstractHttpSessionApplicationIni
 import org.springframework.session.web.http.CookieSerializer;
 import org.springframework.session.web.http.DefaultCookieSerializer;
 
+import redis.clients.jedis.JedisPoolConfig;
+
+import com.nameof.cache.serializer.SessionRedisSerializer;
+import com.nameof.cache.serializer.SessionSerializers;
 import com.nameof.common.constant.Constants;
 import com.nameof.common.constant.SessionAccessor;
 import com.nameof.common.enums.DataFormatEnum;
+import com.nameof.common.redis.RedisTopology;
 /**
  * 这里默认集成redis，除此之外，spring-session还支持
  * org.redisson.spring.session.config.EnableRedissonHttpSession
@@ -28,21 +34,15 @@ import com.nameof.common.enums.DataFormatEnum;
 @Profile(SessionAccessor.SPRING_SESSION)
 public class SpringSessionConfig extends AbstractHttpSessionApplicationInitializer {
 	
-	@Value("${redis.host}")
-	private String redisHost;
-	
-	@Value("${redis.port}")
-	private int redisPort;
+	@Autowired
+	private RedisTopology topology;
 	
 	@Value("${session.format}")
 	private DataFormatEnum format = DataFormatEnum.BINARY;
 	
 	@Bean
     public JedisConnectionFactory connectionFactory() {
-        JedisConnectionFactory factory = new JedisConnectionFactory();
-        factory.setHostName(redisHost);
-        factory.setPort(redisPort);
-        return factory;
+        return JedisConnectionFactories.create(topology, new JedisPoolConfig());
     }
 	
 	@Bean(name = "springSessionDefaultRedisSerializer")
@@ -50,6 +50,9 @@ public class SpringSessionConfig extends AbstractHttpSessionApplicationInitializ
         switch (format) {
 			case JSON:
 				return new GenericJackson2JsonRedisSerializer();
+			case FST:
+			case KRYO:
+				return new SessionRedisSerializer(SessionSerializers.of(format));
 			default:
 				return new JdkSerializationRedisSerializer();
 		}
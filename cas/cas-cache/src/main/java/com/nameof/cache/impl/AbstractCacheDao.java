@@ -0,0 +1,39 @@
+package com.nameof.cache.impl;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheDao;
+
+/**
+ * {@link CacheDao}的基础实现，默认使用逐条执行的{@link SimpleCacheBatch}，
+ * 并基于{@link #batch()}实现会话变更的批量提交
+ * @author ChengPan
+ */
+public abstract class AbstractCacheDao implements CacheDao {
+
+	@Override
+	public CacheBatch batch() {
+		return new SimpleCacheBatch(this);
+	}
+
+	@Override
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		CacheBatch batch = batch();
+		if (attributes != null && !attributes.isEmpty()) {
+			batch.setAllAttributes(key, attributes);
+		}
+		if (removedNames != null && !removedNames.isEmpty()) {
+			batch.removeAttributes(key, removedNames);
+		}
+		if (expire < 0) {
+			batch.setPersist(key);
+		}
+		else {
+			batch.setExpire(key, expire);
+		}
+		batch.execute();
+	}
+}
@@ -0,0 +1,120 @@
+package com.nameof.cache.impl;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nameof.cache.serializer.SessionSerializer;
+import com.schooner.MemCached.MemcachedItem;
+import com.whalin.MemCached.MemCachedClient;
+
+/**
+ * memcached实现的公共部分：基于gets/cas的读-改-写和过期时间的换算.<br>
+ *
+ * 所有写入都携带过期时间，新建的key使用defaultExpire，已有的key沿用值中记录的过期时间；
+ * Memcached-Java-Client没有提供touch命令，刷新过期时间通过cas以新的过期时间重新写入原值实现
+ * @author ChengPan
+ */
+public abstract class AbstractMemcachedCacheDao extends AbstractCacheDao {
+
+	/** memcached中超过30天的过期时间会被当作unix时间戳 */
+	private static final int MAX_RELATIVE_EXPIRE = 60 * 60 * 24 * 30;
+
+	/** cas冲突的最大重试次数 */
+	public static final int DEFAULT_MAX_RETRIES = 16;
+
+	protected final MemCachedClient cachedClient;
+
+	protected final SessionSerializer serializer;
+
+	protected final int defaultExpire;
+
+	private final int maxRetries;
+
+	private final AtomicLong casConflictCount = new AtomicLong();
+
+	/**
+	 * @param defaultExpire 新建会话的过期时间，单位为秒，在第一次setExpire之前写入的数据使用
+	 * @param maxRetries cas冲突的最大重试次数，超过后抛出{@link IllegalStateException}
+	 */
+	protected AbstractMemcachedCacheDao(MemCachedClient cachedClient, SessionSerializer serializer,
+			int defaultExpire, int maxRetries) {
+		this.cachedClient = cachedClient;
+		this.serializer = serializer;
+		this.defaultExpire = defaultExpire;
+		this.maxRetries = maxRetries;
+	}
+
+	@Override
+	public Long getExpire(String key) {
+		//memcached不提供剩余生存时间的查询
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void setPersist(String key) {
+		setExpire(key, -1);
+	}
+
+	/**
+	 * 冲突次数，用于观察同一会话的并发写入情况
+	 */
+	public long getCasConflictCount() {
+		return casConflictCount.get();
+	}
+
+	/**
+	 * 对key执行gets/cas读-改-写，key不存在时使用add，与其他写入冲突时重新读取并重试
+	 */
+	protected void compareAndSet(String key, CasUpdate update) {
+		for (int i = 0; i < maxRetries; i++) {
+			MemcachedItem item = cachedClient.gets(key);
+			if (!update.apply(item == null ? null : item.getValue())) {
+				return;
+			}
+			Date expiry = expiry(update.expire);
+			boolean stored = item == null ? cachedClient.add(key, update.value, expiry)
+					: cachedClient.cas(key, update.value, expiry, item.getCasUnique());
+			if (stored) {
+				return;
+			}
+			casConflictCount.incrementAndGet();
+		}
+		throw new IllegalStateException("too many concurrent modifications of " + key);
+	}
+
+	/**
+	 * 将过期秒数转换为Memcached-Java-Client使用的Date，小于等于0表示永不过期
+	 */
+	protected static Date expiry(int expire) {
+		if (expire <= 0) {
+			return new Date(0);
+		}
+		if (expire > MAX_RELATIVE_EXPIRE) {
+			return new Date((System.currentTimeMillis() / 1000 + expire) * 1000);
+		}
+		return new Date(expire * 1000L);
+	}
+
+	/**
+	 * CacheDao的expire参数小于0表示永不过期，memcached中使用0表示
+	 */
+	protected static int toMemcachedExpire(int expire) {
+		return expire < 0 ? 0 : expire;
+	}
+
+	/**
+	 * 一次读-改-写，apply根据当前值设置要写入的value和expire
+	 */
+	protected abstract static class CasUpdate {
+
+		protected byte[] value;
+
+		protected int expire;
+
+		/**
+		 * @param current 当前存储的值，key不存在时为null
+		 * @return false表示不需要写入
+		 */
+		protected abstract boolean apply(Object current);
+	}
+}
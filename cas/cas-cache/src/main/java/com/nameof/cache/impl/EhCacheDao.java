@@ -1,91 +1,71 @@
 package com.nameof.cache.impl;
 
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 
-import com.nameof.cache.CacheDao;
+import com.nameof.cache.VersionedCacheDao;
+
+/**
+ * 进程内的ehcache实现，每个会话对应一个{@link Element}.<br>
+ *
+ * Element中保存的属性Map创建后不再修改，所有写操作都复制一份新的Map，
+ * 通过{@link Cache#putIfAbsent(Element)}和{@link Cache#replace(Element, Element)}原子地替换，
+ * 替换失败说明会话已被并发修改，重新读取后重试，同一会话的并发请求不会丢失更新；
+ * 读操作返回的属性集合是不可变的快照，不受之后修改的影响.<br>
+ *
+ * 过期时间是Element的属性，修改过期时间同样以新的Element替换，而不是修改已存入缓存的Element；
+ * 带版本号的提交在同一次替换中检查并增加版本号
+ * @author ChengPan
+ */
+public class EhCacheDao extends AbstractCacheDao implements VersionedCacheDao {
+
+	/** 并发修改的最大重试次数 */
+	private static final int MAX_RETRIES = 64;
+
+	/** 不修改过期时间 */
+	private static final int KEEP_EXPIRE = Integer.MIN_VALUE;
 
-public class EhCacheDao implements CacheDao {
-	
 	private Cache cache;
 
 	public EhCacheDao(Cache cache) {
 		this.cache = cache;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public Map<String, Object> getAllAttribute(String key) {
-		Element element = cache.get(key);
-		if (element == null) {
-			return Collections.emptyMap();
-		}
-		Map<String, Object> map = (Map<String, Object>) element.getObjectValue();
-		return map;
+		return new HashMap<>(attributes(cache.get(key)));
 	}
 
 	@Override
 	public void setAllAttributes(String key, Map<String, Object> attributes) {
-		Element element = cache.get(key);
-		if (element == null) {
-			Map<String, Object> map = new ConcurrentHashMap<>(attributes);
-			cache.put(new Element(key, map));
-		} else {
-			@SuppressWarnings("unchecked")
-			Map<String, Object> map = (Map<String, Object>) element.getObjectValue();
-			map.putAll(attributes);
-		}
+		update(key, attributes, null, KEEP_EXPIRE);
 	}
 
 	@Override
 	public Object getAttribute(String key, String fieldName) {
-		Element element = cache.get(key);
-		if (element == null) {
-			return null;
-		}
-		@SuppressWarnings("unchecked")
-		Map<String, Object> map = (Map<String, Object>) element.getObjectValue();
-		return map.get(fieldName);
+		return attributes(cache.get(key)).get(fieldName);
 	}
 
 	@Override
 	public void setAttribute(String key, String fieldName, Object value) {
-		Element element = cache.get(key);
-		if (element == null) {
-			Map<String, Object> map = new ConcurrentHashMap<>();
-			map.put(fieldName, value);
-			cache.put(new Element(key, map));
-		} else {
-			@SuppressWarnings("unchecked")
-			Map<String, Object> map = (Map<String, Object>) element.getObjectValue();
-			map.put(fieldName, value);
-		}
+		update(key, Collections.singletonMap(fieldName, value), null, KEEP_EXPIRE);
 	}
 
 	@Override
 	public void removeAttribute(String key, String fieldName) {
-		Element element = cache.get(key);
-		if (element != null) {
-			@SuppressWarnings("unchecked")
-			Map<String, Object> map = (Map<String, Object>) element.getObjectValue();
-			map.remove(fieldName);
-		}
+		update(key, null, Collections.singleton(fieldName), KEEP_EXPIRE);
 	}
 
 	@Override
 	public Collection<String> getAttributeKeys(String key) {
-		Element element = cache.get(key);
-		if (element == null) {
-			return Collections.emptySet();
-		}
-		@SuppressWarnings("unchecked")
-		Map<String, Object> map = (Map<String, Object>) element.getObjectValue();
-		return map.keySet();
+		//Map不会再被修改，直接返回其不可变视图即可
+		return Collections.unmodifiableSet(attributes(cache.get(key)).keySet());
 	}
 
 	@Override
@@ -95,31 +75,169 @@ public class EhCacheDao implements CacheDao {
 
 	@Override
 	public void setExpire(String key, int expire) {
-		Element element = cache.get(key);
-		if (element != null) {
-			element.setTimeToIdle(expire);
-		}
+		update(key, null, null, expire);
 	}
 
 	@Override
 	public Long getExpire(String key) {
 		Element element = cache.get(key);
-		if (element != null) {
-			return (long) element.getTimeToIdle();
+		if (element == null) {
+			return -2L;
+		}
+		long expirationTime = element.getExpirationTime();
+		if (expirationTime == Long.MAX_VALUE) {
+			return -1L;
 		}
-		return -2L;
+		return Math.max(expirationTime - System.currentTimeMillis(), 0) / 1000;
 	}
 
 	@Override
 	public void setPersist(String key) {
-		Element element = cache.get(key);
-		if (element != null) {
-			element.setEternal(true);
-		}
+		update(key, null, null, -1);
 	}
 
 	@Override
 	public boolean exists(String key) {
 		return cache.get(key) != null;
 	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		for (int i = 0; i < MAX_RETRIES; i++) {
+			Element element = cache.get(key);
+			Map<String, Object> map = new HashMap<>(attributes(element));
+			Number value = (Number) map.get(fieldName);
+			long result = (value == null ? 0 : value.longValue()) + delta;
+			map.put(fieldName, result);
+			if (replace(key, element, map, KEEP_EXPIRE)) {
+				return result;
+			}
+		}
+		throw new IllegalStateException("too many concurrent modifications of " + key);
+	}
+
+	@Override
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		update(key, attributes, removedNames, expire);
+	}
+
+	@Override
+	public boolean isVersioningSupported() {
+		return true;
+	}
+
+	@Override
+	public long updateAttributesVersioned(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire, long expectedVersion, boolean force) {
+		for (int i = 0; i < MAX_RETRIES; i++) {
+			Element element = cache.get(key);
+			Map<String, Object> map = new HashMap<>(attributes(element));
+			Number current = (Number) map.get(VERSION_KEY);
+			long version = current == null ? 0 : current.longValue();
+			if (!force && version != expectedVersion) {
+				return -1;
+			}
+			if (attributes != null) {
+				map.putAll(attributes);
+			}
+			if (removedNames != null) {
+				map.keySet().removeAll(removedNames);
+			}
+			map.put(VERSION_KEY, version + 1);
+			if (replace(key, element, map, expire)) {
+				return version + 1;
+			}
+		}
+		throw new IllegalStateException("too many concurrent modifications of " + key);
+	}
+
+	/**
+	 * 在一次读-改-替换中合并属性的写入、删除和过期时间的修改.<br>
+	 * key不存在时只有写入属性才会创建，仅删除属性或修改过期时间不会创建空会话
+	 */
+	private void update(String key, Map<String, Object> attributes, Collection<String> removedNames, int expire) {
+		boolean hasPuts = attributes != null && !attributes.isEmpty();
+		for (int i = 0; i < MAX_RETRIES; i++) {
+			Element element = cache.get(key);
+			if (element == null && !hasPuts) {
+				return;
+			}
+			Map<String, Object> map = attributes(element);
+			if (hasPuts || (removedNames != null && !removedNames.isEmpty())) {
+				map = new HashMap<>(map);
+				if (hasPuts) {
+					map.putAll(attributes);
+				}
+				if (removedNames != null) {
+					map.keySet().removeAll(removedNames);
+				}
+			}
+			if (replace(key, element, map, expire)) {
+				return;
+			}
+		}
+		throw new IllegalStateException("too many concurrent modifications of " + key);
+	}
+
+	/**
+	 * 以新的Element原子地替换读取到的element
+	 * @param element 读取到的Element，为null表示期望key不存在
+	 * @param expire 空闲过期时间，单位为秒，小于0表示永不过期，{@link #KEEP_EXPIRE}表示沿用原有的过期设置
+	 * @return false表示读取之后会话已被修改或删除
+	 */
+	private boolean replace(String key, Element element, Map<String, Object> map, int expire) {
+		Element updated = newElement(key, element, new Attributes(map), expire);
+		if (element == null) {
+			return cache.putIfAbsent(updated) == null;
+		}
+		return cache.replace(element, updated);
+	}
+
+	private static Element newElement(String key, Element previous, Attributes value, int expire) {
+		Element element = new Element(key, value);
+		if (expire == KEEP_EXPIRE) {
+			if (previous == null || previous.usesCacheDefaultLifespan()) {
+				return element;
+			}
+			if (previous.isEternal()) {
+				element.setEternal(true);
+			}
+			else {
+				element.setTimeToIdle(previous.getTimeToIdle());
+				element.setTimeToLive(previous.getTimeToLive());
+			}
+			return element;
+		}
+		if (expire < 0) {
+			element.setEternal(true);
+			return element;
+		}
+		//只设置空闲过期时间，每次读取都会重新计时
+		element.setTimeToIdle(expire);
+		element.setTimeToLive(0);
+		return element;
+	}
+
+	private static Map<String, Object> attributes(Element element) {
+		if (element == null) {
+			return Collections.emptyMap();
+		}
+		return ((Attributes) element.getObjectValue()).map;
+	}
+
+	/**
+	 * Element的值，equals使用对象标识，{@link Cache#replace(Element, Element)}只在缓存中仍是读取到的那个值时才替换，
+	 * 内容相同的两次修改也不会互相覆盖
+	 */
+	private static final class Attributes implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final Map<String, Object> map;
+
+		Attributes(Map<String, Object> map) {
+			this.map = map;
+		}
+	}
 }
@@ -0,0 +1,195 @@
+package com.nameof.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.lambdaworks.redis.RedisClusterAsyncConnection;
+import com.lambdaworks.redis.RedisFuture;
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * 基于Lettuce异步连接的批量命令实现，execute时连续发出所有命令而不等待回复，
+ * 命令在共享连接上形成pipeline，之后统一等待所有回复
+ * @author ChengPan
+ */
+class LettuceCacheBatch implements CacheBatch {
+
+	private final RedisClusterAsyncConnection<String, Object> connection;
+
+	private final long timeoutMillis;
+
+	private final List<Command<?>> commands = new ArrayList<>();
+
+	LettuceCacheBatch(RedisClusterAsyncConnection<String, Object> connection, long timeoutMillis) {
+		this.connection = connection;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Future<Boolean> exists(final String key) {
+		return add(new Command<Boolean>(false) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.exists(new String[]{key});
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			void complete() {
+				LettuceFutures.completeExists((RedisFuture<Long>) send(), future);
+			}
+		});
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(final String key) {
+		return add(new Command<Map<String, Object>>(false) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.hgetall(key);
+			}
+		});
+	}
+
+	@Override
+	public Future<Object> getAttribute(final String key, final String fieldName) {
+		return add(new Command<Object>(false) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.hget(key, fieldName);
+			}
+		});
+	}
+
+	@Override
+	public void setAttribute(final String key, final String fieldName, final Object value) {
+		add(new Command<Void>(true) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.hset(key, fieldName, value);
+			}
+		});
+	}
+
+	@Override
+	public void setAllAttributes(final String key, final Map<String, Object> attributes) {
+		if (attributes.isEmpty()) {
+			return;
+		}
+		add(new Command<Void>(true) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.hmset(key, attributes);
+			}
+		});
+	}
+
+	@Override
+	public void removeAttributes(final String key, final Collection<String> fieldNames) {
+		if (fieldNames.isEmpty()) {
+			return;
+		}
+		add(new Command<Void>(true) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.hdel(key, fieldNames.toArray(new String[fieldNames.size()]));
+			}
+		});
+	}
+
+	@Override
+	public void setExpire(final String key, final int expire) {
+		add(new Command<Void>(true) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.expire(key, expire);
+			}
+		});
+	}
+
+	@Override
+	public void setPersist(final String key) {
+		add(new Command<Void>(true) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.persist(key);
+			}
+		});
+	}
+
+	@Override
+	public void del(final String key) {
+		add(new Command<Void>(true) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.del(key);
+			}
+		});
+	}
+
+	@Override
+	public Future<Long> increment(final String key, final String fieldName, final long delta) {
+		return add(new Command<Long>(false) {
+			@Override
+			RedisFuture<?> send() {
+				return connection.hincrby(key, fieldName, delta);
+			}
+		});
+	}
+
+	@Override
+	public void execute() {
+		if (commands.isEmpty()) {
+			return;
+		}
+		try {
+			for (Command<?> command : commands) {
+				command.complete();
+			}
+			RuntimeException error = null;
+			for (Command<?> command : commands) {
+				try {
+					LettuceFutures.await(command.future, timeoutMillis);
+				} catch (RuntimeException e) {
+					if (error == null) {
+						error = e;
+					}
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		} finally {
+			commands.clear();
+		}
+	}
+
+	private <T> Future<T> add(Command<T> command) {
+		commands.add(command);
+		return command.future;
+	}
+
+	private abstract static class Command<T> {
+
+		final CacheFuture<T> future = new CacheFuture<>();
+
+		private final boolean discard;
+
+		Command(boolean discard) {
+			this.discard = discard;
+		}
+
+		abstract RedisFuture<?> send();
+
+		/**
+		 * 发出命令，回复到达时完成future
+		 */
+		void complete() {
+			LettuceFutures.complete(send(), future, discard);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.nameof.cache.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.lambdaworks.redis.RedisClusterAsyncConnection;
+import com.nameof.cache.AsyncCacheDao;
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * 基于Lettuce的缓存数据访问层，所有线程共享一个线程安全的异步连接，
+ * 并发请求的命令在同一个连接上连续写出，不需要连接池.<br>
+ *
+ * 同步方法在发出命令后等待结果，最长等待timeoutMillis；异步方法立即返回，
+ * 属性值的序列化方式由连接的codec决定，见{@link com.nameof.cache.serializer.SessionSerializerRedisCodec}
+ * @author ChengPan
+ */
+public class LettuceCacheDao extends AbstractCacheDao implements AsyncCacheDao {
+
+	private final RedisClusterAsyncConnection<String, Object> connection;
+
+	private final long timeoutMillis;
+
+	/**
+	 * @param connection 单机、哨兵连接或集群连接
+	 * @param timeoutMillis 同步方法等待结果的最长时间，单位为毫秒
+	 */
+	public LettuceCacheDao(RedisClusterAsyncConnection<String, Object> connection, long timeoutMillis) {
+		this.connection = connection;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	@Override
+	public Map<String, Object> getAllAttribute(String key) {
+		return await(getAllAttributeAsync(key));
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		await(setAllAttributesAsync(key, attributes));
+	}
+
+	@Override
+	public Object getAttribute(String key, String fieldName) {
+		return await(getAttributeAsync(key, fieldName));
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		await(setAttributeAsync(key, fieldName, value));
+	}
+
+	@Override
+	public void removeAttribute(String key, String fieldName) {
+		await(LettuceFutures.discardResult(connection.hdel(key, fieldName)));
+	}
+
+	@Override
+	public Collection<String> getAttributeKeys(String key) {
+		return await(LettuceFutures.adapt(connection.hkeys(key)));
+	}
+
+	@Override
+	public void del(String key) {
+		await(delAsync(key));
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		await(setExpireAsync(key, expire));
+	}
+
+	@Override
+	public Long getExpire(String key) {
+		return await(getExpireAsync(key));
+	}
+
+	@Override
+	public void setPersist(String key) {
+		await(LettuceFutures.discardResult(connection.persist(key)));
+	}
+
+	@Override
+	public boolean exists(String key) {
+		return await(existsAsync(key));
+	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		return await(LettuceFutures.adapt(connection.hincrby(key, fieldName, delta)));
+	}
+
+	@Override
+	public CacheBatch batch() {
+		return new LettuceCacheBatch(connection, timeoutMillis);
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttributeAsync(String key) {
+		return LettuceFutures.adapt(connection.hgetall(key));
+	}
+
+	@Override
+	public Future<Object> getAttributeAsync(String key, String fieldName) {
+		return LettuceFutures.adapt(connection.hget(key, fieldName));
+	}
+
+	@Override
+	public Future<Boolean> existsAsync(String key) {
+		return LettuceFutures.exists(connection.exists(new String[]{key}));
+	}
+
+	@Override
+	public Future<Long> getExpireAsync(String key) {
+		return LettuceFutures.adapt(connection.ttl(key));
+	}
+
+	@Override
+	public Future<Void> setAllAttributesAsync(String key, Map<String, Object> attributes) {
+		if (attributes.isEmpty()) {
+			return CacheFuture.completed(null);
+		}
+		return LettuceFutures.discardResult(connection.hmset(key, attributes));
+	}
+
+	@Override
+	public Future<Void> setAttributeAsync(String key, String fieldName, Object value) {
+		return LettuceFutures.discardResult(connection.hset(key, fieldName, value));
+	}
+
+	@Override
+	public Future<Void> removeAttributesAsync(String key, Collection<String> fieldNames) {
+		if (fieldNames.isEmpty()) {
+			return CacheFuture.completed(null);
+		}
+		return LettuceFutures.discardResult(connection.hdel(key, fieldNames.toArray(new String[fieldNames.size()])));
+	}
+
+	@Override
+	public Future<Void> setExpireAsync(String key, int expire) {
+		return LettuceFutures.discardResult(connection.expire(key, expire));
+	}
+
+	@Override
+	public Future<Void> delAsync(String key) {
+		return LettuceFutures.discardResult(connection.del(key));
+	}
+
+	private <T> T await(Future<T> future) {
+		return LettuceFutures.await(future, timeoutMillis);
+	}
+}
@@ -0,0 +1,122 @@
+package com.nameof.cache.impl;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.lambdaworks.redis.RedisCommandTimeoutException;
+import com.lambdaworks.redis.RedisFuture;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * Lettuce {@link RedisFuture}与{@link CacheFuture}之间的转换
+ * @author ChengPan
+ */
+final class LettuceFutures {
+
+	/** 在完成source的线程上直接运行监听器，不依赖guava中已被删除的MoreExecutors.sameThreadExecutor */
+	private static final Executor SAME_THREAD = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private LettuceFutures() {
+	}
+
+	static <T> CacheFuture<T> adapt(RedisFuture<T> source) {
+		CacheFuture<T> target = new CacheFuture<>();
+		complete(source, target, false);
+		return target;
+	}
+
+	/**
+	 * 只关心命令是否成功的写操作，结果固定为null
+	 */
+	static CacheFuture<Void> discardResult(RedisFuture<?> source) {
+		CacheFuture<Void> target = new CacheFuture<>();
+		complete(source, target, true);
+		return target;
+	}
+
+	/**
+	 * 多key形式的EXISTS返回存在的key数量，转换为是否存在
+	 */
+	static CacheFuture<Boolean> exists(RedisFuture<Long> source) {
+		CacheFuture<Boolean> target = new CacheFuture<>();
+		completeExists(source, target);
+		return target;
+	}
+
+	/**
+	 * source完成时在IO线程上填充target
+	 */
+	static <T> void complete(RedisFuture<?> source, CacheFuture<T> target, final boolean discard) {
+		source.addListener(new Completion<T>(source, target) {
+			@SuppressWarnings("unchecked")
+			@Override
+			T convert(Object result) {
+				return discard ? null : (T) result;
+			}
+		}, SAME_THREAD);
+	}
+
+	static void completeExists(RedisFuture<Long> source, CacheFuture<Boolean> target) {
+		source.addListener(new Completion<Boolean>(source, target) {
+			@Override
+			Boolean convert(Object result) {
+				return result != null && (Long) result > 0;
+			}
+		}, SAME_THREAD);
+	}
+
+	/**
+	 * 同步等待命令结果，超时抛出{@link RedisCommandTimeoutException}
+	 */
+	static <T> T await(Future<T> future, long timeoutMillis) {
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new RedisCommandTimeoutException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for redis reply", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("redis command failed", e.getCause());
+		}
+	}
+
+	private abstract static class Completion<T> implements Runnable {
+
+		private final RedisFuture<?> source;
+
+		private final CacheFuture<T> target;
+
+		Completion(RedisFuture<?> source, CacheFuture<T> target) {
+			this.source = source;
+			this.target = target;
+		}
+
+		abstract T convert(Object result);
+
+		@Override
+		public void run() {
+			try {
+				target.set(convert(source.get()));
+			} catch (ExecutionException e) {
+				target.setException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				target.setException(e);
+			} catch (RuntimeException e) {
+				target.setException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.nameof.cache.impl;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * redis的Lua脚本，通过EVALSHA执行，只发送脚本的SHA1；服务端没有缓存该脚本（重启、SCRIPT FLUSH或集群中的其他节点）
+ * 返回NOSCRIPT时先SCRIPT LOAD再重新执行
+ * @author ChengPan
+ */
+public final class LuaScript {
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private final String script;
+
+	private final String sha1;
+
+	public LuaScript(String script) {
+		this.script = script;
+		this.sha1 = sha1Hex(script);
+	}
+
+	public String getScript() {
+		return script;
+	}
+
+	public String getSha1() {
+		return sha1;
+	}
+
+	/**
+	 * 通过Jedis执行脚本
+	 */
+	public Object eval(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+		byte[] sha = sha1.getBytes(DEFAULT_CHARSET);
+		try {
+			return jedis.evalsha(sha, keys, args);
+		} catch (JedisDataException e) {
+			if (!isNoScript(e)) {
+				throw e;
+			}
+			jedis.scriptLoad(script.getBytes(DEFAULT_CHARSET));
+			return jedis.evalsha(sha, keys, args);
+		}
+	}
+
+	/**
+	 * 异常是否表示服务端没有缓存脚本
+	 */
+	public static boolean isNoScript(Throwable e) {
+		return e.getMessage() != null && e.getMessage().contains("NOSCRIPT");
+	}
+
+	static String sha1Hex(String script) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(DEFAULT_CHARSET));
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,345 @@
+package com.nameof.cache.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.nameof.cache.serializer.SessionSerializer;
+import com.whalin.MemCached.MemCachedClient;
+
+/**
+ * 按属性拆分存储的memcached实现，写入一个属性只需要序列化这一个属性.<br>
+ *
+ * 每个属性存储在"token:属性名"下，属性名不符合memcached key的规则（包含空格或控制字符、非ASCII字符，或key超过250字节）时
+ * 存储在"token:#属性名的SHA-1"下；会话key（token）下存储索引：过期时间、属性key的存活期限和属性名列表，
+ * 索引通过gets/cas修改.索引决定会话是否存在，属性key的过期时间为会话过期时间的两倍，
+ * 只有剩余存活期限不足一个会话过期时间时才需要逐个刷新属性key，刷新频率最多为每个过期周期一次.<br>
+ *
+ * 从整体存储Map的格式切换到这种格式时，已有会话的数据会被丢弃
+ * @author ChengPan
+ */
+public class MemcachedAttributeCacheDao extends AbstractMemcachedCacheDao {
+
+	private static final byte FORMAT_INDEX = 'I';
+
+	private static final int KEEP_EXPIRE = Integer.MIN_VALUE;
+
+	/** memcached key的最大长度（字节） */
+	private static final int MAX_KEY_LENGTH = 250;
+
+	/** 以摘要代替属性名的前缀，以它开头的属性名也使用摘要，避免与摘要冲突 */
+	private static final String DIGEST_PREFIX = "#";
+
+	public MemcachedAttributeCacheDao(MemCachedClient cachedClient, SessionSerializer serializer,
+			int defaultExpire, int maxRetries) {
+		super(cachedClient, serializer, defaultExpire, maxRetries);
+	}
+
+	@Override
+	public Map<String, Object> getAllAttribute(String key) {
+		Map<String, Object> attributes = new HashMap<>();
+		Index index = decode(cachedClient.get(key));
+		if (index == null || index.names.isEmpty()) {
+			return attributes;
+		}
+		String[] names = index.names.toArray(new String[index.names.size()]);
+		String[] fieldKeys = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			fieldKeys[i] = fieldKey(key, names[i]);
+		}
+		Object[] values = cachedClient.getMultiArray(fieldKeys);
+		for (int i = 0; i < names.length; i++) {
+			if (values[i] != null) {
+				attributes.put(names[i], serializer.deserialize((byte[]) values[i]));
+			}
+		}
+		return attributes;
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		updateAttributes(key, attributes, null, KEEP_EXPIRE);
+	}
+
+	@Override
+	public Object getAttribute(String key, String fieldName) {
+		//索引和属性一次读取，索引中不存在的属性视为已删除
+		Object[] values = cachedClient.getMultiArray(new String[] {key, fieldKey(key, fieldName)});
+		Index index = decode(values[0]);
+		if (index == null || !index.names.contains(fieldName) || values[1] == null) {
+			return null;
+		}
+		return serializer.deserialize((byte[]) values[1]);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		updateAttributes(key, Collections.singletonMap(fieldName, value), null, KEEP_EXPIRE);
+	}
+
+	@Override
+	public void removeAttribute(String key, String fieldName) {
+		updateAttributes(key, null, Collections.singleton(fieldName), KEEP_EXPIRE);
+	}
+
+	@Override
+	public Collection<String> getAttributeKeys(String key) {
+		Index index = decode(cachedClient.get(key));
+		return index == null ? Collections.<String>emptySet() : index.names;
+	}
+
+	@Override
+	public void del(String key) {
+		Index index = decode(cachedClient.get(key));
+		cachedClient.delete(key);
+		if (index != null) {
+			for (String name : index.names) {
+				cachedClient.delete(fieldKey(key, name));
+			}
+		}
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		updateAttributes(key, null, null, toMemcachedExpire(expire));
+	}
+
+	@Override
+	public boolean exists(String key) {
+		return cachedClient.keyExists(key);
+	}
+
+	@Override
+	public long increment(String key, final String fieldName, final long delta) {
+		Index index = updateIndex(key, Collections.singleton(fieldName), null, KEEP_EXPIRE, true);
+		final int fieldExpire = index.fieldExpire();
+		final long[] result = new long[1];
+		compareAndSet(fieldKey(key, fieldName), new CasUpdate() {
+			@Override
+			protected boolean apply(Object current) {
+				Object value = current == null ? null : serializer.deserialize((byte[]) current);
+				result[0] = (value == null ? 0 : ((Number) value).longValue()) + delta;
+				this.value = serializer.serialize(result[0]);
+				this.expire = fieldExpire;
+				return true;
+			}
+		});
+		refreshIfNeeded(key, index, Collections.singleton(fieldName));
+		return result[0];
+	}
+
+	@Override
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		boolean hasPuts = attributes != null && !attributes.isEmpty();
+		Set<String> written = hasPuts ? attributes.keySet() : Collections.<String>emptySet();
+		Index index = updateIndex(key, written, removedNames,
+				expire == KEEP_EXPIRE ? KEEP_EXPIRE : toMemcachedExpire(expire), hasPuts);
+		if (index == null) {
+			return;
+		}
+		if (hasPuts) {
+			int fieldExpire = index.fieldExpire();
+			for (Entry<String, Object> entry : attributes.entrySet()) {
+				cachedClient.set(fieldKey(key, entry.getKey()), serializer.serialize(entry.getValue()),
+						expiry(fieldExpire));
+			}
+		}
+		if (removedNames != null) {
+			for (String name : removedNames) {
+				cachedClient.delete(fieldKey(key, name));
+			}
+		}
+		refreshIfNeeded(key, index, written);
+	}
+
+	/**
+	 * 修改索引中的属性名和过期时间，并在需要时延长属性key的存活期限
+	 * @param create 索引不存在时是否创建
+	 * @return 修改之后的索引，索引不存在且不创建时返回null
+	 */
+	private Index updateIndex(String key, final Collection<String> added, final Collection<String> removed,
+			final int expire, final boolean create) {
+		final Index[] result = new Index[1];
+		compareAndSet(key, new CasUpdate() {
+			@Override
+			protected boolean apply(Object current) {
+				Index index = decode(current);
+				boolean changed = false;
+				if (index == null) {
+					if (!create) {
+						result[0] = null;
+						return false;
+					}
+					index = new Index(defaultExpire, 0, new LinkedHashSet<String>());
+					changed = true;
+				}
+				if (added != null && index.names.addAll(added)) {
+					changed = true;
+				}
+				if (removed != null && index.names.removeAll(removed)) {
+					changed = true;
+				}
+				if (expire != KEEP_EXPIRE) {
+					//刷新过期时间本身就需要重新写入索引
+					index.expire = expire;
+					changed = true;
+				}
+				if (index.extendDeadline()) {
+					changed = true;
+				}
+				result[0] = index;
+				this.value = encode(index);
+				this.expire = index.expire;
+				return changed;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * 索引延长了属性key的存活期限时，以新的过期时间重新写入其他属性key
+	 */
+	private void refreshIfNeeded(String key, Index index, Collection<String> written) {
+		if (!index.refresh) {
+			return;
+		}
+		final int fieldExpire = index.fieldExpire();
+		for (String name : index.names) {
+			if (written.contains(name)) {
+				continue;
+			}
+			compareAndSet(fieldKey(key, name), new CasUpdate() {
+				@Override
+				protected boolean apply(Object current) {
+					if (current == null) {
+						return false;
+					}
+					this.value = (byte[]) current;
+					this.expire = fieldExpire;
+					return true;
+				}
+			});
+		}
+	}
+
+	static String fieldKey(String key, String fieldName) {
+		String fieldKey = key + ":" + fieldName;
+		if (isValidKey(fieldKey) && !fieldName.startsWith(DIGEST_PREFIX)) {
+			return fieldKey;
+		}
+		return key + ":" + DIGEST_PREFIX + LuaScript.sha1Hex(fieldName);
+	}
+
+	/**
+	 * memcached文本协议的key不能包含空格和控制字符，这里同时排除非ASCII字符，保证字符数即字节数
+	 */
+	private static boolean isValidKey(String key) {
+		if (key.length() > MAX_KEY_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c <= ' ' || c >= 0x7F) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] encode(Index index) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(FORMAT_INDEX);
+			out.writeInt(index.expire);
+			out.writeLong(index.deadline);
+			out.writeInt(index.names.size());
+			for (String name : index.names) {
+				out.writeUTF(name);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * 不是索引格式的值（如整体存储Map的旧数据）视为不存在，会在下一次写入时被覆盖
+	 */
+	private static Index decode(Object value) {
+		if (!(value instanceof byte[])) {
+			return null;
+		}
+		byte[] bytes = (byte[]) value;
+		if (bytes.length == 0 || bytes[0] != FORMAT_INDEX) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+		try {
+			int expire = in.readInt();
+			long deadline = in.readLong();
+			int size = in.readInt();
+			Set<String> names = new LinkedHashSet<>();
+			for (int i = 0; i < size; i++) {
+				names.add(in.readUTF());
+			}
+			return new Index(expire, deadline, names);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static class Index {
+
+		/** 会话过期时间，0表示永不过期 */
+		int expire;
+
+		/** 属性key的存活期限（unix时间，秒），0表示属性key永不过期 */
+		long deadline;
+
+		final Set<String> names;
+
+		/** 本次修改延长了存活期限，需要刷新属性key */
+		boolean refresh;
+
+		Index(int expire, long deadline, Set<String> names) {
+			this.expire = expire;
+			this.deadline = deadline;
+			this.names = names;
+		}
+
+		/**
+		 * 保证属性key比索引存活得更久：剩余期限不足一个过期周期时延长为两个过期周期
+		 */
+		boolean extendDeadline() {
+			refresh = false;
+			long now = System.currentTimeMillis() / 1000;
+			if (expire == 0) {
+				refresh = deadline != 0;
+				deadline = 0;
+			}
+			else if (deadline == 0 || deadline < now + expire) {
+				deadline = now + 2L * expire;
+				refresh = true;
+			}
+			return refresh;
+		}
+
+		int fieldExpire() {
+			if (deadline == 0) {
+				return 0;
+			}
+			return (int) Math.max(deadline - System.currentTimeMillis() / 1000, 1);
+		}
+	}
+}
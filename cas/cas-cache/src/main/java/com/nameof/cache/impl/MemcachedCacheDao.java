@@ -1,60 +1,73 @@
 package com.nameof.cache.impl;
 
+import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.nameof.cache.CacheDao;
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.cache.serializer.SessionSerializers;
 import com.whalin.MemCached.MemCachedClient;
 
 /**
- * FIXME 直接读写整个Map属性，存在明显的并发问题
+ * 整个属性Map使用session.format对应的{@link SessionSerializer}序列化为byte[]存储在会话key下.<br>
+ *
+ * 存储格式为：1字节格式标记 + 4字节过期秒数 + 序列化的Map，所有修改通过gets/cas完成，
+ * 同一会话的并发请求不会互相覆盖；一次请求的所有变更在{@link #updateAttributes}中只需要一次读-改-写
  * @author ChengPan
  */
-public class MemcachedCacheDao implements CacheDao {
-
-	private MemCachedClient cachedClient;
-	
-    public MemcachedCacheDao(MemCachedClient cachedClient) {
-    	this.cachedClient = cachedClient;
-    }
-	
+public class MemcachedCacheDao extends AbstractMemcachedCacheDao {
+
+	private static final byte FORMAT_MAP = 'M';
+
+	private static final int HEADER_LENGTH = 5;
+
+	/** 不修改过期时间 */
+	private static final int KEEP_EXPIRE = Integer.MIN_VALUE;
+
+	public MemcachedCacheDao(MemCachedClient cachedClient) {
+		this(cachedClient, SessionSerializers.jdk());
+	}
+
+	public MemcachedCacheDao(MemCachedClient cachedClient, SessionSerializer serializer) {
+		this(cachedClient, serializer, 60 * 30, DEFAULT_MAX_RETRIES);
+	}
+
+	public MemcachedCacheDao(MemCachedClient cachedClient, SessionSerializer serializer,
+			int defaultExpire, int maxRetries) {
+		super(cachedClient, serializer, defaultExpire, maxRetries);
+	}
+
 	@Override
 	public Map<String, Object> getAllAttribute(String key) {
-		return getMap(key);
+		Entry entry = decode(cachedClient.get(key));
+		return entry == null ? new HashMap<String, Object>() : entry.attributes;
 	}
 
 	@Override
 	public void setAllAttributes(String key, Map<String, Object> attributes) {
-		Map<String, Object> map = getMap(key);
-		map.putAll(attributes);
-		cachedClient.set(key, map);
+		update(key, attributes, null, KEEP_EXPIRE);
 	}
 
 	@Override
 	public Object getAttribute(String key, String fieldName) {
-		Map<String, Object> map = getMap(key);
-		return map.get(fieldName);
+		return getAllAttribute(key).get(fieldName);
 	}
 
 	@Override
 	public void setAttribute(String key, String fieldName, Object value) {
-		Map<String, Object> map = getMap(key);
-		map.put(fieldName, value);
-		cachedClient.set(key, map);
+		update(key, Collections.singletonMap(fieldName, value), null, KEEP_EXPIRE);
 	}
-	
+
 	@Override
 	public void removeAttribute(String key, String fieldName) {
-		Map<String, Object> map = getMap(key);
-		map.remove(fieldName);
-		cachedClient.set(key, map);
+		update(key, null, Collections.singleton(fieldName), KEEP_EXPIRE);
 	}
 
 	@Override
 	public Collection<String> getAttributeKeys(String key) {
-		Map<String, Object> map = getMap(key);
-		return map.keySet();
+		return getAllAttribute(key).keySet();
 	}
 
 	@Override
@@ -64,31 +77,110 @@ public class MemcachedCacheDao implements CacheDao {
 
 	@Override
 	public void setExpire(String key, int expire) {
-		//FIXME UnsupportedOperation
+		update(key, null, null, toMemcachedExpire(expire));
 	}
 
 	@Override
-	public Long getExpire(String key) {
-		throw new UnsupportedOperationException();
+	public boolean exists(String key) {
+		return cachedClient.keyExists(key);
 	}
 
 	@Override
-	public void setPersist(String key) {
-		//FIXME UnsupportedOperation
+	public long increment(final String key, final String fieldName, final long delta) {
+		final long[] result = new long[1];
+		compareAndSet(key, new CasUpdate() {
+			@Override
+			protected boolean apply(Object current) {
+				Entry entry = decode(current);
+				if (entry == null) {
+					entry = new Entry(defaultExpire, new HashMap<String, Object>());
+				}
+				Number value = (Number) entry.attributes.get(fieldName);
+				result[0] = (value == null ? 0 : value.longValue()) + delta;
+				entry.attributes.put(fieldName, result[0]);
+				this.value = encode(entry);
+				this.expire = entry.expire;
+				return true;
+			}
+		});
+		return result[0];
 	}
 
 	@Override
-	public boolean exists(String key) {
-		return cachedClient.keyExists(key);
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		update(key, attributes, removedNames, toMemcachedExpire(expire));
+	}
+
+	/**
+	 * 在一次读-改-写中合并属性的写入、删除和过期时间的修改.<br>
+	 * key不存在时只有写入属性才会创建，仅删除属性或刷新过期时间不会创建空会话
+	 */
+	private void update(String key, final Map<String, Object> attributes,
+			final Collection<String> removedNames, final int expire) {
+		final boolean hasPuts = attributes != null && !attributes.isEmpty();
+		compareAndSet(key, new CasUpdate() {
+			@Override
+			protected boolean apply(Object current) {
+				Entry entry = decode(current);
+				if (entry == null) {
+					if (!hasPuts) {
+						return false;
+					}
+					entry = new Entry(defaultExpire, new HashMap<String, Object>());
+				}
+				if (hasPuts) {
+					entry.attributes.putAll(attributes);
+				}
+				if (removedNames != null) {
+					entry.attributes.keySet().removeAll(removedNames);
+				}
+				if (expire != KEEP_EXPIRE) {
+					entry.expire = expire;
+				}
+				this.value = encode(entry);
+				this.expire = entry.expire;
+				return true;
+			}
+		});
 	}
-	
-	private Map<String, Object> getMap(String key) {
-		@SuppressWarnings("unchecked")
-		Map<String, Object> map = (Map<String, Object>) cachedClient.get(key);
-		if (map == null) {
-			map = new HashMap<String, Object>();
+
+	private byte[] encode(Entry entry) {
+		byte[] map = serializer.serialize(entry.attributes);
+		return ByteBuffer.allocate(HEADER_LENGTH + map.length).put(FORMAT_MAP)
+				.putInt(entry.expire).put(map).array();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Entry decode(Object value) {
+		if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			if (bytes.length >= HEADER_LENGTH && bytes[0] == FORMAT_MAP) {
+				int expire = ByteBuffer.wrap(bytes, 1, 4).getInt();
+				byte[] map = new byte[bytes.length - HEADER_LENGTH];
+				System.arraycopy(bytes, HEADER_LENGTH, map, 0, map.length);
+				value = serializer.deserialize(map);
+				return new Entry(expire, value instanceof Map ? (Map<String, Object>) value : new HashMap<String, Object>());
+			}
+			//兼容没有格式标记的旧数据
+			value = serializer.deserialize(bytes);
 		}
-		return map;
+		//兼容直接存储Map对象的旧数据
+		if (value instanceof Map) {
+			return new Entry(defaultExpire, new HashMap<>((Map<String, Object>) value));
+		}
+		return null;
 	}
 
+	private static class Entry {
+
+		int expire;
+
+		final Map<String, Object> attributes;
+
+		Entry(int expire, Map<String, Object> attributes) {
+			this.expire = expire;
+			this.attributes = attributes;
+		}
+	}
 }
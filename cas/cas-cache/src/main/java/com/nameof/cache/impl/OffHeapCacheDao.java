@@ -0,0 +1,174 @@
+package com.nameof.cache.impl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.nameof.cache.offheap.OffHeapStore;
+import com.nameof.cache.serializer.SessionSerializer;
+
+/**
+ * 将会话存储在本进程堆外内存中的实现，整个属性Map使用session.format对应的{@link SessionSerializer}
+ * 序列化后保存在{@link OffHeapStore}中，会话数据不占用Java堆，不会增加GC的负担.<br>
+ *
+ * 与ehcache一样只适用于单节点部署；每次修改都是一次读-改-写，通过版本号检测同一会话的并发修改并重试，
+ * 序列化在锁外完成
+ * @author ChengPan
+ */
+public class OffHeapCacheDao extends AbstractCacheDao {
+
+	/** 并发修改的最大重试次数 */
+	private static final int MAX_RETRIES = 64;
+
+	/** 不修改过期时间 */
+	private static final int KEEP_EXPIRE = Integer.MIN_VALUE;
+
+	private final OffHeapStore store;
+
+	private final SessionSerializer serializer;
+
+	private final int defaultExpire;
+
+	/**
+	 * @param defaultExpire 新建会话的空闲过期时间，单位为秒，在第一次setExpire之前写入的数据使用
+	 */
+	public OffHeapCacheDao(OffHeapStore store, SessionSerializer serializer, int defaultExpire) {
+		this.store = store;
+		this.serializer = serializer;
+		this.defaultExpire = defaultExpire;
+	}
+
+	@Override
+	public Map<String, Object> getAllAttribute(String key) {
+		return decode(store.get(key));
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		update(key, attributes, null, KEEP_EXPIRE);
+	}
+
+	@Override
+	public Object getAttribute(String key, String fieldName) {
+		return getAllAttribute(key).get(fieldName);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		update(key, Collections.singletonMap(fieldName, value), null, KEEP_EXPIRE);
+	}
+
+	@Override
+	public void removeAttribute(String key, String fieldName) {
+		update(key, null, Collections.singleton(fieldName), KEEP_EXPIRE);
+	}
+
+	@Override
+	public Collection<String> getAttributeKeys(String key) {
+		return getAllAttribute(key).keySet();
+	}
+
+	@Override
+	public void del(String key) {
+		store.remove(key);
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		store.expire(key, toStoreExpire(expire));
+	}
+
+	@Override
+	public Long getExpire(String key) {
+		long ttl = store.ttl(key);
+		return ttl < 0 ? ttl : ttl / 1000;
+	}
+
+	@Override
+	public void setPersist(String key) {
+		store.expire(key, OffHeapStore.ETERNAL);
+	}
+
+	@Override
+	public boolean exists(String key) {
+		return store.contains(key);
+	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		for (int i = 0; i < MAX_RETRIES; i++) {
+			OffHeapStore.Snapshot snapshot = store.get(key);
+			Map<String, Object> attributes = decode(snapshot);
+			Number value = (Number) attributes.get(fieldName);
+			long result = (value == null ? 0 : value.longValue()) + delta;
+			attributes.put(fieldName, result);
+			if (store(key, snapshot, attributes, KEEP_EXPIRE)) {
+				return result;
+			}
+		}
+		throw new IllegalStateException("too many concurrent modifications of " + key);
+	}
+
+	@Override
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		update(key, attributes, removedNames, toStoreExpire(expire));
+	}
+
+	/**
+	 * 在一次读-改-写中合并属性的写入、删除和过期时间的修改.<br>
+	 * key不存在时只有写入属性才会创建，仅删除属性或刷新过期时间不会创建空会话
+	 */
+	private void update(String key, Map<String, Object> attributes, Collection<String> removedNames, int expire) {
+		boolean hasPuts = attributes != null && !attributes.isEmpty();
+		boolean hasRemoves = removedNames != null && !removedNames.isEmpty();
+		if (!hasPuts && !hasRemoves) {
+			if (expire != KEEP_EXPIRE) {
+				store.expire(key, expire);
+			}
+			return;
+		}
+		for (int i = 0; i < MAX_RETRIES; i++) {
+			OffHeapStore.Snapshot snapshot = store.get(key);
+			if (snapshot == null && !hasPuts) {
+				return;
+			}
+			Map<String, Object> current = decode(snapshot);
+			if (hasPuts) {
+				current.putAll(attributes);
+			}
+			if (hasRemoves) {
+				current.keySet().removeAll(removedNames);
+			}
+			if (store(key, snapshot, current, expire)) {
+				return;
+			}
+		}
+		throw new IllegalStateException("too many concurrent modifications of " + key);
+	}
+
+	private boolean store(String key, OffHeapStore.Snapshot snapshot, Map<String, Object> attributes, int expire) {
+		if (expire == KEEP_EXPIRE) {
+			expire = snapshot == null ? defaultExpire : snapshot.getExpire();
+		}
+		return store.put(key, serializer.serialize(attributes), expire,
+				snapshot == null ? 0 : snapshot.getVersion());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> decode(OffHeapStore.Snapshot snapshot) {
+		if (snapshot == null) {
+			return new HashMap<>();
+		}
+		Object value = serializer.deserialize(snapshot.getValue());
+		return value instanceof Map ? new HashMap<>((Map<String, Object>) value) : new HashMap<String, Object>();
+	}
+
+	/**
+	 * CacheDao的expire参数小于0表示永不过期
+	 */
+	private static int toStoreExpire(int expire) {
+		return expire < 0 ? OffHeapStore.ETERNAL : expire;
+	}
+}
@@ -0,0 +1,304 @@
+package com.nameof.cache.impl;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Future;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheFuture;
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
+
+/**
+ * 基于Jedis {@link Pipeline}的批量命令实现，命令在execute时才借出连接并写入pipeline，
+ * 避免未执行的batch占用连接或使连接停留在pipeline状态.<br>
+ *
+ * 集群模式下pipeline只能发往单个节点，命令按key所在的slot分组，每组使用一个pipeline；
+ * 收到MOVED/ASK重定向时只重新发送被重定向的命令，已在原节点执行的命令（如HINCRBY）不会重复执行
+ * @author ChengPan
+ */
+class RedisCacheBatch implements CacheBatch {
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private final List<Command<?>> commands = new ArrayList<>();
+
+	private final JedisTemplate jedisTemplate;
+
+	private final SessionSerializer serializer;
+
+	RedisCacheBatch(JedisTemplate jedisTemplate, SessionSerializer serializer) {
+		this.jedisTemplate = jedisTemplate;
+		this.serializer = serializer;
+	}
+
+	@Override
+	public Future<Boolean> exists(final String key) {
+		return add(key, new Command<Boolean>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.exists(bytes(key));
+			}
+		});
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(final String key) {
+		return add(key, new Command<Map<String, Object>>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.hgetAll(bytes(key));
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			Map<String, Object> convert(Object reply) {
+				Map<String, Object> attributes = new HashMap<>();
+				if (reply != null) {
+					for (Entry<byte[], byte[]> entry : ((Map<byte[], byte[]>) reply).entrySet()) {
+						attributes.put(new String(entry.getKey(), DEFAULT_CHARSET),
+								serializer.deserialize(entry.getValue()));
+					}
+				}
+				return attributes;
+			}
+		});
+	}
+
+	@Override
+	public Future<Object> getAttribute(final String key, final String fieldName) {
+		return add(key, new Command<Object>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.hget(bytes(key), bytes(fieldName));
+			}
+
+			@Override
+			Object convert(Object reply) {
+				return serializer.deserialize((byte[]) reply);
+			}
+		});
+	}
+
+	@Override
+	public void setAttribute(final String key, final String fieldName, final Object value) {
+		add(key, new Command<Void>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.hset(bytes(key), bytes(fieldName), serializer.serialize(value));
+			}
+		});
+	}
+
+	@Override
+	public void setAllAttributes(final String key, final Map<String, Object> attributes) {
+		if (attributes.isEmpty()) {
+			return;
+		}
+		add(key, new Command<Void>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.hmset(bytes(key), RedisCacheDao.serializeAttributes(attributes, serializer));
+			}
+		});
+	}
+
+	@Override
+	public void removeAttributes(final String key, final Collection<String> fieldNames) {
+		if (fieldNames.isEmpty()) {
+			return;
+		}
+		add(key, new Command<Void>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				byte[][] fields = new byte[fieldNames.size()][];
+				int i = 0;
+				for (String name : fieldNames) {
+					fields[i++] = bytes(name);
+				}
+				return pipeline.hdel(bytes(key), fields);
+			}
+		});
+	}
+
+	@Override
+	public void setExpire(final String key, final int expire) {
+		add(key, new Command<Void>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.expire(bytes(key), expire);
+			}
+		});
+	}
+
+	@Override
+	public void setPersist(final String key) {
+		add(key, new Command<Void>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.persist(bytes(key));
+			}
+		});
+	}
+
+	@Override
+	public void del(final String key) {
+		add(key, new Command<Void>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.del(bytes(key));
+			}
+		});
+	}
+
+	@Override
+	public Future<Long> increment(final String key, final String fieldName, final long delta) {
+		return add(key, new Command<Long>() {
+			@Override
+			Response<?> queue(Pipeline pipeline) {
+				return pipeline.hincrBy(bytes(key), bytes(fieldName), delta);
+			}
+		});
+	}
+
+	@Override
+	public void execute() {
+		if (commands.isEmpty()) {
+			return;
+		}
+		Collection<List<Command<?>>> groups;
+		if (jedisTemplate.isCluster()) {
+			Map<Integer, List<Command<?>>> bySlot = new LinkedHashMap<>();
+			for (Command<?> command : commands) {
+				int slot = JedisTemplate.slot(command.key);
+				List<Command<?>> group = bySlot.get(slot);
+				if (group == null) {
+					group = new ArrayList<>();
+					bySlot.put(slot, group);
+				}
+				group.add(command);
+			}
+			groups = bySlot.values();
+		}
+		else {
+			groups = Collections.<List<Command<?>>>singletonList(commands);
+		}
+		RuntimeException error = null;
+		try {
+			for (List<Command<?>> group : groups) {
+				sync(group);
+				for (Command<?> command : group) {
+					RuntimeException e = command.complete();
+					if (error == null) {
+						error = e;
+					}
+				}
+			}
+		} catch (RuntimeException e) {
+			//已完成的future不受影响
+			for (Command<?> command : commands) {
+				command.future.setException(e);
+			}
+			throw e;
+		} finally {
+			commands.clear();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private void sync(List<Command<?>> group) {
+		final List<Command<?>> unsent = new ArrayList<>(group);
+		jedisTemplate.execute(group.get(0).key, new JedisCallback<Void>() {
+			@Override
+			public Void doInJedis(Jedis jedis) {
+				Pipeline pipeline = jedis.pipelined();
+				for (Command<?> command : unsent) {
+					command.response = command.queue(pipeline);
+				}
+				pipeline.sync();
+				//保留被重定向的命令，抛出后由JedisTemplate刷新slot缓存或转向目标节点，重新执行时只发送这些命令
+				JedisRedirectionException redirection = null;
+				Iterator<Command<?>> it = unsent.iterator();
+				while (it.hasNext()) {
+					JedisRedirectionException e = it.next().redirection();
+					if (e == null) {
+						it.remove();
+					}
+					else if (redirection == null) {
+						redirection = e;
+					}
+				}
+				if (redirection != null) {
+					throw redirection;
+				}
+				return null;
+			}
+		});
+	}
+
+	private <T> Future<T> add(String key, Command<T> command) {
+		command.key = key;
+		commands.add(command);
+		return command.future;
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(DEFAULT_CHARSET);
+	}
+
+	private abstract static class Command<T> {
+
+		private final CacheFuture<T> future = new CacheFuture<>();
+
+		private String key;
+
+		private Response<?> response;
+
+		abstract Response<?> queue(Pipeline pipeline);
+
+		/**
+		 * @return 命令被重定向时的异常，其他错误回复在complete中设置到future
+		 */
+		JedisRedirectionException redirection() {
+			try {
+				response.get();
+				return null;
+			} catch (JedisRedirectionException e) {
+				return e;
+			} catch (RuntimeException e) {
+				return null;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		T convert(Object reply) {
+			return (T) reply;
+		}
+
+		RuntimeException complete() {
+			try {
+				future.set(convert(response.get()));
+				return null;
+			} catch (RuntimeException e) {
+				future.setException(e);
+				return e;
+			}
+		}
+	}
+}
@@ -1,48 +1,65 @@
 package com.nameof.cache.impl;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.redisson.client.codec.Codec;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.serializer.RedisSerializer;
+import redis.clients.jedis.Jedis;
 
-import com.nameof.cache.CacheDao;
-import com.nameof.common.utils.RedisUtil;
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.LoadableCacheDao;
+import com.nameof.cache.SessionSnapshot;
+import com.nameof.cache.VersionedCacheDao;
+import com.nameof.cache.serializer.SessionSerializer;
+import com.nameof.cache.serializer.SessionSerializers;
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
 
 /**
- * 基于Jedis的缓存数据访问层
- * XXX 这里仅仅使用了JDK的序列化，不过项目中已引入redisson和spring-data-redis，其实可以使用它们已提供的
- * {@link Codec}和{@link RedisSerializer}相关实现类，以支持多种序列化方式
+ * 基于Jedis的缓存数据访问层，属性值使用session.format对应的{@link SessionSerializer}序列化.<br>
+ * 每个操作通过{@link JedisTemplate}单独借出并归还连接.<br>
+ *
+ * 会话的加载和带版本号的提交通过Lua脚本（EVALSHA）在服务端一次完成，见{@link SessionScripts}
  * @author ChengPan
  */
-public class RedisCacheDao implements CacheDao {
+public class RedisCacheDao extends AbstractCacheDao implements VersionedCacheDao, LoadableCacheDao {
 
 	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
 	
-	private static final Logger logger = LoggerFactory.getLogger(RedisCacheDao.class);
+	private final JedisTemplate jedisTemplate;
+	
+	private final SessionSerializer serializer;
+	
+	public RedisCacheDao(JedisTemplate jedisTemplate) {
+		this(jedisTemplate, SessionSerializers.jdk());
+	}
+	
+	public RedisCacheDao(JedisTemplate jedisTemplate, SessionSerializer serializer) {
+		this.jedisTemplate = jedisTemplate;
+		this.serializer = serializer;
+	}
 	
 	@Override
-	public Map<String, Object> getAllAttribute(String key) {
+	public Map<String, Object> getAllAttribute(final String key) {
+		Map<byte[], byte[]> all = jedisTemplate.read(key, new JedisCallback<Map<byte[], byte[]>>() {
+			@Override
+			public Map<byte[], byte[]> doInJedis(Jedis jedis) {
+				return jedis.hgetAll(bytes(key));
+			}
+		});
 		Map<String, Object> attributes = new HashMap<>();
-		Map<byte[], byte[]> all = RedisUtil.getJedis().hgetAll(key.getBytes(DEFAULT_CHARSET));
 		if (all != null) {
 			Set<Entry<byte[],byte[]>> set = all.entrySet();
 			for (Entry<byte[],byte[]> entry : set) {
 				String byteKey = new String(entry.getKey(), DEFAULT_CHARSET);
-				Object value = deserizlize(entry.getValue());
+				Object value = serializer.deserialize(entry.getValue());
 				attributes.put(byteKey, value);
 			}
 		}
@@ -50,40 +67,58 @@ public class RedisCacheDao implements CacheDao {
 	}
 	
 	@Override
-	public void setAllAttributes(String key, Map<String, Object> attributes) {
+	public void setAllAttributes(final String key, Map<String, Object> attributes) {
 		//提交Session属性到缓存中
-		Map<byte[], byte[]> serializedMap = new HashMap<>();
-		for (Entry<String, Object> entry : attributes.entrySet()) {
-			byte[] byteKey = entry.getKey().getBytes(DEFAULT_CHARSET);
-			byte[] serializedValue = serialize(entry.getValue());
-			serializedMap.put(byteKey, serializedValue);
-		}
-		RedisUtil.getJedis().hmset(key.getBytes(DEFAULT_CHARSET), serializedMap);	
+		final Map<byte[], byte[]> serialized = serializeAttributes(attributes, serializer);
+		jedisTemplate.execute(key, new JedisCallback<String>() {
+			@Override
+			public String doInJedis(Jedis jedis) {
+				return jedis.hmset(bytes(key), serialized);
+			}
+		});
 	}
 
 	@Override
-	public Object getAttribute(String key, String fieldName) {
-		byte[] value = null;
-		value = RedisUtil.getJedis().hget(key.getBytes(DEFAULT_CHARSET), fieldName.getBytes(DEFAULT_CHARSET));
-		return deserizlize(value);
+	public Object getAttribute(final String key, final String fieldName) {
+		byte[] value = jedisTemplate.read(key, new JedisCallback<byte[]>() {
+			@Override
+			public byte[] doInJedis(Jedis jedis) {
+				return jedis.hget(bytes(key), bytes(fieldName));
+			}
+		});
+		return serializer.deserialize(value);
 	}
 
 
 	@Override
-	public void setAttribute(String key, String fieldName, Object value) {
-		RedisUtil.getJedis().hset(key.getBytes(DEFAULT_CHARSET), fieldName.getBytes(DEFAULT_CHARSET),
-				serialize(value));
+	public void setAttribute(final String key, final String fieldName, Object value) {
+		final byte[] serialized = serializer.serialize(value);
+		jedisTemplate.execute(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.hset(bytes(key), bytes(fieldName), serialized);
+			}
+		});
 	}
 	
 	@Override
-	public void removeAttribute(String key, String fieldName) {
-		RedisUtil.getJedis().hdel(key.getBytes(DEFAULT_CHARSET), fieldName.getBytes(DEFAULT_CHARSET));
+	public void removeAttribute(final String key, final String fieldName) {
+		jedisTemplate.execute(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.hdel(bytes(key), bytes(fieldName));
+			}
+		});
 	}
 
 	@Override
-	public Collection<String> getAttributeKeys(String key) {
-		Set<byte[]> keys = null;
-		keys = RedisUtil.getJedis().hkeys(key.getBytes(DEFAULT_CHARSET));
+	public Collection<String> getAttributeKeys(final String key) {
+		Set<byte[]> keys = jedisTemplate.read(key, new JedisCallback<Set<byte[]>>() {
+			@Override
+			public Set<byte[]> doInJedis(Jedis jedis) {
+				return jedis.hkeys(bytes(key));
+			}
+		});
 		
 		if (keys == null) {
 			return Collections.emptySet();
@@ -91,72 +126,156 @@ public class RedisCacheDao implements CacheDao {
 		
 		Set<String> skeys = new HashSet<String>();
 		for (byte[] k : keys) {
-			skeys.add(new String(k));
+			skeys.add(new String(k, DEFAULT_CHARSET));
 		}
 		return skeys;
 	}
 
 	@Override
-	public void del(String key) {
-		RedisUtil.getJedis().del(key.getBytes(DEFAULT_CHARSET));
+	public void del(final String key) {
+		jedisTemplate.execute(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.del(bytes(key));
+			}
+		});
+	}
+
+	@Override
+	public void setExpire(final String key, final int expire) {
+		jedisTemplate.execute(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.expire(bytes(key), expire);
+			}
+		});
+	}
+
+	@Override
+	public Long getExpire(final String key) {
+		return jedisTemplate.read(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.ttl(bytes(key));
+			}
+		});
+	}
+
+	@Override
+	public void setPersist(final String key) {
+		jedisTemplate.execute(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.persist(bytes(key));
+			}
+		});
+	}
+
+	@Override
+	public boolean exists(final String key) {
+		return jedisTemplate.read(key, new JedisCallback<Boolean>() {
+			@Override
+			public Boolean doInJedis(Jedis jedis) {
+				return jedis.exists(bytes(key));
+			}
+		});
 	}
 
 	@Override
-	public void setExpire(String key, int expire) {
-		RedisUtil.getJedis().expire(key.getBytes(DEFAULT_CHARSET), expire);
+	public long increment(final String key, final String fieldName, final long delta) {
+		return jedisTemplate.execute(key, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.hincrBy(bytes(key), bytes(fieldName), delta);
+			}
+		});
 	}
 
 	@Override
-	public Long getExpire(String key) {
-		return RedisUtil.getJedis().ttl(key.getBytes(DEFAULT_CHARSET));
+	public boolean isVersioningSupported() {
+		return true;
 	}
 
 	@Override
-	public void setPersist(String key) {
-		RedisUtil.getJedis().persist(key.getBytes(DEFAULT_CHARSET));
+	public long updateAttributesVersioned(final String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire, long expectedVersion, boolean force) {
+		final List<byte[]> args = new ArrayList<>();
+		args.add(bytes(VERSION_KEY));
+		args.add(bytes(force ? "1" : "0"));
+		args.add(bytes(String.valueOf(expectedVersion)));
+		args.add(bytes(String.valueOf(expire)));
+		args.add(bytes(String.valueOf(attributes == null ? 0 : attributes.size())));
+		if (attributes != null) {
+			for (Entry<String, Object> entry : attributes.entrySet()) {
+				args.add(bytes(entry.getKey()));
+				args.add(serializer.serialize(entry.getValue()));
+			}
+		}
+		if (removedNames != null) {
+			for (String name : removedNames) {
+				args.add(bytes(name));
+			}
+		}
+		Object result = jedisTemplate.execute(key, new JedisCallback<Object>() {
+			@Override
+			public Object doInJedis(Jedis jedis) {
+				return SessionScripts.VERSIONED_UPDATE.eval(jedis, Collections.singletonList(bytes(key)), args);
+			}
+		});
+		return (Long) result;
 	}
 
 	@Override
-	public boolean exists(String key) {
-		return RedisUtil.getJedis().exists(key.getBytes(DEFAULT_CHARSET));
+	public boolean isLoadSupported() {
+		return true;
 	}
 
-	private static byte [] serialize(Object obj) {
-    	if (obj == null) {
-    		return null;
-    	}
-        ObjectOutputStream obi=null;
-        ByteArrayOutputStream bai=null;
-        try {
-            bai=new ByteArrayOutputStream();
-            obi=new ObjectOutputStream(bai);
-            obi.writeObject(obj);
-            byte[] byt=bai.toByteArray();
-            return byt;
-        }
-        catch (IOException e) {
-        	logger.error("IOException thrown from RedisCacheDao on object serialize", e);
-        }
-        return null;
-    }
-    
-    private static Object deserizlize(byte[] byt) {
-    	if (byt == null) {
-    		return null;
-    	}
-        ObjectInputStream oii=null;
-        ByteArrayInputStream bis=null;
-        bis=new ByteArrayInputStream(byt);
-        try {
-            oii=new ObjectInputStream(bis);
-            Object obj=oii.readObject();
-            return obj;
-        }
-        catch (IOException e) {
-        	logger.error("IOException thrown from RedisCacheDao on object deserizlize", e);
-        } catch (ClassNotFoundException e) {
-        	logger.error("ClassNotFoundException thrown from RedisCacheDao on object deserizlize", e);
+	@Override
+	public SessionSnapshot loadSession(final String key, Collection<String> fieldNames, String createTimeName,
+			Object createTime, int expire) {
+		final List<byte[]> args = new ArrayList<>();
+		args.add(bytes(createTimeName));
+		args.add(serializer.serialize(createTime));
+		args.add(bytes(String.valueOf(expire)));
+		args.add(bytes(fieldNames == null ? "1" : "0"));
+		if (fieldNames != null) {
+			for (String name : fieldNames) {
+				args.add(bytes(name));
+			}
 		}
-        return null;
-    }
-}
\ No newline at end of file
+		List<?> result = (List<?>) jedisTemplate.execute(key, new JedisCallback<Object>() {
+			@Override
+			public Object doInJedis(Jedis jedis) {
+				return SessionScripts.LOAD_SESSION.eval(jedis, Collections.singletonList(bytes(key)), args);
+			}
+		});
+		Map<String, Object> attributes = new HashMap<>();
+		for (int i = 1; i + 1 < result.size(); i += 2) {
+			byte[] value = (byte[]) result.get(i + 1);
+			if (value != null) {
+				attributes.put(new String((byte[]) result.get(i), DEFAULT_CHARSET), serializer.deserialize(value));
+			}
+		}
+		return new SessionSnapshot(((Long) result.get(0)) == 1, attributes);
+	}
+
+	@Override
+	public CacheBatch batch() {
+		//HMSET、HDEL、EXPIRE等命令通过pipeline一次性发送，只需一次网络往返，整个batch只借出一次连接
+		return new RedisCacheBatch(jedisTemplate, serializer);
+	}
+	
+	private static byte[] bytes(String s) {
+		return s.getBytes(DEFAULT_CHARSET);
+	}
+	
+	static Map<byte[], byte[]> serializeAttributes(Map<String, Object> attributes, SessionSerializer serializer) {
+		Map<byte[], byte[]> serializedMap = new HashMap<>();
+		for (Entry<String, Object> entry : attributes.entrySet()) {
+			byte[] byteKey = entry.getKey().getBytes(DEFAULT_CHARSET);
+			byte[] serializedValue = serializer.serialize(entry.getValue());
+			serializedMap.put(byteKey, serializedValue);
+		}
+		return serializedMap;
+	}
+}
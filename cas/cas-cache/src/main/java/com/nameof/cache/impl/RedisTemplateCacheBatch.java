@@ -0,0 +1,202 @@
+package com.nameof.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Future;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * 基于{@link RedisTemplate#executePipelined(RedisCallback, RedisSerializer)}的批量命令实现.<br>
+ *
+ * pipeline中返回状态回复的命令（如HMSET）可能不会出现在结果列表中，所以这里写入属性统一使用HSET，
+ * 保证每条命令与结果一一对应
+ * @author ChengPan
+ */
+class RedisTemplateCacheBatch implements CacheBatch {
+
+	private final RedisTemplate<String, Object> redisTemplate;
+
+	private final RedisSerializer<Object> keySerializer;
+
+	private final RedisSerializer<Object> hashKeySerializer;
+
+	private final RedisSerializer<Object> hashValueSerializer;
+
+	private final List<Command<?>> commands = new ArrayList<>();
+
+	@SuppressWarnings("unchecked")
+	RedisTemplateCacheBatch(RedisTemplate<String, Object> redisTemplate) {
+		this.redisTemplate = redisTemplate;
+		this.keySerializer = (RedisSerializer<Object>) redisTemplate.getKeySerializer();
+		this.hashKeySerializer = (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+		this.hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+	}
+
+	@Override
+	public Future<Boolean> exists(final String key) {
+		return add(new Command<Boolean>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.exists(rawKey(key));
+			}
+		});
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(final String key) {
+		return add(new Command<Map<String, Object>>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.hGetAll(rawKey(key));
+			}
+		});
+	}
+
+	@Override
+	public Future<Object> getAttribute(final String key, final String fieldName) {
+		return add(new Command<Object>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.hGet(rawKey(key), hashKeySerializer.serialize(fieldName));
+			}
+		});
+	}
+
+	@Override
+	public void setAttribute(final String key, final String fieldName, final Object value) {
+		add(new Command<Void>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.hSet(rawKey(key), hashKeySerializer.serialize(fieldName),
+						hashValueSerializer.serialize(value));
+			}
+		});
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		for (Entry<String, Object> entry : attributes.entrySet()) {
+			setAttribute(key, entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void removeAttributes(final String key, final Collection<String> fieldNames) {
+		if (fieldNames.isEmpty()) {
+			return;
+		}
+		add(new Command<Void>() {
+			@Override
+			void queue(RedisConnection connection) {
+				byte[][] fields = new byte[fieldNames.size()][];
+				int i = 0;
+				for (String name : fieldNames) {
+					fields[i++] = hashKeySerializer.serialize(name);
+				}
+				connection.hDel(rawKey(key), fields);
+			}
+		});
+	}
+
+	@Override
+	public void setExpire(final String key, final int expire) {
+		add(new Command<Void>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.expire(rawKey(key), expire);
+			}
+		});
+	}
+
+	@Override
+	public void setPersist(final String key) {
+		add(new Command<Void>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.persist(rawKey(key));
+			}
+		});
+	}
+
+	@Override
+	public void del(final String key) {
+		add(new Command<Void>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.del(rawKey(key));
+			}
+		});
+	}
+
+	@Override
+	public Future<Long> increment(final String key, final String fieldName, final long delta) {
+		return add(new Command<Long>() {
+			@Override
+			void queue(RedisConnection connection) {
+				connection.hIncrBy(rawKey(key), hashKeySerializer.serialize(fieldName), delta);
+			}
+		});
+	}
+
+	@Override
+	public void execute() {
+		if (commands.isEmpty()) {
+			return;
+		}
+		List<Object> results;
+		try {
+			//结果使用hash value的序列化方式反序列化，与RedisTemplateCacheDao的HashOperations保持一致
+			results = redisTemplate.executePipelined(new RedisCallback<Object>() {
+				@Override
+				public Object doInRedis(RedisConnection connection) throws DataAccessException {
+					for (Command<?> command : commands) {
+						command.queue(connection);
+					}
+					return null;
+				}
+			}, hashValueSerializer);
+		} catch (RuntimeException e) {
+			for (Command<?> command : commands) {
+				command.future.setException(e);
+			}
+			commands.clear();
+			throw e;
+		}
+		for (int i = 0; i < commands.size(); i++) {
+			commands.get(i).complete(i < results.size() ? results.get(i) : null);
+		}
+		commands.clear();
+	}
+
+	private <T> Future<T> add(Command<T> command) {
+		commands.add(command);
+		return command.future;
+	}
+
+	private byte[] rawKey(String key) {
+		return keySerializer.serialize(key);
+	}
+
+	private abstract static class Command<T> {
+
+		private final CacheFuture<T> future = new CacheFuture<>();
+
+		abstract void queue(RedisConnection connection);
+
+		@SuppressWarnings("unchecked")
+		void complete(Object result) {
+			future.set((T) result);
+		}
+	}
+}
@@ -1,6 +1,11 @@
 package com.nameof.cache.impl;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -9,10 +14,26 @@ import javax.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.HashOperations;
 import org.springframework.data.redis.core.RedisTemplate;
-
-import com.nameof.cache.CacheDao;
-
-public class RedisTemplateCacheDao implements CacheDao {
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.LoadableCacheDao;
+import com.nameof.cache.SessionSnapshot;
+
+/**
+ * 基于RedisTemplate的缓存数据访问层，会话的加载通过{@link SessionScripts#LOAD_SESSION}一次完成，
+ * RedisTemplate执行脚本时使用EVALSHA，服务端没有缓存脚本时退回到EVAL
+ * @author ChengPan
+ */
+public class RedisTemplateCacheDao extends AbstractCacheDao implements LoadableCacheDao {
+	
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+	
+	@SuppressWarnings("rawtypes")
+	private static final RedisScript<List> LOAD_SESSION =
+			new DefaultRedisScript<>(SessionScripts.LOAD_SESSION.getScript(), List.class);
 	
 	@Autowired
 	private RedisTemplate<String, Object> redisTemplate;
@@ -20,10 +41,21 @@ public class RedisTemplateCacheDao implements CacheDao {
 	@Resource(name = "redisTemplate")
 	private HashOperations<String, String, Object> hashOpt;
 	
+	private boolean pipelined = true;
+	
 	public RedisTemplateCacheDao(RedisTemplate<String, Object> redisTemplate,
 			HashOperations<String, String, Object> hashOpt) {
+		this(redisTemplate, hashOpt, true);
+	}
+	
+	/**
+	 * @param pipelined 为false时（如redis集群）批量命令不使用pipeline，逐条执行
+	 */
+	public RedisTemplateCacheDao(RedisTemplate<String, Object> redisTemplate,
+			HashOperations<String, String, Object> hashOpt, boolean pipelined) {
 		this.redisTemplate = redisTemplate;
 		this.hashOpt = hashOpt;
+		this.pipelined = pipelined;
 	}
 
 	@Override
@@ -81,4 +113,51 @@ public class RedisTemplateCacheDao implements CacheDao {
 		return redisTemplate.hasKey(key);
 	}
 
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		return hashOpt.increment(key, fieldName, delta);
+	}
+
+	@Override
+	public CacheBatch batch() {
+		if (!pipelined) {
+			return super.batch();
+		}
+		return new RedisTemplateCacheBatch(redisTemplate);
+	}
+
+	@Override
+	public boolean isLoadSupported() {
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public SessionSnapshot loadSession(String key, Collection<String> fieldNames, String createTimeName,
+			Object createTime, int expire) {
+		RedisSerializer<String> hashKeySerializer = (RedisSerializer<String>) redisTemplate.getHashKeySerializer();
+		RedisSerializer<Object> hashValueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+		List<byte[]> args = new ArrayList<>();
+		args.add(hashKeySerializer.serialize(createTimeName));
+		args.add(hashValueSerializer.serialize(createTime));
+		args.add(String.valueOf(expire).getBytes(DEFAULT_CHARSET));
+		args.add((fieldNames == null ? "1" : "0").getBytes(DEFAULT_CHARSET));
+		if (fieldNames != null) {
+			for (String name : fieldNames) {
+				args.add(hashKeySerializer.serialize(name));
+			}
+		}
+		//参数和结果都已是字节数组，不再经过RedisTemplate的序列化
+		List<Object> result = redisTemplate.execute(LOAD_SESSION, null, null,
+				Collections.singletonList(key), args.toArray());
+		Map<String, Object> attributes = new HashMap<>();
+		for (int i = 1; i + 1 < result.size(); i += 2) {
+			byte[] value = (byte[]) result.get(i + 1);
+			if (value != null) {
+				attributes.put(hashKeySerializer.deserialize((byte[]) result.get(i)),
+						hashValueSerializer.deserialize(value));
+			}
+		}
+		return new SessionSnapshot(((Long) result.get(0)) == 1, attributes);
+	}
 }
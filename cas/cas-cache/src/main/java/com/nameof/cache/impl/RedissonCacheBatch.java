@@ -0,0 +1,112 @@
+package com.nameof.cache.impl;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.concurrent.FutureListener;
+
+import org.redisson.api.RBatch;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * 基于Redisson {@link RBatch}的批量命令实现，返回的RFuture在execute之后完成
+ * @author ChengPan
+ */
+class RedissonCacheBatch implements CacheBatch {
+
+	private final RBatch batch;
+
+	private final Codec codec;
+
+	private boolean empty = true;
+
+	RedissonCacheBatch(RedissonClient redis, Codec codec) {
+		this.batch = redis.createBatch();
+		this.codec = codec;
+	}
+
+	@Override
+	public Future<Boolean> exists(String key) {
+		return getMap(key).isExistsAsync();
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(String key) {
+		return getMap(key).readAllMapAsync();
+	}
+
+	@Override
+	public Future<Object> getAttribute(String key, String fieldName) {
+		return getMap(key).getAsync(fieldName);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		getMap(key).fastPutAsync(fieldName, value);
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		if (!attributes.isEmpty()) {
+			getMap(key).putAllAsync(attributes);
+		}
+	}
+
+	@Override
+	public void removeAttributes(String key, Collection<String> fieldNames) {
+		if (!fieldNames.isEmpty()) {
+			getMap(key).fastRemoveAsync(fieldNames.toArray(new String[fieldNames.size()]));
+		}
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		getMap(key).expireAsync(expire, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void setPersist(String key) {
+		getMap(key).clearExpireAsync();
+	}
+
+	@Override
+	public void del(String key) {
+		getMap(key).deleteAsync();
+	}
+
+	@Override
+	public Future<Long> increment(String key, String fieldName, long delta) {
+		final CacheFuture<Long> result = new CacheFuture<>();
+		getMap(key).addAndGetAsync(fieldName, delta).addListener(new FutureListener<Object>() {
+			@Override
+			public void operationComplete(io.netty.util.concurrent.Future<Object> future) {
+				if (future.isSuccess()) {
+					result.set(((Number) future.getNow()).longValue());
+				}
+				else {
+					result.setException(future.cause());
+				}
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public void execute() {
+		if (!empty) {
+			batch.execute();
+		}
+	}
+
+	private RMapAsync<String, Object> getMap(String key) {
+		empty = false;
+		return batch.getMap(key, codec);
+	}
+}
@@ -1,18 +1,41 @@
 package com.nameof.cache.impl;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.redisson.api.RMap;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.ByteArrayCodec;
 import org.redisson.client.codec.Codec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
 import org.redisson.codec.FstCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import com.nameof.cache.CacheDao;
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.LoadableCacheDao;
+import com.nameof.cache.SessionSnapshot;
 
-public class RedissonCacheDao implements CacheDao {
+/**
+ * 基于Redisson的缓存数据访问层，会话的加载通过{@link SessionScripts#LOAD_SESSION}一次完成.<br>
+ * 脚本的参数和结果按codec的map编码手动转换，与RMap读写的数据保持一致
+ * @author ChengPan
+ */
+public class RedissonCacheDao extends AbstractCacheDao implements LoadableCacheDao {
+	
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
 	
 	@Autowired
 	private RedissonClient redis;
@@ -86,4 +109,87 @@ public class RedissonCacheDao implements CacheDao {
 	public boolean exists(String key) {
 		return redis.getMap(key, codec).isExists();
 	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		//HINCRBYFLOAT，结果按delta的类型解析为Long
+		return ((Number) redis.getMap(key, codec).addAndGet(fieldName, delta)).longValue();
+	}
+
+	@Override
+	public CacheBatch batch() {
+		//RBatch将命令合并为一次pipeline发送
+		return new RedissonCacheBatch(redis, codec);
+	}
+
+	@Override
+	public boolean isLoadSupported() {
+		return true;
+	}
+
+	@Override
+	public SessionSnapshot loadSession(String key, Collection<String> fieldNames, String createTimeName,
+			Object createTime, int expire) {
+		List<Object> args = new ArrayList<>();
+		args.add(encode(codec.getMapKeyEncoder(), createTimeName));
+		args.add(encode(codec.getMapValueEncoder(), createTime));
+		args.add(String.valueOf(expire).getBytes(DEFAULT_CHARSET));
+		args.add((fieldNames == null ? "1" : "0").getBytes(DEFAULT_CHARSET));
+		if (fieldNames != null) {
+			for (String name : fieldNames) {
+				args.add(encode(codec.getMapKeyEncoder(), name));
+			}
+		}
+		List<Object> result = evalSha(SessionScripts.LOAD_SESSION, Collections.<Object>singletonList(key), args.toArray());
+		Map<String, Object> attributes = new HashMap<>();
+		for (int i = 1; i + 1 < result.size(); i += 2) {
+			byte[] value = (byte[]) result.get(i + 1);
+			if (value != null) {
+				attributes.put((String) decode(codec.getMapKeyDecoder(), (byte[]) result.get(i)),
+						decode(codec.getMapValueDecoder(), value));
+			}
+		}
+		return new SessionSnapshot(((Long) result.get(0)) == 1, attributes);
+	}
+
+	/**
+	 * 以EVALSHA执行脚本，服务端没有缓存脚本时先SCRIPT LOAD
+	 */
+	private <R> R evalSha(LuaScript script, List<Object> keys, Object... args) {
+		RScript rScript = redis.getScript();
+		try {
+			return rScript.evalSha(RScript.Mode.READ_WRITE, ByteArrayCodec.INSTANCE, script.getSha1(),
+					RScript.ReturnType.MULTI, keys, args);
+		} catch (RedisException e) {
+			if (!LuaScript.isNoScript(e)) {
+				throw e;
+			}
+			rScript.scriptLoad(script.getScript());
+			return rScript.evalSha(RScript.Mode.READ_WRITE, ByteArrayCodec.INSTANCE, script.getSha1(),
+					RScript.ReturnType.MULTI, keys, args);
+		}
+	}
+
+	private static byte[] encode(Encoder encoder, Object value) {
+		try {
+			ByteBuf buf = encoder.encode(value);
+			try {
+				byte[] bytes = new byte[buf.readableBytes()];
+				buf.readBytes(bytes);
+				return bytes;
+			} finally {
+				buf.release();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("failed to encode " + value, e);
+		}
+	}
+
+	private static Object decode(Decoder<Object> decoder, byte[] bytes) {
+		try {
+			return decoder.decode(Unpooled.wrappedBuffer(bytes), null);
+		} catch (IOException e) {
+			throw new IllegalStateException("failed to decode", e);
+		}
+	}
 }
@@ -0,0 +1,53 @@
+package com.nameof.cache.impl;
+
+/**
+ * redis实现共用的会话Lua脚本
+ * @author ChengPan
+ */
+final class SessionScripts {
+
+	/**
+	 * 加载会话.<br>
+	 * KEYS[1]为会话key；ARGV依次为创建时间的属性名、创建时间、新会话的过期时间、是否读取全部属性（1或0），
+	 * 之后是要读取的属性名.<br>
+	 * 返回值第一个元素为加载之前会话是否存在（1或0），之后是属性名和属性值交替排列，不存在的属性值为nil
+	 */
+	static final LuaScript LOAD_SESSION = new LuaScript(
+			"local existed = redis.call('EXISTS', KEYS[1])\n"
+			+ "if existed == 0 then\n"
+			+ "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n"
+			+ "  if tonumber(ARGV[3]) >= 0 then redis.call('EXPIRE', KEYS[1], ARGV[3]) end\n"
+			+ "end\n"
+			+ "local result = {existed}\n"
+			+ "if ARGV[4] == '1' then\n"
+			+ "  local all = redis.call('HGETALL', KEYS[1])\n"
+			+ "  for i = 1, #all do result[i + 1] = all[i] end\n"
+			+ "elseif #ARGV > 4 then\n"
+			+ "  local values = redis.call('HMGET', KEYS[1], unpack(ARGV, 5))\n"
+			+ "  for i = 5, #ARGV do\n"
+			+ "    result[#result + 1] = ARGV[i]\n"
+			+ "    result[#result + 1] = values[i - 4]\n"
+			+ "  end\n"
+			+ "end\n"
+			+ "return result");
+
+	/**
+	 * 带版本号提交会话变更.<br>
+	 * KEYS[1]为会话key；ARGV依次为版本号属性名、是否强制写入、期望的版本号、过期时间、写入的属性数n，
+	 * 之后是n对属性名和属性值，剩余的是要删除的属性名.<br>
+	 * 返回写入之后的版本号，版本号不一致且不强制写入时返回-1
+	 */
+	static final LuaScript VERSIONED_UPDATE = new LuaScript(
+			"local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')\n"
+			+ "if ARGV[2] == '0' and current ~= tonumber(ARGV[3]) then return -1 end\n"
+			+ "local n = tonumber(ARGV[5])\n"
+			+ "if n > 0 then redis.call('HMSET', KEYS[1], unpack(ARGV, 6, 5 + n * 2)) end\n"
+			+ "if #ARGV > 5 + n * 2 then redis.call('HDEL', KEYS[1], unpack(ARGV, 6 + n * 2)) end\n"
+			+ "local version = redis.call('HINCRBY', KEYS[1], ARGV[1], 1)\n"
+			+ "local expire = tonumber(ARGV[4])\n"
+			+ "if expire < 0 then redis.call('PERSIST', KEYS[1]) else redis.call('EXPIRE', KEYS[1], expire) end\n"
+			+ "return version");
+
+	private SessionScripts() {
+	}
+}
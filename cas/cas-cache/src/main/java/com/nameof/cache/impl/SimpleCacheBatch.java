@@ -0,0 +1,180 @@
+package com.nameof.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * 不支持pipeline的缓存实现使用的{@link CacheBatch}，在execute时按顺序逐条调用{@link CacheDao}，
+ * 某条命令失败时不再执行之后的命令，它们的future以同一个异常完成
+ * @author ChengPan
+ */
+public class SimpleCacheBatch implements CacheBatch {
+
+	private final CacheDao cacheDao;
+
+	private final List<Command<?>> commands = new ArrayList<>();
+
+	public SimpleCacheBatch(CacheDao cacheDao) {
+		this.cacheDao = cacheDao;
+	}
+
+	@Override
+	public Future<Boolean> exists(final String key) {
+		return add(new Command<Boolean>() {
+			@Override
+			Boolean run() {
+				return cacheDao.exists(key);
+			}
+		});
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(final String key) {
+		return add(new Command<Map<String, Object>>() {
+			@Override
+			Map<String, Object> run() {
+				return cacheDao.getAllAttribute(key);
+			}
+		});
+	}
+
+	@Override
+	public Future<Object> getAttribute(final String key, final String fieldName) {
+		return add(new Command<Object>() {
+			@Override
+			Object run() {
+				return cacheDao.getAttribute(key, fieldName);
+			}
+		});
+	}
+
+	@Override
+	public void setAttribute(final String key, final String fieldName, final Object value) {
+		add(new Command<Void>() {
+			@Override
+			Void run() {
+				cacheDao.setAttribute(key, fieldName, value);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void setAllAttributes(final String key, final Map<String, Object> attributes) {
+		add(new Command<Void>() {
+			@Override
+			Void run() {
+				cacheDao.setAllAttributes(key, attributes);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void removeAttributes(final String key, final Collection<String> fieldNames) {
+		add(new Command<Void>() {
+			@Override
+			Void run() {
+				for (String fieldName : fieldNames) {
+					cacheDao.removeAttribute(key, fieldName);
+				}
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void setExpire(final String key, final int expire) {
+		add(new Command<Void>() {
+			@Override
+			Void run() {
+				cacheDao.setExpire(key, expire);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void setPersist(final String key) {
+		add(new Command<Void>() {
+			@Override
+			Void run() {
+				cacheDao.setPersist(key);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public void del(final String key) {
+		add(new Command<Void>() {
+			@Override
+			Void run() {
+				cacheDao.del(key);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public Future<Long> increment(final String key, final String fieldName, final long delta) {
+		return add(new Command<Long>() {
+			@Override
+			Long run() {
+				return cacheDao.increment(key, fieldName, delta);
+			}
+		});
+	}
+
+	@Override
+	public void execute() {
+		RuntimeException error = null;
+		try {
+			for (Command<?> command : commands) {
+				if (error == null) {
+					error = command.execute();
+				}
+				else {
+					command.future.setException(error);
+				}
+			}
+		} finally {
+			commands.clear();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private <T> Future<T> add(Command<T> command) {
+		commands.add(command);
+		return command.future;
+	}
+
+	private abstract static class Command<T> {
+
+		private final CacheFuture<T> future = new CacheFuture<>();
+
+		abstract T run();
+
+		/**
+		 * @return 命令失败时的异常
+		 */
+		RuntimeException execute() {
+			try {
+				future.set(run());
+				return null;
+			} catch (RuntimeException e) {
+				future.setException(e);
+				return e;
+			}
+		}
+	}
+}
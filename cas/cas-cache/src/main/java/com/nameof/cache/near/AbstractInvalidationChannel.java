@@ -0,0 +1,66 @@
+package com.nameof.cache.near;
+
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 消息格式为"节点ID key"，用于过滤本节点发出的通知
+ * @author ChengPan
+ */
+public abstract class AbstractInvalidationChannel implements InvalidationChannel {
+
+	public static final String DEFAULT_CHANNEL = "cas:session:invalidate";
+
+	protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+	protected final String channel;
+
+	private final String nodeId = UUID.randomUUID().toString().replace("-", "");
+
+	protected volatile Listener listener;
+
+	protected AbstractInvalidationChannel(String channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public void publish(String key) {
+		try {
+			doPublish(nodeId + " " + key);
+		} catch (RuntimeException e) {
+			//通知失败时其他节点仍会通过版本号发现副本已过期
+			logger.warn("failed to publish invalidation of {}", key, e);
+		}
+	}
+
+	@Override
+	public void subscribe(Listener listener) {
+		this.listener = listener;
+		doSubscribe();
+	}
+
+	protected abstract void doPublish(String message);
+
+	protected abstract void doSubscribe();
+
+	/**
+	 * 子类收到消息时调用
+	 */
+	protected void onMessage(String message) {
+		Listener l = listener;
+		int i = message.indexOf(' ');
+		if (l == null || i < 0 || nodeId.equals(message.substring(0, i))) {
+			return;
+		}
+		l.onInvalidate(message.substring(i + 1));
+	}
+
+	protected void onReset() {
+		Listener l = listener;
+		if (l != null) {
+			l.onReset();
+		}
+	}
+}
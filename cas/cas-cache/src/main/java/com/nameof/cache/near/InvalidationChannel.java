@@ -0,0 +1,39 @@
+package com.nameof.cache.near;
+
+import java.io.Closeable;
+
+/**
+ * 节点间的缓存失效通知通道，某个节点修改了会话后通知其他节点丢弃本地副本.<br>
+ *
+ * 通知不保证送达（如订阅连接断开期间），所以只用于尽快释放过期副本，
+ * 本地副本是否可用最终由{@link NearCacheDao}的版本号校验决定
+ * @author ChengPan
+ */
+public interface InvalidationChannel extends Closeable {
+
+	/**
+	 * 通知其他节点key已被修改，本节点不会收到自己发出的通知
+	 */
+	void publish(String key);
+
+	/**
+	 * 开始接收其他节点的通知
+	 */
+	void subscribe(Listener listener);
+
+	/**
+	 * 停止接收通知并释放连接
+	 */
+	@Override
+	void close();
+
+	interface Listener {
+
+		void onInvalidate(String key);
+
+		/**
+		 * 订阅连接重建时调用，期间可能丢失了通知
+		 */
+		void onReset();
+	}
+}
@@ -0,0 +1,109 @@
+package com.nameof.cache.near;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
+
+/**
+ * 基于Jedis pub/sub的失效通知，订阅占用一个独立线程及一个连接池中的连接，连接断开后自动重新订阅
+ * @author ChengPan
+ */
+public class JedisInvalidationChannel extends AbstractInvalidationChannel {
+
+	private static final long RETRY_INTERVAL = 1000;
+
+	private volatile boolean running;
+
+	private volatile JedisPubSub pubSub;
+
+	private Thread subscriber;
+
+	private final JedisTemplate jedisTemplate;
+
+	public JedisInvalidationChannel(JedisTemplate jedisTemplate) {
+		this(jedisTemplate, DEFAULT_CHANNEL);
+	}
+
+	public JedisInvalidationChannel(JedisTemplate jedisTemplate, String channel) {
+		super(channel);
+		this.jedisTemplate = jedisTemplate;
+	}
+
+	@Override
+	protected void doPublish(final String message) {
+		jedisTemplate.execute(new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.publish(channel, message);
+			}
+		});
+	}
+
+	@Override
+	protected void doSubscribe() {
+		running = true;
+		subscriber = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				subscribeLoop();
+			}
+		}, "near-cache-invalidation");
+		subscriber.setDaemon(true);
+		subscriber.start();
+	}
+
+	private void subscribeLoop() {
+		boolean reconnect = false;
+		while (running) {
+			try {
+				if (reconnect) {
+					onReset();
+				}
+				reconnect = true;
+				final JedisPubSub current = new JedisPubSub() {
+					@Override
+					public void onMessage(String channel, String message) {
+						JedisInvalidationChannel.this.onMessage(message);
+					}
+				};
+				pubSub = current;
+				//阻塞直到取消订阅或连接断开，之后归还连接
+				jedisTemplate.execute(new JedisCallback<Void>() {
+					@Override
+					public Void doInJedis(Jedis jedis) {
+						jedis.subscribe(current, channel);
+						return null;
+					}
+				});
+			} catch (RuntimeException e) {
+				if (running) {
+					logger.warn("invalidation subscription of {} lost, retry later", channel, e);
+					sleep();
+				}
+			}
+		}
+	}
+
+	private void sleep() {
+		try {
+			Thread.sleep(RETRY_INTERVAL);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		JedisPubSub current = pubSub;
+		if (current != null && current.isSubscribed()) {
+			current.unsubscribe();
+		}
+		if (subscriber != null) {
+			subscriber.interrupt();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.nameof.cache.near;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.lambdaworks.redis.RedisClient;
+import com.lambdaworks.redis.pubsub.RedisPubSubAdapter;
+import com.lambdaworks.redis.pubsub.RedisPubSubConnection;
+
+/**
+ * 基于Lettuce pub/sub连接的失效通知，连接断开后由Lettuce自动重连并重新订阅.<br>
+ *
+ * 处于订阅状态的连接只能执行订阅相关的命令，所以发布使用单独的连接
+ * @author ChengPan
+ */
+public class LettuceInvalidationChannel extends AbstractInvalidationChannel {
+
+	private final RedisPubSubConnection<String, String> subscriber;
+
+	private final RedisPubSubConnection<String, String> publisher;
+
+	public LettuceInvalidationChannel(RedisClient client) {
+		this(client, DEFAULT_CHANNEL);
+	}
+
+	public LettuceInvalidationChannel(RedisClient client, String channel) {
+		super(channel);
+		this.subscriber = client.connectPubSub();
+		this.publisher = client.connectPubSub();
+	}
+
+	@Override
+	protected void doPublish(String message) {
+		publisher.publish(channel, message);
+	}
+
+	@Override
+	protected void doSubscribe() {
+		subscriber.addListener(new RedisPubSubAdapter<String, String>() {
+
+			private final AtomicBoolean subscribed = new AtomicBoolean();
+
+			@Override
+			public void message(String channel, String message) {
+				onMessage(message);
+			}
+
+			@Override
+			public void subscribed(String channel, long count) {
+				//首次订阅之后的subscribed表示重连后重新订阅
+				if (!subscribed.compareAndSet(false, true)) {
+					onReset();
+				}
+			}
+		});
+		subscriber.subscribe(channel);
+	}
+
+	@Override
+	public void close() {
+		subscriber.close();
+		publisher.close();
+	}
+}
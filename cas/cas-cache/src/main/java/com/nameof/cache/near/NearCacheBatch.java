@@ -0,0 +1,203 @@
+package com.nameof.cache.near;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheFuture;
+
+/**
+ * {@link NearCacheDao}的批量命令：读取全部属性转换为读取版本号，写入时追加版本号的递增，
+ * 命令仍通过远程缓存的batch一次性发送
+ * @author ChengPan
+ */
+class NearCacheBatch implements CacheBatch {
+
+	private final NearCacheDao nearCache;
+
+	private final CacheBatch delegate;
+
+	private final Map<String, Write> writes = new LinkedHashMap<>();
+
+	private final Set<String> deleted = new LinkedHashSet<>();
+
+	private final List<Read> reads = new ArrayList<>();
+
+	NearCacheBatch(NearCacheDao nearCache, CacheBatch delegate) {
+		this.nearCache = nearCache;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Future<Boolean> exists(String key) {
+		return delegate.exists(key);
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(String key) {
+		Read read = new Read(key, delegate.getAttribute(key, NearCacheDao.VERSION_KEY));
+		reads.add(read);
+		return read.result;
+	}
+
+	@Override
+	public Future<Object> getAttribute(String key, String fieldName) {
+		return delegate.getAttribute(key, fieldName);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		delegate.setAttribute(key, fieldName, value);
+		Write write = write(key);
+		write.puts.put(fieldName, value);
+		write.removes.remove(fieldName);
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		if (attributes.isEmpty()) {
+			return;
+		}
+		delegate.setAllAttributes(key, attributes);
+		Write write = write(key);
+		write.puts.putAll(attributes);
+		write.removes.removeAll(attributes.keySet());
+	}
+
+	@Override
+	public void removeAttributes(String key, Collection<String> fieldNames) {
+		if (fieldNames.isEmpty()) {
+			return;
+		}
+		delegate.removeAttributes(key, fieldNames);
+		Write write = write(key);
+		write.puts.keySet().removeAll(fieldNames);
+		write.removes.addAll(fieldNames);
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		delegate.setExpire(key, expire);
+	}
+
+	@Override
+	public void setPersist(String key) {
+		delegate.setPersist(key);
+	}
+
+	@Override
+	public void del(String key) {
+		delegate.del(key);
+		//删除之前的写入随会话一起删除，无需再递增版本号，避免重新创建出只有版本号的key
+		writes.remove(key);
+		deleted.add(key);
+	}
+
+	@Override
+	public Future<Long> increment(String key, String fieldName, long delta) {
+		Future<Long> result = delegate.increment(key, fieldName, delta);
+		//计数器的新值在执行之后才知道，直接丢弃本地副本
+		write(key).discard = true;
+		return result;
+	}
+
+	@Override
+	public void execute() {
+		for (Entry<String, Write> entry : writes.entrySet()) {
+			Write write = entry.getValue();
+			write.version = delegate.increment(entry.getKey(), NearCacheDao.VERSION_KEY, write.delta);
+		}
+		try {
+			delegate.execute();
+		} catch (RuntimeException e) {
+			for (String key : writes.keySet()) {
+				nearCache.evict(key);
+			}
+			for (String key : deleted) {
+				nearCache.evict(key);
+			}
+			for (Read read : reads) {
+				read.result.setException(e);
+			}
+			clear();
+			throw e;
+		}
+		//读命令位于写命令之前时，版本号与本地副本一致即可使用副本，所以先处理读
+		for (Read read : reads) {
+			try {
+				Map<String, Object> local = nearCache.getIfCurrent(read.key, CacheFuture.getResult(read.version));
+				read.result.set(local != null ? local : nearCache.load(read.key));
+			} catch (RuntimeException e) {
+				read.result.setException(e);
+			}
+		}
+		for (String key : deleted) {
+			nearCache.evict(key);
+			nearCache.publish(key);
+		}
+		for (Entry<String, Write> entry : writes.entrySet()) {
+			String key = entry.getKey();
+			Write write = entry.getValue();
+			//删除之后又写入的会话是重新创建的，不能应用到旧副本
+			if (write.discard || deleted.contains(key)) {
+				nearCache.evict(key);
+			}
+			else {
+				nearCache.apply(key, write.puts, write.removes, write.delta, CacheFuture.getResult(write.version));
+			}
+			nearCache.publish(key);
+		}
+		clear();
+	}
+
+	private Write write(String key) {
+		Write write = writes.get(key);
+		if (write == null) {
+			write = new Write();
+			writes.put(key, write);
+		}
+		return write;
+	}
+
+	private void clear() {
+		writes.clear();
+		deleted.clear();
+		reads.clear();
+	}
+
+	private static class Write {
+
+		private final Map<String, Object> puts = new HashMap<>();
+
+		private final Set<String> removes = new HashSet<>();
+
+		private final long delta = NearCacheDao.nextVersionDelta();
+
+		private Future<Long> version;
+
+		private boolean discard;
+	}
+
+	private static class Read {
+
+		private final String key;
+
+		private final Future<Object> version;
+
+		private final CacheFuture<Map<String, Object>> result = new CacheFuture<>();
+
+		Read(String key, Future<Object> version) {
+			this.key = key;
+			this.version = version;
+		}
+	}
+}
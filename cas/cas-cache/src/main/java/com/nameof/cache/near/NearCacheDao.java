@@ -0,0 +1,285 @@
+package com.nameof.cache.near;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.CacheFuture;
+import com.nameof.cache.VersionedCacheDao;
+import com.nameof.cache.impl.AbstractCacheDao;
+
+/**
+ * 远程{@link CacheDao}之前的进程内近端缓存（L1），保存最近使用的会话属性副本.<br>
+ *
+ * 每次经由NearCacheDao的写入都会在同一批命令中对会话hash的{@link #VERSION_KEY}增加一个随机的正数，
+ * 读取全部属性时只需要HGET版本号（与EXISTS等命令在同一pipeline中），与本地副本的版本一致才使用本地副本，
+ * 否则再执行一次HGETALL；随机增量避免会话被删除或过期后重建时版本号与旧副本重复.<br>
+ *
+ * 本节点提交的变更在版本号连续（远程版本 = 本地版本 + 本次增量）时直接应用到本地副本，
+ * 同一节点连续处理同一用户的请求时不再需要HGETALL；其他节点通过{@link InvalidationChannel}收到通知后丢弃副本.<br>
+ *
+ * 带版本号的提交交给远程缓存执行，成功后再增加{@link #VERSION_KEY}并丢弃本地副本.<br>
+ *
+ * 副本中的属性值与会话共享引用，与{@link com.nameof.cache.CacheDao}的其他实现一样，修改可变对象之后需要重新set
+ * @author ChengPan
+ */
+public class NearCacheDao extends AbstractCacheDao
+		implements VersionedCacheDao, InvalidationChannel.Listener, Closeable {
+
+	/** 会话hash中的版本号属性 */
+	public static final String VERSION_KEY = "@nearCacheVersion";
+
+	private final CacheDao delegate;
+
+	private final InvalidationChannel channel;
+
+	private final long ttlMillis;
+
+	private final Map<String, CachedSession> sessions;
+
+	/**
+	 * @param delegate 远程缓存
+	 * @param channel 失效通知通道，可以为null
+	 * @param maxSize 本地最多保存的会话数，超过时淘汰最近最少使用的会话
+	 * @param ttl 本地副本的最长保存时间，单位为秒
+	 */
+	public NearCacheDao(CacheDao delegate, InvalidationChannel channel, final int maxSize, int ttl) {
+		this.delegate = delegate;
+		this.channel = channel;
+		this.ttlMillis = ttl * 1000L;
+		this.sessions = new LinkedHashMap<String, CachedSession>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedSession> eldest) {
+				return size() > maxSize;
+			}
+		};
+		if (channel != null) {
+			channel.subscribe(this);
+		}
+	}
+
+	@Override
+	public Map<String, Object> getAllAttribute(String key) {
+		Map<String, Object> local = getIfCurrent(key, delegate.getAttribute(key, VERSION_KEY));
+		return local != null ? local : load(key);
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		CacheBatch batch = batch();
+		batch.setAllAttributes(key, attributes);
+		batch.execute();
+	}
+
+	@Override
+	public Object getAttribute(String key, String fieldName) {
+		return delegate.getAttribute(key, fieldName);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		CacheBatch batch = batch();
+		batch.setAttribute(key, fieldName, value);
+		batch.execute();
+	}
+
+	@Override
+	public void removeAttribute(String key, String fieldName) {
+		CacheBatch batch = batch();
+		batch.removeAttributes(key, Collections.singleton(fieldName));
+		batch.execute();
+	}
+
+	@Override
+	public Collection<String> getAttributeKeys(String key) {
+		Set<String> keys = new HashSet<>(delegate.getAttributeKeys(key));
+		keys.remove(VERSION_KEY);
+		return keys;
+	}
+
+	@Override
+	public void del(String key) {
+		CacheBatch batch = batch();
+		batch.del(key);
+		batch.execute();
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		delegate.setExpire(key, expire);
+	}
+
+	@Override
+	public Long getExpire(String key) {
+		return delegate.getExpire(key);
+	}
+
+	@Override
+	public void setPersist(String key) {
+		delegate.setPersist(key);
+	}
+
+	@Override
+	public boolean exists(String key) {
+		return delegate.exists(key);
+	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		CacheBatch batch = batch();
+		Future<Long> result = batch.increment(key, fieldName, delta);
+		batch.execute();
+		return CacheFuture.getResult(result);
+	}
+
+	@Override
+	public CacheBatch batch() {
+		return new NearCacheBatch(this, delegate.batch());
+	}
+
+	@Override
+	public boolean isVersioningSupported() {
+		return delegate instanceof VersionedCacheDao && ((VersionedCacheDao) delegate).isVersioningSupported();
+	}
+
+	@Override
+	public long updateAttributesVersioned(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire, long expectedVersion, boolean force) {
+		long version = ((VersionedCacheDao) delegate).updateAttributesVersioned(key, attributes, removedNames,
+				expire, expectedVersion, force);
+		if (version >= 0) {
+			//写入之后再改变近端缓存的版本号，其他节点不会以新版本号缓存写入之前的数据
+			delegate.increment(key, VERSION_KEY, nextVersionDelta());
+			evict(key);
+			publish(key);
+		}
+		return version;
+	}
+
+	@Override
+	public void onInvalidate(String key) {
+		evict(key);
+	}
+
+	@Override
+	public void onReset() {
+		synchronized (sessions) {
+			sessions.clear();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * 本地副本存在、未过期且版本号与远程一致时返回其拷贝，否则返回null
+	 */
+	Map<String, Object> getIfCurrent(String key, Object remoteVersion) {
+		if (!(remoteVersion instanceof Number)) {
+			return null;
+		}
+		synchronized (sessions) {
+			CachedSession session = sessions.get(key);
+			if (session == null) {
+				return null;
+			}
+			if (session.version != ((Number) remoteVersion).longValue() || session.isExpired()) {
+				sessions.remove(key);
+				return null;
+			}
+			return new HashMap<>(session.attributes);
+		}
+	}
+
+	/**
+	 * 从远程加载全部属性并保存本地副本
+	 */
+	Map<String, Object> load(String key) {
+		Map<String, Object> attributes = new HashMap<>(delegate.getAllAttribute(key));
+		Object version = attributes.remove(VERSION_KEY);
+		if (version instanceof Number) {
+			long v = ((Number) version).longValue();
+			synchronized (sessions) {
+				CachedSession current = sessions.get(key);
+				//并发加载时不覆盖其他线程已保存的副本
+				if (current == null || current.version != v) {
+					sessions.put(key, new CachedSession(new HashMap<>(attributes), v));
+				}
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * 将本节点提交的变更应用到本地副本，版本号不连续（期间有其他写入）时丢弃副本
+	 */
+	void apply(String key, Map<String, Object> puts, Collection<String> removes, long delta, long newVersion) {
+		synchronized (sessions) {
+			CachedSession session = sessions.get(key);
+			if (session == null) {
+				return;
+			}
+			if (session.version + delta != newVersion || session.isExpired()) {
+				sessions.remove(key);
+				return;
+			}
+			Map<String, Object> attributes = new HashMap<>(session.attributes);
+			attributes.putAll(puts);
+			attributes.keySet().removeAll(removes);
+			sessions.put(key, new CachedSession(attributes, newVersion));
+		}
+	}
+
+	void evict(String key) {
+		synchronized (sessions) {
+			sessions.remove(key);
+		}
+	}
+
+	void publish(String key) {
+		if (channel != null) {
+			channel.publish(key);
+		}
+	}
+
+	/**
+	 * @return 本次写入使用的版本号增量
+	 */
+	static long nextVersionDelta() {
+		return ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE) + 1L;
+	}
+
+	private class CachedSession {
+
+		private final Map<String, Object> attributes;
+
+		private final long version;
+
+		private final long expireTime;
+
+		CachedSession(Map<String, Object> attributes, long version) {
+			this.attributes = attributes;
+			this.version = version;
+			this.expireTime = System.currentTimeMillis() + ttlMillis;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() > expireTime;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.nameof.cache.near;
+
+import java.nio.charset.Charset;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 基于spring-data-redis {@link RedisMessageListenerContainer}的失效通知.<br>
+ * 消息直接以UTF-8编码收发，不经过RedisTemplate的value序列化
+ * @author ChengPan
+ */
+public class RedisTemplateInvalidationChannel extends AbstractInvalidationChannel {
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private final RedisTemplate<String, Object> redisTemplate;
+
+	private RedisMessageListenerContainer container;
+
+	public RedisTemplateInvalidationChannel(RedisTemplate<String, Object> redisTemplate) {
+		this(redisTemplate, DEFAULT_CHANNEL);
+	}
+
+	public RedisTemplateInvalidationChannel(RedisTemplate<String, Object> redisTemplate, String channel) {
+		super(channel);
+		this.redisTemplate = redisTemplate;
+	}
+
+	@Override
+	protected void doPublish(final String message) {
+		redisTemplate.execute(new RedisCallback<Object>() {
+			@Override
+			public Object doInRedis(RedisConnection connection) throws DataAccessException {
+				return connection.publish(channel.getBytes(DEFAULT_CHARSET), message.getBytes(DEFAULT_CHARSET));
+			}
+		});
+	}
+
+	@Override
+	protected void doSubscribe() {
+		RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+		container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.addMessageListener(new MessageListener() {
+			@Override
+			public void onMessage(Message message, byte[] pattern) {
+				RedisTemplateInvalidationChannel.this.onMessage(new String(message.getBody(), DEFAULT_CHARSET));
+			}
+		}, new ChannelTopic(channel));
+		container.afterPropertiesSet();
+		container.start();
+	}
+
+	@Override
+	public void close() {
+		if (container != null) {
+			try {
+				container.destroy();
+			} catch (Exception e) {
+				logger.warn("failed to stop invalidation listener container", e);
+			}
+		}
+	}
+}
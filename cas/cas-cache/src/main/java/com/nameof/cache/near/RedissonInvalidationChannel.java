@@ -0,0 +1,72 @@
+package com.nameof.cache.near;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.api.listener.StatusListener;
+import org.redisson.client.codec.StringCodec;
+
+/**
+ * 基于Redisson {@link RTopic}的失效通知，连接断开后由Redisson自动重新订阅
+ * @author ChengPan
+ */
+public class RedissonInvalidationChannel extends AbstractInvalidationChannel {
+
+	private final RTopic<String> topic;
+
+	private int messageListenerId = -1;
+
+	private int statusListenerId = -1;
+
+	public RedissonInvalidationChannel(RedissonClient redis) {
+		this(redis, DEFAULT_CHANNEL);
+	}
+
+	public RedissonInvalidationChannel(RedissonClient redis, String channel) {
+		super(channel);
+		this.topic = redis.getTopic(channel, StringCodec.INSTANCE);
+	}
+
+	@Override
+	protected void doPublish(String message) {
+		topic.publish(message);
+	}
+
+	@Override
+	protected void doSubscribe() {
+		messageListenerId = topic.addListener(new MessageListener<String>() {
+			@Override
+			public void onMessage(String channel, String message) {
+				RedissonInvalidationChannel.this.onMessage(message);
+			}
+		});
+		statusListenerId = topic.addListener(new StatusListener() {
+
+			private final AtomicBoolean subscribed = new AtomicBoolean();
+
+			@Override
+			public void onSubscribe(String channel) {
+				//首次订阅之后的onSubscribe表示重新订阅
+				if (!subscribed.compareAndSet(false, true)) {
+					onReset();
+				}
+			}
+
+			@Override
+			public void onUnsubscribe(String channel) {
+			}
+		});
+	}
+
+	@Override
+	public void close() {
+		if (messageListenerId != -1) {
+			topic.removeListener(messageListenerId);
+		}
+		if (statusListenerId != -1) {
+			topic.removeListener(statusListenerId);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package com.nameof.cache.offheap;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * 保存在堆外直接内存中的键值存储，值为byte[]，每个条目有独立的空闲过期时间（TTI）.<br>
+ *
+ * 总容量平均分配给若干{@link Segment}，key按hash落在其中一个分段上，不同分段之间没有锁竞争；
+ * 容量用尽时在分段内按LRU淘汰，后台线程定期清理已过期的条目，访问时发现过期的条目也会立即释放.<br>
+ *
+ * 写入使用版本号进行乐观并发控制：{@link #get(String)}返回值和版本号，
+ * {@link #put(String, byte[], int, long)}只有在版本号未改变时才会写入，
+ * 调用方在锁外完成反序列化和修改，锁内只有内存拷贝.<br>
+ *
+ * 直接内存受-XX:MaxDirectMemorySize限制，需要不小于配置的容量
+ * @author ChengPan
+ */
+@ManagedResource(objectName = "com.nameof:type=OffHeapStore,name=session", description = "off-heap session store")
+public class OffHeapStore implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(OffHeapStore.class);
+
+	/** 不过期 */
+	public static final int ETERNAL = -1;
+
+	private final Segment[] segments;
+
+	private final ScheduledExecutorService sweeper;
+
+	/**
+	 * @param capacity 总容量，单位为字节
+	 * @param segmentCount 分段数，每个分段的容量不能超过2G
+	 * @param blockSize 内存块大小，单位为字节，每块有4个字节用于链接下一块
+	 * @param sweepInterval 清理过期条目的间隔，单位为秒，小于等于0时只在访问时清理
+	 */
+	public OffHeapStore(long capacity, int segmentCount, int blockSize, int sweepInterval) {
+		if (segmentCount <= 0 || blockSize <= 8) {
+			throw new IllegalArgumentException("segmentCount must be positive and blockSize greater than 8");
+		}
+		long segmentCapacity = capacity / segmentCount;
+		if (segmentCapacity < blockSize || segmentCapacity > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("capacity of each segment must be between blockSize and 2G, got "
+					+ segmentCapacity);
+		}
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment((int) segmentCapacity, blockSize);
+		}
+		if (sweepInterval > 0) {
+			sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "offheap-session-sweeper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			sweeper.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						sweep();
+					} catch (RuntimeException e) {
+						logger.error("failed to sweep expired sessions", e);
+					}
+				}
+			}, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+		}
+		else {
+			sweeper = null;
+		}
+	}
+
+	/**
+	 * 读取值并刷新空闲计时
+	 * @return 不存在或已过期时返回null
+	 */
+	public Snapshot get(String key) {
+		return segment(key).get(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * 版本号与读取时一致才写入，并刷新空闲计时
+	 * @param expire 空闲过期时间，单位为秒，{@link #ETERNAL}表示不过期
+	 * @param expectedVersion {@link Snapshot#getVersion()}，期望key不存在时为0
+	 * @return false表示key在读取之后被修改过，需要重新读取
+	 * @throws IllegalArgumentException 值超过一个分段的容量
+	 */
+	public boolean put(String key, byte[] value, int expire, long expectedVersion) {
+		return segment(key).put(key, value, expire, expectedVersion, System.currentTimeMillis());
+	}
+
+	public boolean remove(String key) {
+		return segment(key).remove(key);
+	}
+
+	/**
+	 * 修改空闲过期时间并刷新空闲计时
+	 * @return key不存在时返回false
+	 */
+	public boolean expire(String key, int expire) {
+		return segment(key).expire(key, expire, System.currentTimeMillis());
+	}
+
+	/**
+	 * @return 剩余的空闲时间，单位为毫秒，不过期返回-1，不存在返回-2
+	 */
+	public long ttl(String key) {
+		return segment(key).ttl(key, System.currentTimeMillis());
+	}
+
+	public boolean contains(String key) {
+		return segment(key).contains(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * 逐个分段释放已过期的条目
+	 */
+	@ManagedOperation(description = "release expired entries now")
+	public void sweep() {
+		long now = System.currentTimeMillis();
+		for (Segment segment : segments) {
+			segment.sweep(now);
+		}
+	}
+
+	/**
+	 * 停止清理线程，直接内存在存储对象被回收时释放
+	 */
+	@Override
+	public void close() {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+		}
+	}
+
+	private Segment segment(String key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[(h & Integer.MAX_VALUE) % segments.length];
+	}
+
+	@ManagedAttribute(description = "number of entries")
+	public int getSize() {
+		int n = 0;
+		for (Segment segment : segments) {
+			n += segment.size();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "bytes of off-heap memory allocated to entries, including block overhead")
+	public long getUsedBytes() {
+		long n = 0;
+		for (Segment segment : segments) {
+			n += segment.usedBytes();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "bytes of off-heap memory reserved")
+	public long getCapacity() {
+		long n = 0;
+		for (Segment segment : segments) {
+			n += segment.capacity();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "number of entries evicted because memory was full")
+	public long getEvictionCount() {
+		long n = 0;
+		for (Segment segment : segments) {
+			n += segment.evictionCount();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "number of entries released after their idle time expired")
+	public long getExpiredCount() {
+		long n = 0;
+		for (Segment segment : segments) {
+			n += segment.expiredCount();
+		}
+		return n;
+	}
+
+	/**
+	 * 读取时的值、版本号和空闲过期时间
+	 */
+	public static final class Snapshot {
+
+		private final byte[] value;
+
+		private final long version;
+
+		private final int expire;
+
+		Snapshot(byte[] value, long version, int expire) {
+			this.value = value;
+			this.version = version;
+			this.expire = expire;
+		}
+
+		public byte[] getValue() {
+			return value;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public int getExpire() {
+			return expire;
+		}
+	}
+}
@@ -0,0 +1,284 @@
+package com.nameof.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * {@link OffHeapStore}的一个分段，独占一块直接内存和一把锁.<br>
+ *
+ * 直接内存被划分为大小相同的块，每块的前4个字节保存链表中下一块的序号，值按块大小切分后存储在一条块链上，
+ * 空闲块同样通过这4个字节串成空闲链表，分配和释放都不需要额外的堆内存；从未使用过的块不进入空闲链表，
+ * 创建分段时不需要初始化整块内存.<br>
+ *
+ * 堆上只保留按访问顺序排列的索引，空间不足时从最久未访问的条目开始淘汰
+ * @author ChengPan
+ */
+final class Segment {
+
+	private static final int NO_BLOCK = -1;
+
+	/** 每块中保存下一块序号的字节数 */
+	private static final int LINK_LENGTH = 4;
+
+	private final ByteBuffer memory;
+
+	private final int blockSize;
+
+	private final int blockCount;
+
+	/** 空闲链表的头部 */
+	private int freeHead = NO_BLOCK;
+
+	private int freeCount;
+
+	/** [unused, blockCount)之间的块从未分配过 */
+	private int unused;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long nextVersion;
+
+	private long evictionCount;
+
+	private long expiredCount;
+
+	Segment(int capacity, int blockSize) {
+		this.blockSize = blockSize;
+		this.blockCount = capacity / blockSize;
+		this.memory = ByteBuffer.allocateDirect(blockCount * blockSize);
+	}
+
+	/**
+	 * 读取值并刷新空闲计时
+	 * @return 不存在或已过期时返回null
+	 */
+	synchronized OffHeapStore.Snapshot get(String key, long now) {
+		Entry entry = live(key, now);
+		if (entry == null) {
+			return null;
+		}
+		entry.lastAccess = now;
+		return new OffHeapStore.Snapshot(read(entry), entry.version, entry.expire);
+	}
+
+	/**
+	 * 版本号与expectedVersion一致时写入值，写入之后版本号改变
+	 * @param expectedVersion 读取时的版本号，0表示期望key不存在
+	 * @return false表示值已被其他线程修改
+	 */
+	synchronized boolean put(String key, byte[] value, int expire, long expectedVersion, long now) {
+		int blocks = blocksFor(value.length);
+		if (blocks > blockCount) {
+			throw new IllegalArgumentException("value of " + value.length + " bytes exceeds segment capacity");
+		}
+		Entry current = live(key, now);
+		if ((current == null ? 0 : current.version) != expectedVersion) {
+			return false;
+		}
+		if (current != null) {
+			release(entries.remove(key));
+		}
+		int first = allocate(blocks);
+		write(first, value);
+		Entry entry = new Entry(first, value.length, ++nextVersion);
+		entry.expire = expire;
+		entry.lastAccess = now;
+		entries.put(key, entry);
+		return true;
+	}
+
+	synchronized boolean remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry == null) {
+			return false;
+		}
+		release(entry);
+		return true;
+	}
+
+	/**
+	 * 修改空闲过期时间并刷新空闲计时，不改变值和版本号
+	 */
+	synchronized boolean expire(String key, int expire, long now) {
+		Entry entry = live(key, now);
+		if (entry == null) {
+			return false;
+		}
+		entry.expire = expire;
+		entry.lastAccess = now;
+		return true;
+	}
+
+	/**
+	 * @return 剩余的空闲时间（毫秒），不过期返回-1，不存在返回-2
+	 */
+	synchronized long ttl(String key, long now) {
+		Entry entry = live(key, now);
+		if (entry == null) {
+			return -2;
+		}
+		if (entry.expire < 0) {
+			return -1;
+		}
+		return entry.expire * 1000L - (now - entry.lastAccess);
+	}
+
+	synchronized boolean contains(String key, long now) {
+		return live(key, now) != null;
+	}
+
+	/**
+	 * 释放所有已过期的条目
+	 */
+	synchronized void sweep(long now) {
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (entry.isExpired(now)) {
+				it.remove();
+				release(entry);
+				expiredCount++;
+			}
+		}
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long usedBytes() {
+		return (long) (unused - freeCount) * blockSize;
+	}
+
+	long capacity() {
+		return (long) blockCount * blockSize;
+	}
+
+	synchronized long evictionCount() {
+		return evictionCount;
+	}
+
+	synchronized long expiredCount() {
+		return expiredCount;
+	}
+
+	/**
+	 * 过期的条目在访问时立即释放，不必等待下一次清理
+	 */
+	private Entry live(String key, long now) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.isExpired(now)) {
+			entries.remove(key);
+			release(entry);
+			expiredCount++;
+			return null;
+		}
+		return entry;
+	}
+
+	private int blocksFor(int length) {
+		int payload = blockSize - LINK_LENGTH;
+		return Math.max(1, (length + payload - 1) / payload);
+	}
+
+	/**
+	 * 分配由blocks个块组成的块链，空闲块不足时按LRU淘汰其他条目
+	 * @return 块链的第一块
+	 */
+	private int allocate(int blocks) {
+		Iterator<Entry> lru = entries.values().iterator();
+		while (freeCount + blockCount - unused < blocks) {
+			Entry eldest = lru.next();
+			lru.remove();
+			release(eldest);
+			evictionCount++;
+		}
+		int first = NO_BLOCK;
+		int previous = NO_BLOCK;
+		for (int i = 0; i < blocks; i++) {
+			int block;
+			if (freeHead != NO_BLOCK) {
+				block = freeHead;
+				freeHead = next(block);
+				freeCount--;
+			}
+			else {
+				block = unused++;
+			}
+			if (previous == NO_BLOCK) {
+				first = block;
+			}
+			else {
+				link(previous, block);
+			}
+			previous = block;
+		}
+		link(previous, NO_BLOCK);
+		return first;
+	}
+
+	private void release(Entry entry) {
+		int block = entry.firstBlock;
+		while (block != NO_BLOCK) {
+			int next = next(block);
+			link(block, freeHead);
+			freeHead = block;
+			freeCount++;
+			block = next;
+		}
+	}
+
+	private void write(int block, byte[] value) {
+		int payload = blockSize - LINK_LENGTH;
+		for (int offset = 0; offset < value.length; offset += payload) {
+			memory.position(block * blockSize + LINK_LENGTH);
+			memory.put(value, offset, Math.min(payload, value.length - offset));
+			block = next(block);
+		}
+	}
+
+	private byte[] read(Entry entry) {
+		byte[] value = new byte[entry.length];
+		int payload = blockSize - LINK_LENGTH;
+		int block = entry.firstBlock;
+		for (int offset = 0; offset < value.length; offset += payload) {
+			memory.position(block * blockSize + LINK_LENGTH);
+			memory.get(value, offset, Math.min(payload, value.length - offset));
+			block = next(block);
+		}
+		return value;
+	}
+
+	private int next(int block) {
+		return memory.getInt(block * blockSize);
+	}
+
+	private void link(int block, int next) {
+		memory.putInt(block * blockSize, next);
+	}
+
+	private static class Entry {
+
+		final int firstBlock;
+
+		final int length;
+
+		final long version;
+
+		/** 空闲过期时间，单位为秒，小于0表示不过期 */
+		int expire;
+
+		long lastAccess;
+
+		Entry(int firstBlock, int length, long version) {
+			this.firstBlock = firstBlock;
+			this.length = length;
+			this.version = version;
+		}
+
+		boolean isExpired(long now) {
+			return expire >= 0 && now - lastAccess >= expire * 1000L;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package com.nameof.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SessionSerializer}的基础实现.<br>
+ *
+ * 首字节为类型标记：String、基本类型包装类和byte[]使用定长或原始字节的快速编码（如Long仅占9字节），
+ * 其余对象交由子类序列化，写入线程内复用的缓冲区.<br>
+ *
+ * 以{@link #TYPE_DEFLATED}开头的数据是{@link SizeAwareSessionSerializer}压缩过的序列化结果，解压后再按首字节解析，
+ * 因此关闭压缩之后仍能读取已压缩的属性值.<br>
+ *
+ * 以JDK序列化魔数0xACED开头的数据视为升级前RedisCacheDao写入的旧格式，直接使用JDK反序列化；
+ * 以数字或负号开头的数据是HINCRBY等命令直接写入的十进制计数器，反序列化为Long
+ * @author ChengPan
+ */
+public abstract class AbstractSessionSerializer implements SessionSerializer {
+
+	protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_INTEGER = 2;
+	private static final byte TYPE_LONG = 3;
+	private static final byte TYPE_BOOLEAN = 4;
+	private static final byte TYPE_DOUBLE = 5;
+	private static final byte TYPE_FLOAT = 6;
+	private static final byte TYPE_SHORT = 7;
+	private static final byte TYPE_BYTE = 8;
+	private static final byte TYPE_CHARACTER = 9;
+	private static final byte TYPE_BYTES = 10;
+	private static final byte TYPE_OBJECT = 64;
+
+	/** 压缩过的序列化结果，见{@link Deflate} */
+	static final byte TYPE_DEFLATED = 11;
+
+	private static final byte JDK_MAGIC_0 = (byte) 0xAC;
+	private static final byte JDK_MAGIC_1 = (byte) 0xED;
+
+	protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * 序列化非快速编码类型的对象
+	 */
+	protected abstract void writeObject(Object obj, OutputStream out) throws IOException;
+
+	/**
+	 * 反序列化{@link #writeObject(Object, OutputStream)}写入的对象
+	 */
+	protected abstract Object readObject(byte[] bytes, int offset, int length) throws Exception;
+
+	@Override
+	public byte[] serialize(Object obj) {
+		if (obj == null) {
+			return null;
+		}
+		if (obj instanceof String) {
+			byte[] value = ((String) obj).getBytes(UTF_8);
+			byte[] bytes = new byte[value.length + 1];
+			bytes[0] = TYPE_STRING;
+			System.arraycopy(value, 0, bytes, 1, value.length);
+			return bytes;
+		}
+		if (obj instanceof Integer) {
+			return putLong(TYPE_INTEGER, (Integer) obj, 4);
+		}
+		if (obj instanceof Long) {
+			return putLong(TYPE_LONG, (Long) obj, 8);
+		}
+		if (obj instanceof Boolean) {
+			return new byte[] { TYPE_BOOLEAN, (byte) ((Boolean) obj ? 1 : 0) };
+		}
+		if (obj instanceof Double) {
+			return putLong(TYPE_DOUBLE, Double.doubleToLongBits((Double) obj), 8);
+		}
+		if (obj instanceof Float) {
+			return putLong(TYPE_FLOAT, Float.floatToIntBits((Float) obj), 4);
+		}
+		if (obj instanceof Short) {
+			return putLong(TYPE_SHORT, (Short) obj, 2);
+		}
+		if (obj instanceof Byte) {
+			return new byte[] { TYPE_BYTE, (Byte) obj };
+		}
+		if (obj instanceof Character) {
+			return putLong(TYPE_CHARACTER, (Character) obj, 2);
+		}
+		if (obj instanceof byte[]) {
+			byte[] value = (byte[]) obj;
+			byte[] bytes = new byte[value.length + 1];
+			bytes[0] = TYPE_BYTES;
+			System.arraycopy(value, 0, bytes, 1, value.length);
+			return bytes;
+		}
+		SerializeBuffer buffer = SerializeBuffer.get();
+		try {
+			buffer.write(TYPE_OBJECT);
+			writeObject(obj, buffer);
+			return buffer.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("cannot serialize " + obj.getClass().getName(), e);
+		} finally {
+			buffer.release();
+		}
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) {
+		if (bytes == null || bytes.length == 0) {
+			return null;
+		}
+		try {
+			switch (bytes[0]) {
+				case TYPE_STRING:
+					return new String(bytes, 1, bytes.length - 1, UTF_8);
+				case TYPE_INTEGER:
+					return (int) getLong(bytes, 4);
+				case TYPE_LONG:
+					return getLong(bytes, 8);
+				case TYPE_BOOLEAN:
+					return bytes[1] != 0;
+				case TYPE_DOUBLE:
+					return Double.longBitsToDouble(getLong(bytes, 8));
+				case TYPE_FLOAT:
+					return Float.intBitsToFloat((int) getLong(bytes, 4));
+				case TYPE_SHORT:
+					return (short) getLong(bytes, 2);
+				case TYPE_BYTE:
+					return bytes[1];
+				case TYPE_CHARACTER:
+					return (char) getLong(bytes, 2);
+				case TYPE_BYTES:
+					return Arrays.copyOfRange(bytes, 1, bytes.length);
+				case TYPE_OBJECT:
+					return readObject(bytes, 1, bytes.length - 1);
+				case TYPE_DEFLATED:
+					return deserialize(Deflate.decompress(bytes));
+				case '-':
+				case '0': case '1': case '2': case '3': case '4':
+				case '5': case '6': case '7': case '8': case '9':
+					return Long.parseLong(new String(bytes, UTF_8));
+				case JDK_MAGIC_0:
+					if (bytes.length > 1 && bytes[1] == JDK_MAGIC_1) {
+						return readJdkObject(bytes, 0, bytes.length);
+					}
+					break;
+				default:
+					break;
+			}
+			logger.error("unknown serialized type {}", bytes[0]);
+		} catch (Exception e) {
+			logger.error("exception thrown from {} on object deserialize", getClass().getSimpleName(), e);
+		}
+		return null;
+	}
+
+	protected static Object readJdkObject(byte[] bytes, int offset, int length)
+			throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] putLong(byte type, long value, int size) {
+		byte[] bytes = new byte[size + 1];
+		bytes[0] = type;
+		for (int i = size; i > 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
+	/**
+	 * 读取标记字节之后的定长整数，按有符号数扩展
+	 */
+	private static long getLong(byte[] bytes, int size) {
+		long value = bytes[1];
+		for (int i = 2; i <= size; i++) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,86 @@
+package com.nameof.cache.serializer;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 序列化结果的压缩格式：类型标记、4字节的原始长度，之后是deflate压缩的数据.<br>
+ *
+ * Deflater和Inflater持有本地内存，按线程复用
+ * @author ChengPan
+ */
+final class Deflate {
+
+	private static final int HEADER_SIZE = 5;
+
+	private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+
+	private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+
+	private Deflate() {}
+
+	/**
+	 * @return 压缩后的数据，不比原始数据小时返回null
+	 */
+	static byte[] compress(byte type, byte[] raw) {
+		Deflater deflater = DEFLATER.get();
+		deflater.reset();
+		deflater.setInput(raw);
+		deflater.finish();
+		byte[] out = new byte[raw.length];
+		int length = HEADER_SIZE;
+		while (!deflater.finished()) {
+			if (length == out.length) {
+				return null;
+			}
+			length += deflater.deflate(out, length, out.length - length);
+		}
+		out[0] = type;
+		putInt(out, raw.length);
+		byte[] compressed = new byte[length];
+		System.arraycopy(out, 0, compressed, 0, length);
+		return compressed;
+	}
+
+	static byte[] decompress(byte[] bytes) throws DataFormatException {
+		byte[] raw = new byte[getInt(bytes)];
+		Inflater inflater = INFLATER.get();
+		inflater.reset();
+		inflater.setInput(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+		int length = 0;
+		while (length < raw.length) {
+			int n = inflater.inflate(raw, length, raw.length - length);
+			if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+				throw new DataFormatException("truncated compressed value");
+			}
+			length += n;
+		}
+		return raw;
+	}
+
+	private static void putInt(byte[] bytes, int value) {
+		for (int i = HEADER_SIZE - 1; i > 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	private static int getInt(byte[] bytes) {
+		int value = 0;
+		for (int i = 1; i < HEADER_SIZE; i++) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+}
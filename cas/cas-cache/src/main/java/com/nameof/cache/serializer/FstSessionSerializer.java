@@ -0,0 +1,31 @@
+package com.nameof.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectOutput;
+
+/**
+ * 基于https://github.com/RuedigerMoeller/fast-serialization 的序列化，兼容JDK序列化的类定义，
+ * FSTConfiguration内部按线程缓存FSTObjectInput/FSTObjectOutput
+ * @author ChengPan
+ */
+public class FstSessionSerializer extends AbstractSessionSerializer {
+
+	private final FSTConfiguration conf = FSTConfiguration.createDefaultConfiguration();
+
+	@Override
+	protected void writeObject(Object obj, OutputStream out) throws IOException {
+		//getObjectOutput返回的对象被线程复用，只flush不close
+		FSTObjectOutput output = conf.getObjectOutput(out);
+		output.writeObject(obj);
+		output.flush();
+	}
+
+	@Override
+	protected Object readObject(byte[] bytes, int offset, int length) throws Exception {
+		return conf.getObjectInput(new ByteArrayInputStream(bytes, offset, length)).readObject();
+	}
+}
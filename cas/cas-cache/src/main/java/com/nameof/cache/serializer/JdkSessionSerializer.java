@@ -0,0 +1,24 @@
+package com.nameof.cache.serializer;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * JDK序列化，兼容性最好，session.format为BINARY或未配置时使用
+ * @author ChengPan
+ */
+public class JdkSessionSerializer extends AbstractSessionSerializer {
+
+	@Override
+	protected void writeObject(Object obj, OutputStream out) throws IOException {
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(obj);
+		oos.flush();
+	}
+
+	@Override
+	protected Object readObject(byte[] bytes, int offset, int length) throws Exception {
+		return readJdkObject(bytes, offset, length);
+	}
+}
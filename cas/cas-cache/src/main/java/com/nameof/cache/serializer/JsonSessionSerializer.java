@@ -0,0 +1,25 @@
+package com.nameof.cache.serializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+
+/**
+ * 基于fastjson的紧凑JSON序列化，写入类型信息以便反序列化为原始类型，
+ * 数据在redis-cli等工具中可读
+ * @author ChengPan
+ */
+public class JsonSessionSerializer extends AbstractSessionSerializer {
+
+	@Override
+	protected void writeObject(Object obj, OutputStream out) throws IOException {
+		out.write(JSON.toJSONBytes(obj, SerializerFeature.WriteClassName));
+	}
+
+	@Override
+	protected Object readObject(byte[] bytes, int offset, int length) {
+		return JSON.parse(bytes, offset, length, UTF_8.newDecoder(), JSON.DEFAULT_PARSER_FEATURE);
+	}
+}
@@ -0,0 +1,68 @@
+package com.nameof.cache.serializer;
+
+import java.io.OutputStream;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * 基于Kryo的序列化，体积和速度都优于JDK序列化.<br>
+ *
+ * Kryo实例不是线程安全的，这里每个线程持有各自的Kryo、Input和Output；
+ * 会话属性的类型事先未知，所以不要求注册类，并允许没有无参构造器的类
+ * @author ChengPan
+ */
+public class KryoSessionSerializer extends AbstractSessionSerializer {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private static final ThreadLocal<KryoHolder> HOLDER = new ThreadLocal<KryoHolder>() {
+		@Override
+		protected KryoHolder initialValue() {
+			return new KryoHolder();
+		}
+	};
+
+	@Override
+	protected void writeObject(Object obj, OutputStream out) {
+		KryoHolder holder = HOLDER.get();
+		Output output = holder.output;
+		output.setOutputStream(out);
+		try {
+			holder.kryo.writeClassAndObject(output, obj);
+			output.flush();
+		} finally {
+			output.setOutputStream(null);
+		}
+	}
+
+	@Override
+	protected Object readObject(byte[] bytes, int offset, int length) {
+		KryoHolder holder = HOLDER.get();
+		Input input = holder.input;
+		input.setBuffer(bytes, offset, length);
+		try {
+			return holder.kryo.readClassAndObject(input);
+		} finally {
+			input.setBuffer(EMPTY);
+		}
+	}
+
+	private static class KryoHolder {
+
+		private final Kryo kryo = new Kryo();
+
+		private final Output output = new Output(512);
+
+		private final Input input = new Input();
+
+		KryoHolder() {
+			kryo.setRegistrationRequired(false);
+			kryo.setReferences(true);
+			kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+		}
+	}
+}
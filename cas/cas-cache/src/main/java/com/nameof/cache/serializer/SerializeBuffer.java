@@ -0,0 +1,39 @@
+package com.nameof.cache.serializer;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * 线程内复用的序列化输出缓冲区，避免每次序列化都重新分配并扩容字节数组
+ * @author ChengPan
+ */
+class SerializeBuffer extends ByteArrayOutputStream {
+
+	private static final int INITIAL_SIZE = 512;
+
+	/** 超过该大小的缓冲区在使用后释放，避免个别大对象使线程长期持有大数组 */
+	private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+	private static final ThreadLocal<SerializeBuffer> BUFFER = new ThreadLocal<SerializeBuffer>() {
+		@Override
+		protected SerializeBuffer initialValue() {
+			return new SerializeBuffer();
+		}
+	};
+
+	private SerializeBuffer() {
+		super(INITIAL_SIZE);
+	}
+
+	static SerializeBuffer get() {
+		SerializeBuffer buffer = BUFFER.get();
+		buffer.reset();
+		return buffer;
+	}
+
+	void release() {
+		reset();
+		if (buf.length > MAX_RETAINED_SIZE) {
+			buf = new byte[INITIAL_SIZE];
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.nameof.cache.serializer;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 将{@link SessionSerializer}适配为spring-data-redis的{@link RedisSerializer}
+ * @author ChengPan
+ */
+public class SessionRedisSerializer implements RedisSerializer<Object> {
+
+	private final SessionSerializer serializer;
+
+	public SessionRedisSerializer(SessionSerializer serializer) {
+		this.serializer = serializer;
+	}
+
+	@Override
+	public byte[] serialize(Object t) throws SerializationException {
+		return serializer.serialize(t);
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) throws SerializationException {
+		return serializer.deserialize(bytes);
+	}
+}
@@ -0,0 +1,20 @@
+package com.nameof.cache.serializer;
+
+/**
+ * 会话属性值的序列化SPI，由各{@link com.nameof.cache.CacheDao}实现共享，通过session.format选择具体实现.<br>
+ *
+ * 实现类必须是线程安全的
+ * @author ChengPan
+ */
+public interface SessionSerializer {
+
+	/**
+	 * @param obj 属性值，null时返回null
+	 */
+	byte[] serialize(Object obj);
+
+	/**
+	 * @param bytes 序列化后的字节，null或空数组时返回null
+	 */
+	Object deserialize(byte[] bytes);
+}
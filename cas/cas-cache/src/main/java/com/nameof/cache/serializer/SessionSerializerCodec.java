@@ -0,0 +1,82 @@
+package com.nameof.cache.serializer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+/**
+ * 将{@link SessionSerializer}适配为Redisson的{@link Codec}，map的key使用字符串编码，
+ * 与RedisCacheDao写入的数据结构保持一致
+ * @author ChengPan
+ */
+public class SessionSerializerCodec implements Codec {
+
+	private final Encoder encoder;
+
+	private final Decoder<Object> decoder;
+
+	public SessionSerializerCodec(final SessionSerializer serializer) {
+		this.encoder = new Encoder() {
+			@Override
+			public ByteBuf encode(Object in) throws IOException {
+				byte[] bytes = serializer.serialize(in);
+				ByteBuf out = ByteBufAllocator.DEFAULT.buffer(bytes.length);
+				out.writeBytes(bytes);
+				return out;
+			}
+		};
+		this.decoder = new Decoder<Object>() {
+			@Override
+			public Object decode(ByteBuf buf, State state) throws IOException {
+				if (!buf.isReadable()) {
+					return null;
+				}
+				byte[] bytes = new byte[buf.readableBytes()];
+				buf.readBytes(bytes);
+				return serializer.deserialize(bytes);
+			}
+		};
+	}
+
+	@Override
+	public Decoder<Object> getMapValueDecoder() {
+		return decoder;
+	}
+
+	@Override
+	public Encoder getMapValueEncoder() {
+		return encoder;
+	}
+
+	@Override
+	public Decoder<Object> getMapKeyDecoder() {
+		return StringCodec.INSTANCE.getMapKeyDecoder();
+	}
+
+	@Override
+	public Encoder getMapKeyEncoder() {
+		return StringCodec.INSTANCE.getMapKeyEncoder();
+	}
+
+	@Override
+	public Decoder<Object> getValueDecoder() {
+		return decoder;
+	}
+
+	@Override
+	public Encoder getValueEncoder() {
+		return encoder;
+	}
+
+	@Override
+	public ClassLoader getClassLoader() {
+		return getClass().getClassLoader();
+	}
+}
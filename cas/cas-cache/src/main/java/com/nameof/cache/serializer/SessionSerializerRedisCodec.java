@@ -0,0 +1,48 @@
+package com.nameof.cache.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.lambdaworks.redis.codec.RedisCodec;
+
+/**
+ * 将{@link SessionSerializer}适配为Lettuce的{@link RedisCodec}，key和hash field使用UTF-8字符串，
+ * 与RedisCacheDao写入的数据结构保持一致
+ * @author ChengPan
+ */
+public class SessionSerializerRedisCodec extends RedisCodec<String, Object> {
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+	private final SessionSerializer serializer;
+
+	public SessionSerializerRedisCodec(SessionSerializer serializer) {
+		this.serializer = serializer;
+	}
+
+	@Override
+	public String decodeKey(ByteBuffer bytes) {
+		return new String(toArray(bytes), DEFAULT_CHARSET);
+	}
+
+	@Override
+	public Object decodeValue(ByteBuffer bytes) {
+		return serializer.deserialize(toArray(bytes));
+	}
+
+	@Override
+	public byte[] encodeKey(String key) {
+		return key.getBytes(DEFAULT_CHARSET);
+	}
+
+	@Override
+	public byte[] encodeValue(Object value) {
+		return serializer.serialize(value);
+	}
+
+	private static byte[] toArray(ByteBuffer bytes) {
+		byte[] array = new byte[bytes.remaining()];
+		bytes.get(array);
+		return array;
+	}
+}
@@ -0,0 +1,49 @@
+package com.nameof.cache.serializer;
+
+import com.nameof.common.enums.DataFormatEnum;
+
+/**
+ * 根据session.format获取{@link SessionSerializer}，同一格式共享同一个线程安全的实例
+ * @author ChengPan
+ */
+public final class SessionSerializers {
+
+	private static final SessionSerializer JDK = new JdkSessionSerializer();
+
+	private SessionSerializers() {}
+
+	public static SessionSerializer jdk() {
+		return JDK;
+	}
+
+	public static SessionSerializer of(DataFormatEnum format) {
+		if (format == null) {
+			return JDK;
+		}
+		switch (format) {
+			case BINARY:
+				return JDK;
+			case FST:
+				return FstHolder.INSTANCE;
+			case KRYO:
+				return KryoHolder.INSTANCE;
+			case JSON:
+				return JsonHolder.INSTANCE;
+			default:
+				throw new IllegalArgumentException("unsupported session format " + format);
+		}
+	}
+
+	//延迟加载，未使用的序列化库可以不在classpath中
+	private static class FstHolder {
+		static final SessionSerializer INSTANCE = new FstSessionSerializer();
+	}
+
+	private static class KryoHolder {
+		static final SessionSerializer INSTANCE = new KryoSessionSerializer();
+	}
+
+	private static class JsonHolder {
+		static final SessionSerializer INSTANCE = new JsonSessionSerializer();
+	}
+}
@@ -0,0 +1,178 @@
+package com.nameof.cache.serializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * 关注属性值大小的{@link SessionSerializer}装饰器.<br>
+ *
+ * 序列化结果不小于压缩阈值时使用deflate压缩，压缩后更小才保存压缩结果；保存的大小超过告警大小时记录日志，
+ * 超过上限时拒绝序列化，抛出{@link IllegalArgumentException}.
+ * 整个属性Map作为一个值保存的实现（memcached、offheap）中，限制的是整个会话的大小.<br>
+ *
+ * 按属性值的类型统计序列化大小的分布，通过JMX暴露.<br>
+ *
+ * 压缩过的值由{@link AbstractSessionSerializer}解压，关闭压缩之后仍能读取；
+ * 开启压缩之前需要所有节点都已升级，否则旧节点无法读取压缩过的值
+ * @author ChengPan
+ */
+@ManagedResource(objectName = "com.nameof:type=SessionSerializer,name=session", description = "session attribute sizes")
+public class SizeAwareSessionSerializer implements SessionSerializer {
+
+	private static final Logger logger = LoggerFactory.getLogger(SizeAwareSessionSerializer.class);
+
+	/** 分布的各区间上界，每个区间是前一个的4倍，最后一个区间没有上界 */
+	private static final int[] BUCKET_BOUNDS = { 256, 1024, 4096, 16384, 65536, 262144, 1048576 };
+
+	private static final String[] BUCKET_NAMES = { "<256B", "<1K", "<4K", "<16K", "<64K", "<256K", "<1M", ">=1M" };
+
+	/** 单独统计的类型数上限，之后出现的类型计入OTHER_TYPES */
+	private static final int MAX_TYPES = 256;
+
+	private static final String OTHER_TYPES = "(other)";
+
+	private final SessionSerializer delegate;
+
+	private final int compressThreshold;
+
+	private final int warnSize;
+
+	private final int maxSize;
+
+	private final ConcurrentMap<String, AtomicLongArray> histogram = new ConcurrentHashMap<>();
+
+	private final AtomicLong compressedCount = new AtomicLong();
+
+	private final AtomicLong bytesBeforeCompression = new AtomicLong();
+
+	private final AtomicLong bytesAfterCompression = new AtomicLong();
+
+	private final AtomicLong oversizedCount = new AtomicLong();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @param compressThreshold 压缩阈值，单位为字节，小于等于0时不压缩
+	 * @param warnSize 告警大小，单位为字节，小于等于0时不告警
+	 * @param maxSize 上限，单位为字节，小于等于0时不限制
+	 */
+	public SizeAwareSessionSerializer(SessionSerializer delegate, int compressThreshold, int warnSize, int maxSize) {
+		this.delegate = delegate;
+		this.compressThreshold = compressThreshold;
+		this.warnSize = warnSize;
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public byte[] serialize(Object obj) {
+		byte[] bytes = delegate.serialize(obj);
+		if (bytes == null) {
+			return null;
+		}
+		String type = obj.getClass().getName();
+		record(type, bytes.length);
+		if (compressThreshold > 0 && bytes.length >= compressThreshold) {
+			byte[] compressed = Deflate.compress(AbstractSessionSerializer.TYPE_DEFLATED, bytes);
+			if (compressed != null) {
+				compressedCount.incrementAndGet();
+				bytesBeforeCompression.addAndGet(bytes.length);
+				bytesAfterCompression.addAndGet(compressed.length);
+				bytes = compressed;
+			}
+		}
+		if (maxSize > 0 && bytes.length > maxSize) {
+			rejectedCount.incrementAndGet();
+			throw new IllegalArgumentException("serialized " + type + " is " + bytes.length
+					+ " bytes, exceeding the limit of " + maxSize + " bytes");
+		}
+		if (warnSize > 0 && bytes.length > warnSize) {
+			oversizedCount.incrementAndGet();
+			logger.warn("serialized {} is {} bytes, larger than {} bytes", new Object[]{type, bytes.length, warnSize});
+		}
+		return bytes;
+	}
+
+	@Override
+	public Object deserialize(byte[] bytes) {
+		return delegate.deserialize(bytes);
+	}
+
+	private void record(String type, int size) {
+		AtomicLongArray counts = histogram.get(type);
+		if (counts == null) {
+			if (histogram.size() >= MAX_TYPES) {
+				type = OTHER_TYPES;
+			}
+			AtomicLongArray created = new AtomicLongArray(BUCKET_NAMES.length);
+			counts = histogram.putIfAbsent(type, created);
+			if (counts == null) {
+				counts = created;
+			}
+		}
+		counts.incrementAndGet(bucket(size));
+	}
+
+	private static int bucket(int size) {
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			if (size < BUCKET_BOUNDS[i]) {
+				return i;
+			}
+		}
+		return BUCKET_BOUNDS.length;
+	}
+
+	/**
+	 * 每种类型一行，如"java.util.ArrayList <256B=10 <1K=2 ..."，只列出非零的区间
+	 */
+	@ManagedAttribute(description = "serialized size distribution by attribute type")
+	public String[] getSizeHistogram() {
+		List<String> lines = new ArrayList<>(histogram.size());
+		for (Map.Entry<String, AtomicLongArray> entry : histogram.entrySet()) {
+			StringBuilder line = new StringBuilder(entry.getKey());
+			AtomicLongArray counts = entry.getValue();
+			for (int i = 0; i < BUCKET_NAMES.length; i++) {
+				long count = counts.get(i);
+				if (count > 0) {
+					line.append(' ').append(BUCKET_NAMES[i]).append('=').append(count);
+				}
+			}
+			lines.add(line.toString());
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	@ManagedAttribute(description = "number of compressed values")
+	public long getCompressedCount() {
+		return compressedCount.get();
+	}
+
+	@ManagedAttribute(description = "total size of compressed values before compression")
+	public long getBytesBeforeCompression() {
+		return bytesBeforeCompression.get();
+	}
+
+	@ManagedAttribute(description = "total size of compressed values after compression")
+	public long getBytesAfterCompression() {
+		return bytesAfterCompression.get();
+	}
+
+	@ManagedAttribute(description = "number of values larger than the warning size")
+	public long getOversizedCount() {
+		return oversizedCount.get();
+	}
+
+	@ManagedAttribute(description = "number of values rejected for exceeding the limit")
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+}
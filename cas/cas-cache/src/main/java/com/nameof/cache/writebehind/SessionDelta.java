@@ -0,0 +1,114 @@
+package com.nameof.cache.writebehind;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 一个会话尚未写入缓存的变更，同一会话的多次提交合并为一个，后提交的属性和过期时间覆盖先提交的.<br>
+ *
+ * 写入线程开始写入之前将变更封存（{@link #seal()}），封存之后不能再合并，
+ * 之后的提交需要等待本次写入完成，保证同一会话的变更按顺序写入
+ * @author ChengPan
+ */
+class SessionDelta {
+
+	final String key;
+
+	final Map<String, Object> puts = new HashMap<>();
+
+	final Set<String> removes = new HashSet<>();
+
+	int expire;
+
+	/** 之前写入失败的次数 */
+	final int failures;
+
+	private boolean sealed;
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	SessionDelta(String key, Map<String, Object> attributes, Collection<String> removedNames, int expire) {
+		this(key, attributes, removedNames, expire, 0);
+	}
+
+	private SessionDelta(String key, Map<String, Object> attributes, Collection<String> removedNames,
+			int expire, int failures) {
+		this.key = key;
+		this.failures = failures;
+		merge(attributes, removedNames, expire);
+	}
+
+	/**
+	 * 写入失败后用于重试的变更，包含本变更的全部内容，之后的提交可以继续合并到其中
+	 */
+	SessionDelta retry() {
+		return new SessionDelta(key, puts, removes, expire, failures + 1);
+	}
+
+	/**
+	 * 合并一次新的提交
+	 * @return false表示变更已被封存，不能再合并
+	 */
+	synchronized boolean tryMerge(Map<String, Object> attributes, Collection<String> removedNames, int expire) {
+		if (sealed) {
+			return false;
+		}
+		merge(attributes, removedNames, expire);
+		return true;
+	}
+
+	private void merge(Map<String, Object> attributes, Collection<String> removedNames, int expire) {
+		if (removedNames != null) {
+			puts.keySet().removeAll(removedNames);
+			removes.addAll(removedNames);
+		}
+		if (attributes != null) {
+			puts.putAll(attributes);
+			removes.removeAll(attributes.keySet());
+		}
+		this.expire = expire;
+	}
+
+	/**
+	 * 封存变更，只有一个线程能封存成功，由它负责写入
+	 * @return false表示已被其他线程封存
+	 */
+	synchronized boolean seal() {
+		if (sealed) {
+			return false;
+		}
+		sealed = true;
+		return true;
+	}
+
+	/**
+	 * 标记写入完成（无论成功与否），唤醒等待的线程
+	 */
+	void complete() {
+		done.countDown();
+	}
+
+	/**
+	 * 等待其他线程完成写入.<br>
+	 * 写入完成之前不会返回，否则调用方会在写入过程中提交新的变更，打乱同一会话的写入顺序；
+	 * 等待期间的中断在返回时恢复
+	 */
+	void await() {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				done.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
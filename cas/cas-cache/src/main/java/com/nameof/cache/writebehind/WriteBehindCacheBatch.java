@@ -0,0 +1,97 @@
+package com.nameof.cache.writebehind;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.nameof.cache.CacheBatch;
+
+/**
+ * {@link WriteBehindCacheDao}的批量命令，execute之前先写入涉及的会话尚未写入的变更，
+ * 之后再发送缓冲的命令
+ * @author ChengPan
+ */
+class WriteBehindCacheBatch implements CacheBatch {
+
+	private final WriteBehindCacheDao writeBehind;
+
+	private final CacheBatch delegate;
+
+	private final Set<String> keys = new LinkedHashSet<>();
+
+	WriteBehindCacheBatch(WriteBehindCacheDao writeBehind, CacheBatch delegate) {
+		this.writeBehind = writeBehind;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public Future<Boolean> exists(String key) {
+		keys.add(key);
+		return delegate.exists(key);
+	}
+
+	@Override
+	public Future<Map<String, Object>> getAllAttribute(String key) {
+		keys.add(key);
+		return delegate.getAllAttribute(key);
+	}
+
+	@Override
+	public Future<Object> getAttribute(String key, String fieldName) {
+		keys.add(key);
+		return delegate.getAttribute(key, fieldName);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		keys.add(key);
+		delegate.setAttribute(key, fieldName, value);
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		keys.add(key);
+		delegate.setAllAttributes(key, attributes);
+	}
+
+	@Override
+	public void removeAttributes(String key, Collection<String> fieldNames) {
+		keys.add(key);
+		delegate.removeAttributes(key, fieldNames);
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		keys.add(key);
+		delegate.setExpire(key, expire);
+	}
+
+	@Override
+	public void setPersist(String key) {
+		keys.add(key);
+		delegate.setPersist(key);
+	}
+
+	@Override
+	public void del(String key) {
+		keys.add(key);
+		delegate.del(key);
+	}
+
+	@Override
+	public Future<Long> increment(String key, String fieldName, long delta) {
+		keys.add(key);
+		return delegate.increment(key, fieldName, delta);
+	}
+
+	@Override
+	public void execute() {
+		for (String key : keys) {
+			writeBehind.flush(key);
+		}
+		keys.clear();
+		delegate.execute();
+	}
+}
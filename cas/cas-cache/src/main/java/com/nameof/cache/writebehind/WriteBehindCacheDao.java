@@ -0,0 +1,450 @@
+package com.nameof.cache.writebehind;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.LoadableCacheDao;
+import com.nameof.cache.SessionSnapshot;
+import com.nameof.cache.VersionedCacheDao;
+import com.nameof.cache.impl.AbstractCacheDao;
+import com.nameof.cache.impl.SimpleCacheBatch;
+
+/**
+ * 异步提交会话变更的{@link CacheDao}装饰器.<br>
+ *
+ * {@link #updateAttributes}（请求结束时的会话提交）只把变更放入有界队列就返回，同一会话尚未写入的变更合并为一个，
+ * 由若干写入线程批量取出，通过远程缓存的batch一次发送；队列已满时退回到同步写入.<br>
+ *
+ * 本节点上的其他操作在访问一个会话之前，先同步写入该会话尚未写入的变更（正在写入的则等待其完成），
+ * 同一节点上总能读到自己的写入；其他节点在写入完成之前读到的仍是旧数据.<br>
+ *
+ * 写入失败的变更重新放入队列，之后的提交合并到其中，失败{@link #MAX_WRITE_ATTEMPTS}次后丢弃.<br>
+ *
+ * 带版本号的提交需要立即得到检查结果，总是同步写入
+ * @author ChengPan
+ */
+public class WriteBehindCacheDao extends AbstractCacheDao implements VersionedCacheDao, LoadableCacheDao, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindCacheDao.class);
+
+	private static final long POLL_MILLIS = 100;
+
+	/** 关闭时等待写入线程写完队列的最长时间 */
+	private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+	/** 一个变更最多写入的次数 */
+	static final int MAX_WRITE_ATTEMPTS = 3;
+
+	private final CacheDao delegate;
+
+	private final int batchSize;
+
+	private final BlockingQueue<SessionDelta> queue;
+
+	private final ConcurrentMap<String, SessionDelta> pending = new ConcurrentHashMap<>();
+
+	private final ExecutorService writers;
+
+	private volatile boolean closed;
+
+	private final AtomicLong writtenCount = new AtomicLong();
+
+	private final AtomicLong coalescedCount = new AtomicLong();
+
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+	private final AtomicLong retriedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * @param queueCapacity 等待写入的会话数上限，超过后同步写入
+	 * @param threads 写入线程数
+	 * @param batchSize 每次最多一起发送的会话数
+	 */
+	public WriteBehindCacheDao(CacheDao delegate, int queueCapacity, int threads, int batchSize) {
+		this.delegate = delegate;
+		this.batchSize = batchSize;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.writers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+			private final AtomicInteger index = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "session-writer-" + index.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		for (int i = 0; i < threads; i++) {
+			writers.execute(new Writer());
+		}
+	}
+
+	@Override
+	public void updateAttributes(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire) {
+		if (closed) {
+			flush(key);
+			delegate.updateAttributes(key, attributes, removedNames, expire);
+			return;
+		}
+		while (true) {
+			SessionDelta existing = pending.get(key);
+			if (existing != null) {
+				if (existing.tryMerge(attributes, removedNames, expire)) {
+					coalescedCount.incrementAndGet();
+					return;
+				}
+				//正在写入，等待写完之后作为新的变更提交，保证顺序
+				existing.await();
+				pending.remove(key, existing);
+				continue;
+			}
+			SessionDelta delta = new SessionDelta(key, attributes, removedNames, expire);
+			if (pending.putIfAbsent(key, delta) != null) {
+				continue;
+			}
+			if (!queue.offer(delta)) {
+				fallbackCount.incrementAndGet();
+				writeNow(delta);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * 同步写入会话尚未写入的变更，正在由写入线程写入时等待其完成；写入失败而放回的变更继续同步写入
+	 */
+	void flush(String key) {
+		SessionDelta delta = pending.get(key);
+		while (delta != null) {
+			writeNow(delta);
+			SessionDelta retry = pending.get(key);
+			delta = retry != null && retry.failures > delta.failures ? retry : null;
+		}
+	}
+
+	private void writeNow(SessionDelta delta) {
+		if (delta.seal()) {
+			write(Collections.singletonList(delta));
+		}
+		else {
+			delta.await();
+		}
+	}
+
+	/**
+	 * 写入已封存的变更，成功的从待写入中移除，失败的替换为重试的变更重新放入队列，然后唤醒等待的线程
+	 */
+	private void write(List<SessionDelta> deltas) {
+		List<SessionDelta> failed = Collections.emptyList();
+		List<SessionDelta> retries = new ArrayList<>();
+		try {
+			if (deltas.size() == 1) {
+				if (!writeOne(deltas.get(0))) {
+					failed = deltas;
+				}
+			}
+			else {
+				failed = writeBatch(deltas);
+			}
+		} finally {
+			for (SessionDelta delta : deltas) {
+				SessionDelta retry = failed.contains(delta) ? retryOf(delta) : null;
+				//封存的变更写完之前其他提交都在等待，待写入中仍是该变更
+				if (retry != null && pending.replace(delta.key, delta, retry)) {
+					retries.add(retry);
+				}
+				else {
+					pending.remove(delta.key, delta);
+				}
+				delta.complete();
+			}
+		}
+		for (SessionDelta retry : retries) {
+			if (!queue.offer(retry)) {
+				writeNow(retry);
+			}
+		}
+	}
+
+	/**
+	 * @return 失败次数达到上限时返回null
+	 */
+	private SessionDelta retryOf(SessionDelta delta) {
+		if (delta.failures + 1 >= MAX_WRITE_ATTEMPTS) {
+			failedCount.incrementAndGet();
+			logger.error("session {} not written after {} attempts, dropping", delta.key, MAX_WRITE_ATTEMPTS);
+			return null;
+		}
+		retriedCount.incrementAndGet();
+		return delta.retry();
+	}
+
+	/**
+	 * @return 是否写入成功
+	 */
+	private boolean writeOne(SessionDelta delta) {
+		try {
+			delegate.updateAttributes(delta.key, delta.puts, delta.removes, delta.expire);
+			writtenCount.incrementAndGet();
+			return true;
+		} catch (RuntimeException e) {
+			logger.error("failed to write session {}", delta.key, e);
+			return false;
+		}
+	}
+
+	/**
+	 * @return 写入失败的变更
+	 */
+	private List<SessionDelta> writeBatch(List<SessionDelta> deltas) {
+		CacheBatch batch = delegate.batch();
+		if (batch instanceof SimpleCacheBatch) {
+			//不支持pipeline的实现逐个写入，保留其updateAttributes的原子性
+			List<SessionDelta> failed = new ArrayList<>();
+			for (SessionDelta delta : deltas) {
+				if (!writeOne(delta)) {
+					failed.add(delta);
+				}
+			}
+			return failed;
+		}
+		for (SessionDelta delta : deltas) {
+			if (!delta.puts.isEmpty()) {
+				batch.setAllAttributes(delta.key, delta.puts);
+			}
+			if (!delta.removes.isEmpty()) {
+				batch.removeAttributes(delta.key, delta.removes);
+			}
+			if (delta.expire < 0) {
+				batch.setPersist(delta.key);
+			}
+			else {
+				batch.setExpire(delta.key, delta.expire);
+			}
+		}
+		try {
+			batch.execute();
+			writtenCount.addAndGet(deltas.size());
+			return Collections.emptyList();
+		} catch (RuntimeException e) {
+			logger.error("failed to write {} sessions", deltas.size(), e);
+			return deltas;
+		}
+	}
+
+	/**
+	 * 停止接受异步提交，等待写入线程写完队列中的变更
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		writers.shutdown();
+		try {
+			if (!writers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				logger.warn("session writers did not finish in {} seconds, {} sessions not written",
+						CLOSE_TIMEOUT_SECONDS, queue.size());
+				writers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			writers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Map<String, Object> getAllAttribute(String key) {
+		flush(key);
+		return delegate.getAllAttribute(key);
+	}
+
+	@Override
+	public void setAllAttributes(String key, Map<String, Object> attributes) {
+		flush(key);
+		delegate.setAllAttributes(key, attributes);
+	}
+
+	@Override
+	public Object getAttribute(String key, String fieldName) {
+		flush(key);
+		return delegate.getAttribute(key, fieldName);
+	}
+
+	@Override
+	public void setAttribute(String key, String fieldName, Object value) {
+		flush(key);
+		delegate.setAttribute(key, fieldName, value);
+	}
+
+	@Override
+	public void removeAttribute(String key, String fieldName) {
+		flush(key);
+		delegate.removeAttribute(key, fieldName);
+	}
+
+	@Override
+	public Collection<String> getAttributeKeys(String key) {
+		flush(key);
+		return delegate.getAttributeKeys(key);
+	}
+
+	@Override
+	public void del(String key) {
+		flush(key);
+		delegate.del(key);
+	}
+
+	@Override
+	public void setExpire(String key, int expire) {
+		flush(key);
+		delegate.setExpire(key, expire);
+	}
+
+	@Override
+	public Long getExpire(String key) {
+		flush(key);
+		return delegate.getExpire(key);
+	}
+
+	@Override
+	public void setPersist(String key) {
+		flush(key);
+		delegate.setPersist(key);
+	}
+
+	@Override
+	public boolean exists(String key) {
+		flush(key);
+		return delegate.exists(key);
+	}
+
+	@Override
+	public long increment(String key, String fieldName, long delta) {
+		flush(key);
+		return delegate.increment(key, fieldName, delta);
+	}
+
+	@Override
+	public CacheBatch batch() {
+		return new WriteBehindCacheBatch(this, delegate.batch());
+	}
+
+	@Override
+	public boolean isLoadSupported() {
+		return delegate instanceof LoadableCacheDao && ((LoadableCacheDao) delegate).isLoadSupported();
+	}
+
+	@Override
+	public SessionSnapshot loadSession(String key, Collection<String> fieldNames, String createTimeName,
+			Object createTime, int expire) {
+		flush(key);
+		return ((LoadableCacheDao) delegate).loadSession(key, fieldNames, createTimeName, createTime, expire);
+	}
+
+	@Override
+	public boolean isVersioningSupported() {
+		return delegate instanceof VersionedCacheDao && ((VersionedCacheDao) delegate).isVersioningSupported();
+	}
+
+	@Override
+	public long updateAttributesVersioned(String key, Map<String, Object> attributes,
+			Collection<String> removedNames, int expire, long expectedVersion, boolean force) {
+		flush(key);
+		return ((VersionedCacheDao) delegate).updateAttributesVersioned(key, attributes, removedNames,
+				expire, expectedVersion, force);
+	}
+
+	/**
+	 * 等待写入的会话数
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	/**
+	 * 合并到尚未写入的变更中的提交次数
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * 队列已满而同步写入的次数
+	 */
+	public long getFallbackCount() {
+		return fallbackCount.get();
+	}
+
+	/**
+	 * 写入失败后重新放入队列的次数
+	 */
+	public long getRetriedCount() {
+		return retriedCount.get();
+	}
+
+	/**
+	 * 达到最多写入次数仍失败而丢弃的会话数
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			List<SessionDelta> drained = new ArrayList<>(batchSize);
+			while (!closed || !queue.isEmpty()) {
+				SessionDelta first;
+				try {
+					first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (first == null) {
+					continue;
+				}
+				drained.add(first);
+				queue.drainTo(drained, batchSize - 1);
+				List<SessionDelta> sealed = new ArrayList<>(drained.size());
+				for (SessionDelta delta : drained) {
+					//已被读取方同步写入的变更跳过
+					if (delta.seal()) {
+						sealed.add(delta);
+					}
+				}
+				drained.clear();
+				if (!sealed.isEmpty()) {
+					write(sealed);
+				}
+			}
+		}
+	}
+}
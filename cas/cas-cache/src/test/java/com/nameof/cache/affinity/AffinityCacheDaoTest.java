@@ -0,0 +1,187 @@
+package com.nameof.cache.affinity;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nameof.cache.impl.EhCacheDao;
+import com.nameof.cache.near.InvalidationChannel;
+
+/**
+ * {@link AffinityCacheDao}的所有权：加载后由本地副本读取、收到通知或超过ttl后重新加载、
+ * 加载期间有不是所有者的写入时不保存副本
+ * @author ChengPan
+ */
+public class AffinityCacheDaoTest {
+
+	private CacheManager cacheManager;
+
+	private RemoteCacheDao remote;
+
+	private RecordingChannel channel;
+
+	private AffinityCacheDao affinity;
+
+	@Before
+	public void setUp() {
+		cacheManager = new CacheManager(new Configuration().name("AffinityCacheDaoTest"));
+		Cache cache = new Cache(new CacheConfiguration("sessions", 0));
+		cacheManager.addCache(cache);
+		remote = new RemoteCacheDao(cache);
+		channel = new RecordingChannel();
+		affinity = new AffinityCacheDao(remote, channel, 100, 60);
+		remote.setAttribute("a", "user", "tom");
+	}
+
+	@After
+	public void tearDown() {
+		affinity.close();
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void ownsASessionAfterLoadingIt() {
+		assertEquals("tom", affinity.getAttribute("a", "user"));
+		assertEquals("tom", affinity.getAttribute("a", "user"));
+		affinity.setAttribute("a", "role", "admin");
+
+		assertEquals("admin", affinity.getAllAttribute("a").get("role"));
+		assertEquals(1, remote.loads);
+		assertEquals(1, affinity.getLoadCount());
+		assertEquals(1, affinity.getOwnedCount());
+		assertEquals(Collections.singletonList("a"), channel.published);
+		//写入同时备份到远程缓存
+		assertEquals("admin", remote.getAttribute("a", "role"));
+	}
+
+	@Test
+	public void reloadsAfterAnotherNodeTakesOwnership() {
+		affinity.getAttribute("a", "user");
+		remote.setAttribute("a", "user", "jerry");
+		channel.listener.onInvalidate("a");
+
+		assertEquals(0, affinity.getOwnedCount());
+		assertEquals("jerry", affinity.getAttribute("a", "user"));
+		assertEquals(2, remote.loads);
+	}
+
+	@Test
+	public void doesNotOwnSessionsItOnlyWrites() {
+		affinity.setAttribute("b", "user", "jerry");
+
+		assertEquals(0, affinity.getOwnedCount());
+		assertEquals("jerry", remote.getAttribute("b", "user"));
+		assertEquals(0, remote.loads);
+	}
+
+	@Test
+	public void skipsTheCopyWhenAnUnownedWriteRacesTheLoad() {
+		remote.duringLoad = new Runnable() {
+			@Override
+			public void run() {
+				affinity.setAttribute("a", "user", "jerry");
+			}
+		};
+
+		//加载读到的是写入之前的值
+		assertEquals("tom", affinity.getAttribute("a", "user"));
+		assertEquals(0, affinity.getOwnedCount());
+		assertEquals("jerry", affinity.getAttribute("a", "user"));
+		assertEquals(1, affinity.getOwnedCount());
+	}
+
+	@Test
+	public void reloadsAfterTheTtl() throws InterruptedException {
+		affinity.close();
+		affinity = new AffinityCacheDao(remote, null, 100, 1);
+		affinity.getAttribute("a", "user");
+		affinity.getAttribute("a", "user");
+		assertEquals(1, remote.loads);
+
+		Thread.sleep(1100);
+		affinity.getAttribute("a", "user");
+		assertEquals(2, remote.loads);
+	}
+
+	@Test
+	public void dropsTheCopyWhenTheSessionExpires() throws InterruptedException {
+		affinity.getAttribute("a", "user");
+		affinity.updateAttributes("a", null, null, 1);
+
+		Thread.sleep(1100);
+		affinity.getAttribute("a", "user");
+		assertEquals(2, remote.loads);
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsedSession() {
+		affinity.close();
+		affinity = new AffinityCacheDao(remote, null, 1, 60);
+		remote.setAttribute("b", "user", "jerry");
+		affinity.getAttribute("a", "user");
+		affinity.getAttribute("b", "user");
+		affinity.getAttribute("a", "user");
+
+		assertEquals(1, affinity.getOwnedCount());
+		assertEquals(3, remote.loads);
+	}
+
+	/**
+	 * 记录加载次数，加载读取之后、返回之前可以执行指定的操作
+	 */
+	private static class RemoteCacheDao extends EhCacheDao {
+
+		int loads;
+
+		Runnable duringLoad;
+
+		RemoteCacheDao(Cache cache) {
+			super(cache);
+		}
+
+		@Override
+		public Map<String, Object> getAllAttribute(String key) {
+			loads++;
+			Map<String, Object> attributes = super.getAllAttribute(key);
+			if (duringLoad != null) {
+				Runnable action = duringLoad;
+				duringLoad = null;
+				action.run();
+			}
+			return attributes;
+		}
+	}
+
+	private static class RecordingChannel implements InvalidationChannel {
+
+		final List<String> published = new ArrayList<>();
+
+		Listener listener;
+
+		@Override
+		public void publish(String key) {
+			published.add(key);
+		}
+
+		@Override
+		public void subscribe(Listener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
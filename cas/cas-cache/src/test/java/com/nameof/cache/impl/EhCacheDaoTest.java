@@ -0,0 +1,141 @@
+package com.nameof.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 同一会话的并发写入不丢失更新，以及每个Element各自的过期时间
+ * @author ChengPan
+ */
+public class EhCacheDaoTest {
+
+	private static final int THREADS = 16;
+
+	private static final int WRITES_PER_THREAD = 500;
+
+	private CacheManager cacheManager;
+
+	private EhCacheDao cacheDao;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		cacheManager = new CacheManager(new Configuration().name("EhCacheDaoTest"));
+		Cache cache = new Cache(new CacheConfiguration("sessions", 0));
+		cacheManager.addCache(cache);
+		cacheDao = new EhCacheDao(cache);
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void concurrentWritesToOneSessionAreNotLost() throws Exception {
+		runConcurrently(new Task() {
+			@Override
+			public void run(int thread, int i) {
+				cacheDao.setAttribute("token", thread + "-" + i, i);
+			}
+		});
+
+		assertEquals(THREADS * WRITES_PER_THREAD, cacheDao.getAttributeKeys("token").size());
+	}
+
+	@Test
+	public void concurrentBatchedUpdatesAndRemovalsAreNotLost() throws Exception {
+		runConcurrently(new Task() {
+			@Override
+			public void run(int thread, int i) {
+				String name = thread + "-" + i;
+				cacheDao.updateAttributes("token", Collections.<String, Object>singletonMap(name, i), null, 600);
+				if (i % 2 == 0) {
+					cacheDao.updateAttributes("token", null, Collections.singleton(name), 600);
+				}
+			}
+		});
+
+		assertEquals(THREADS * WRITES_PER_THREAD / 2, cacheDao.getAllAttribute("token").size());
+	}
+
+	@Test
+	public void concurrentIncrementsAreNotLost() throws Exception {
+		runConcurrently(new Task() {
+			@Override
+			public void run(int thread, int i) {
+				cacheDao.increment("token", "count", 1);
+			}
+		});
+
+		assertEquals((long) THREADS * WRITES_PER_THREAD, cacheDao.getAttribute("token", "count"));
+	}
+
+	@Test
+	public void expiryBelongsToEachElementAndSurvivesWrites() {
+		cacheDao.updateAttributes("a", Collections.<String, Object>singletonMap("name", "a"), null, 100);
+		cacheDao.updateAttributes("b", Collections.<String, Object>singletonMap("name", "b"), null, -1);
+		cacheDao.setAttribute("a", "other", 1);
+
+		long expire = cacheDao.getExpire("a");
+		assertTrue(String.valueOf(expire), expire > 90 && expire <= 100);
+		assertEquals(-1L, (long) cacheDao.getExpire("b"));
+
+		cacheDao.setExpire("b", 50);
+		expire = cacheDao.getExpire("b");
+		assertTrue(String.valueOf(expire), expire > 40 && expire <= 50);
+		assertEquals("b", cacheDao.getAttribute("b", "name"));
+
+		cacheDao.setPersist("a");
+		assertEquals(-1L, (long) cacheDao.getExpire("a"));
+		assertEquals(1, cacheDao.getAttribute("a", "other"));
+	}
+
+	private void runConcurrently(final Task task) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					start.await();
+					for (int i = 0; i < WRITES_PER_THREAD; i++) {
+						task.run(thread, i);
+					}
+					return null;
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<?> future : futures) {
+			future.get();
+		}
+	}
+
+	private interface Task {
+
+		void run(int thread, int i);
+	}
+}
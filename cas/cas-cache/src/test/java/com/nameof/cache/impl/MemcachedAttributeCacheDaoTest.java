@@ -0,0 +1,51 @@
+package com.nameof.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * 属性key需要满足memcached key的规则
+ * @author ChengPan
+ */
+public class MemcachedAttributeCacheDaoTest {
+
+	private static final String TOKEN = "0123456789abcdef0123456789abcdef";
+
+	@Test
+	public void keepsValidFieldNames() {
+		assertEquals(TOKEN + ":loginUser", MemcachedAttributeCacheDao.fieldKey(TOKEN, "loginUser"));
+	}
+
+	@Test
+	public void digestsFieldNamesThatAreNotValidKeys() {
+		char[] longName = new char[300];
+		Arrays.fill(longName, 'a');
+		for (String name : Arrays.asList("login user", "tab\tname", "line\nname", "用户", new String(longName))) {
+			String fieldKey = MemcachedAttributeCacheDao.fieldKey(TOKEN, name);
+			assertTrue(fieldKey, fieldKey.startsWith(TOKEN + ":#"));
+			assertValidKey(fieldKey);
+		}
+	}
+
+	@Test
+	public void digestedKeysDoNotCollideWithFieldNames() {
+		String digested = MemcachedAttributeCacheDao.fieldKey(TOKEN, "login user");
+		String name = digested.substring(TOKEN.length() + 1);
+
+		assertNotEquals(digested, MemcachedAttributeCacheDao.fieldKey(TOKEN, name));
+		assertValidKey(MemcachedAttributeCacheDao.fieldKey(TOKEN, name));
+	}
+
+	private static void assertValidKey(String key) {
+		assertTrue(key, key.length() <= 250);
+		for (char c : key.toCharArray()) {
+			assertFalse(key, c <= ' ' || c >= 0x7F);
+		}
+	}
+}
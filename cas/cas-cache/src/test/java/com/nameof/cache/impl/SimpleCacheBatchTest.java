@@ -0,0 +1,89 @@
+package com.nameof.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 某条命令失败时{@link SimpleCacheBatch}的其余future也要完成
+ * @author ChengPan
+ */
+public class SimpleCacheBatchTest {
+
+	private static final IllegalStateException FAILURE = new IllegalStateException("expire failed");
+
+	private CacheManager cacheManager;
+
+	private SimpleCacheBatch batch;
+
+	@Before
+	public void setUp() {
+		cacheManager = new CacheManager(new Configuration().name("SimpleCacheBatchTest"));
+		Cache cache = new Cache(new CacheConfiguration("sessions", 0));
+		cacheManager.addCache(cache);
+		EhCacheDao cacheDao = new EhCacheDao(cache) {
+			@Override
+			public void setExpire(String key, int expire) {
+				throw FAILURE;
+			}
+		};
+		cacheDao.setAttribute("token", "name", "value");
+		batch = new SimpleCacheBatch(cacheDao);
+	}
+
+	@After
+	public void tearDown() {
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void completesEveryFutureWhenACommandFails() throws Exception {
+		Future<Object> before = batch.getAttribute("token", "name");
+		batch.setExpire("token", 60);
+		Future<Long> after = batch.increment("token", "count", 1);
+		try {
+			batch.execute();
+			fail("the failed command should be rethrown");
+		} catch (IllegalStateException e) {
+			assertSame(FAILURE, e);
+		}
+
+		assertEquals("value", before.get(1, TimeUnit.SECONDS));
+		try {
+			after.get(1, TimeUnit.SECONDS);
+			fail("commands after the failed one should not succeed");
+		} catch (ExecutionException e) {
+			assertSame(FAILURE, e.getCause());
+		}
+	}
+
+	@Test
+	public void clearsCommandsAfterAFailure() throws Exception {
+		batch.setExpire("token", 60);
+		try {
+			batch.execute();
+			fail("the failed command should be rethrown");
+		} catch (IllegalStateException e) {
+			assertSame(FAILURE, e);
+		}
+		Future<Object> next = batch.getAttribute("token", "name");
+		batch.execute();
+
+		assertTrue(next.isDone());
+		assertEquals("value", next.get());
+	}
+}
@@ -0,0 +1,125 @@
+package com.nameof.cache.serializer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+/**
+ * {@link SizeAwareSessionSerializer}的压缩、上限，以及{@link Deflate}格式的读写
+ * @author ChengPan
+ */
+public class SizeAwareSessionSerializerTest {
+
+	private final SessionSerializer plain = new JdkSessionSerializer();
+
+	@Test
+	public void compressesLargeValuesAndReadsThemBack() {
+		SizeAwareSessionSerializer serializer = new SizeAwareSessionSerializer(plain, 256, 0, 0);
+		ArrayList<String> value = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			value.add("attribute-" + (i % 10));
+		}
+
+		byte[] bytes = serializer.serialize(value);
+		assertEquals(AbstractSessionSerializer.TYPE_DEFLATED, bytes[0]);
+		assertEquals(1, serializer.getCompressedCount());
+		assertEquals(plain.serialize(value).length, serializer.getBytesBeforeCompression());
+		assertEquals(bytes.length, serializer.getBytesAfterCompression());
+		assertTrue(bytes.length < serializer.getBytesBeforeCompression());
+		assertEquals(value, serializer.deserialize(bytes));
+		//关闭压缩之后仍能读取
+		assertEquals(value, plain.deserialize(bytes));
+	}
+
+	@Test
+	public void keepsValuesThatDoNotShrink() {
+		SizeAwareSessionSerializer serializer = new SizeAwareSessionSerializer(plain, 256, 0, 0);
+		byte[] random = randomBytes(4096);
+
+		byte[] bytes = serializer.serialize(random);
+		assertArrayEquals(plain.serialize(random), bytes);
+		assertEquals(0, serializer.getCompressedCount());
+		assertArrayEquals(random, (byte[]) serializer.deserialize(bytes));
+	}
+
+	@Test
+	public void leavesValuesBelowTheThresholdUncompressed() {
+		SizeAwareSessionSerializer serializer = new SizeAwareSessionSerializer(plain, 256, 0, 0);
+		char[] chars = new char[200];
+		Arrays.fill(chars, 'a');
+		String value = new String(chars);
+
+		assertArrayEquals(plain.serialize(value), serializer.serialize(value));
+		assertEquals(0, serializer.getCompressedCount());
+	}
+
+	@Test
+	public void deflateRoundTrip() throws DataFormatException {
+		byte[] raw = new byte[10000];
+		for (int i = 0; i < raw.length; i++) {
+			raw[i] = (byte) (i % 7);
+		}
+
+		byte[] compressed = Deflate.compress(AbstractSessionSerializer.TYPE_DEFLATED, raw);
+		assertEquals(AbstractSessionSerializer.TYPE_DEFLATED, compressed[0]);
+		assertArrayEquals(raw, Deflate.decompress(compressed));
+		assertNull(Deflate.compress(AbstractSessionSerializer.TYPE_DEFLATED, randomBytes(1000)));
+	}
+
+	@Test(expected = DataFormatException.class)
+	public void rejectsTruncatedCompressedValues() throws DataFormatException {
+		byte[] raw = new byte[10000];
+		for (int i = 0; i < raw.length; i++) {
+			raw[i] = (byte) (i % 7);
+		}
+		byte[] compressed = Deflate.compress(AbstractSessionSerializer.TYPE_DEFLATED, raw);
+		Deflate.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+	}
+
+	@Test
+	public void rejectsValuesLargerThanTheLimit() {
+		SizeAwareSessionSerializer serializer = new SizeAwareSessionSerializer(plain, 256, 0, 1000);
+		try {
+			serializer.serialize(randomBytes(2000));
+			fail("oversized value was serialized");
+		} catch (IllegalArgumentException e) {
+			assertEquals(1, serializer.getRejectedCount());
+		}
+	}
+
+	@Test
+	public void appliesTheLimitAfterCompression() {
+		SizeAwareSessionSerializer serializer = new SizeAwareSessionSerializer(plain, 256, 500, 1000);
+		byte[] value = new byte[2000];
+
+		byte[] bytes = serializer.serialize(value);
+		assertTrue(bytes.length <= 500);
+		assertEquals(0, serializer.getRejectedCount());
+		assertEquals(0, serializer.getOversizedCount());
+		assertArrayEquals(value, (byte[]) serializer.deserialize(bytes));
+	}
+
+	@Test
+	public void countsValuesLargerThanTheWarningSize() {
+		SizeAwareSessionSerializer serializer = new SizeAwareSessionSerializer(plain, 0, 1000, 0);
+		serializer.serialize(new byte[2000]);
+		serializer.serialize(new byte[10]);
+
+		assertEquals(1, serializer.getOversizedCount());
+	}
+
+	private static byte[] randomBytes(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,243 @@
+package com.nameof.cache.writebehind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nameof.cache.impl.EhCacheDao;
+
+/**
+ * {@link WriteBehindCacheDao}的合并、读取方同步写入、失败重试和队列已满时的同步写入.<br>
+ *
+ * 被写入的缓存可以让写入线程停在某个会话的写入中，此时该会话的变更已被封存，之后的提交和读取都要等待
+ * @author ChengPan
+ */
+public class WriteBehindCacheDaoTest {
+
+	private static final int EXPIRE = 600;
+
+	private CacheManager cacheManager;
+
+	private ControlledCacheDao delegate;
+
+	private WriteBehindCacheDao writeBehind;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		cacheManager = new CacheManager(new Configuration().name("WriteBehindCacheDaoTest"));
+		Cache cache = new Cache(new CacheConfiguration("sessions", 0));
+		cacheManager.addCache(cache);
+		delegate = new ControlledCacheDao(cache);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		delegate.release.countDown();
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+		executor.shutdownNow();
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void coalescesCommitsOfOneSessionWhileItIsQueued() throws Exception {
+		writeBehind = new WriteBehindCacheDao(delegate, 100, 1, 8);
+		blockWriterOn("a");
+		writeBehind.updateAttributes("b", attributes("x", 1), null, EXPIRE);
+		writeBehind.updateAttributes("b", attributes("y", 2), null, EXPIRE);
+		writeBehind.updateAttributes("b", null, Collections.singleton("x"), EXPIRE);
+
+		assertEquals(2, writeBehind.getCoalescedCount());
+		delegate.release.countDown();
+		waitUntilWritten(2);
+		assertEquals(Arrays.asList("a", "b"), delegate.writes);
+		assertEquals(attributes("y", 2), delegate.getAllAttribute("b"));
+	}
+
+	@Test
+	public void readWaitsForTheWriteInProgress() throws Exception {
+		writeBehind = new WriteBehindCacheDao(delegate, 100, 1, 8);
+		blockWriterOn("a");
+		Future<Map<String, Object>> read = executor.submit(new Callable<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> call() {
+				return writeBehind.getAllAttribute("a");
+			}
+		});
+
+		Thread.sleep(200);
+		assertFalse("read returned before the sealed delta was written", read.isDone());
+		delegate.release.countDown();
+		assertEquals(attributes("x", 1), read.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void readWritesAQueuedDeltaItself() {
+		writeBehind = new WriteBehindCacheDao(delegate, 100, 1, 8);
+		blockWriterOn("a");
+		writeBehind.updateAttributes("b", attributes("x", 1), null, EXPIRE);
+
+		assertEquals(1, writeBehind.getAttribute("b", "x"));
+		assertEquals(1, writeBehind.getQueueSize());
+	}
+
+	@Test
+	public void retriesAFailedWriteWithLaterCommitsMergedIn() throws Exception {
+		delegate.failures.set(WriteBehindCacheDao.MAX_WRITE_ATTEMPTS - 1);
+		writeBehind = new WriteBehindCacheDao(delegate, 100, 1, 8);
+		writeBehind.updateAttributes("a", attributes("x", 1), null, EXPIRE);
+
+		waitUntilWritten(1);
+		assertEquals(WriteBehindCacheDao.MAX_WRITE_ATTEMPTS, delegate.writes.size());
+		assertEquals(WriteBehindCacheDao.MAX_WRITE_ATTEMPTS - 1, writeBehind.getRetriedCount());
+		assertEquals(0, writeBehind.getFailedCount());
+		assertEquals(attributes("x", 1), delegate.getAllAttribute("a"));
+	}
+
+	@Test
+	public void dropsADeltaAfterTheLastAttempt() throws Exception {
+		delegate.failures.set(Integer.MAX_VALUE);
+		writeBehind = new WriteBehindCacheDao(delegate, 100, 1, 8);
+		writeBehind.updateAttributes("a", attributes("x", 1), null, EXPIRE);
+
+		long deadline = System.currentTimeMillis() + 2000;
+		while (writeBehind.getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, writeBehind.getFailedCount());
+		assertEquals(WriteBehindCacheDao.MAX_WRITE_ATTEMPTS, delegate.writes.size());
+		assertEquals(0, writeBehind.getWrittenCount());
+		//放弃之后不再等待写入，读取直接访问缓存
+		assertTrue(writeBehind.getAllAttribute("a").isEmpty());
+	}
+
+	@Test
+	public void writesSynchronouslyWhenTheQueueIsFull() {
+		writeBehind = new WriteBehindCacheDao(delegate, 1, 1, 8);
+		blockWriterOn("a");
+		writeBehind.updateAttributes("b", attributes("x", 1), null, EXPIRE);
+		writeBehind.updateAttributes("c", attributes("x", 1), null, EXPIRE);
+
+		assertEquals(1, writeBehind.getFallbackCount());
+		assertEquals(Arrays.asList("a", "c"), delegate.writes);
+		assertEquals(attributes("x", 1), delegate.getAllAttribute("c"));
+		assertTrue(delegate.getAllAttribute("b").isEmpty());
+	}
+
+	@Test
+	public void interruptedCommitStillWaitsForTheWriteInProgress() throws Exception {
+		writeBehind = new WriteBehindCacheDao(delegate, 100, 1, 8);
+		blockWriterOn("a");
+		Future<Boolean> commit = executor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				Thread.currentThread().interrupt();
+				writeBehind.updateAttributes("a", attributes("y", 2), null, EXPIRE);
+				return Thread.interrupted();
+			}
+		});
+
+		Thread.sleep(200);
+		assertFalse("commit did not wait for the sealed delta", commit.isDone());
+		delegate.release.countDown();
+		assertTrue("interrupt status was lost", commit.get(1, TimeUnit.SECONDS));
+		waitUntilWritten(2);
+		assertEquals(Arrays.asList("a", "a"), delegate.writes);
+		Map<String, Object> expected = attributes("x", 1);
+		expected.put("y", 2);
+		assertEquals(expected, delegate.getAllAttribute("a"));
+	}
+
+	/**
+	 * 提交会话key，等待写入线程停在它的写入中
+	 */
+	private void blockWriterOn(String key) {
+		delegate.blockedKey = key;
+		writeBehind.updateAttributes(key, attributes("x", 1), null, EXPIRE);
+		try {
+			assertTrue(delegate.blocked.await(1, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void waitUntilWritten(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while (writeBehind.getWrittenCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, writeBehind.getWrittenCount());
+	}
+
+	private static Map<String, Object> attributes(String name, Object value) {
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put(name, value);
+		return attributes;
+	}
+
+	/**
+	 * 记录每次写入的会话key，可以让某个会话的写入停住，或让写入失败指定的次数
+	 */
+	private static class ControlledCacheDao extends EhCacheDao {
+
+		final List<String> writes = Collections.synchronizedList(new ArrayList<String>());
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AtomicInteger failures = new AtomicInteger();
+
+		volatile String blockedKey;
+
+		ControlledCacheDao(Cache cache) {
+			super(cache);
+		}
+
+		@Override
+		public void updateAttributes(String key, Map<String, Object> attributes,
+				Collection<String> removedNames, int expire) {
+			writes.add(key);
+			if (key.equals(blockedKey) && blocked.getCount() > 0) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (failures.getAndDecrement() > 0) {
+				throw new IllegalStateException("write failed");
+			}
+			super.updateAttributes(key, attributes, removedNames, expire);
+		}
+	}
+}
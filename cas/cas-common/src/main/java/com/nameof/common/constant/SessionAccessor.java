@@ -11,12 +11,16 @@ public interface SessionAccessor {
 	
 	String REDIS_TEMPLATE = "redis-template";
 	
+	String LETTUCE = "lettuce";
+	
 	String MEMCACHED = "memcached";
 	
 	String EHCACHE = "ehcache";
 	
+	String OFFHEAP = "offheap";
+	
 	String SPRING_SESSION = "spring-session";
 	
-	List<String> ALL = Arrays.asList(new String[] {REDIS, REDISSON, REDIS_TEMPLATE
-			, MEMCACHED, EHCACHE, SPRING_SESSION});
+	List<String> ALL = Arrays.asList(new String[] {REDIS, REDISSON, REDIS_TEMPLATE, LETTUCE
+			, MEMCACHED, EHCACHE, OFFHEAP, SPRING_SESSION});
 }
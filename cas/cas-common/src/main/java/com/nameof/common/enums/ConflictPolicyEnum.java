@@ -0,0 +1,7 @@
+package com.nameof.common.enums;
+
+public enum ConflictPolicyEnum {
+	NONE,
+	LAST_WRITER_WINS,
+	REJECT;
+}
@@ -3,5 +3,7 @@ package com.nameof.common.enums;
 public enum DataFormatEnum {
 	BINARY,
 	JSON,
-	XML;
+	XML,
+	FST,
+	KRYO;
 }
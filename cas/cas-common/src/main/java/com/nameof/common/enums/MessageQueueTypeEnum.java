@@ -0,0 +1,6 @@
+package com.nameof.common.enums;
+
+public enum MessageQueueTypeEnum {
+	LIST,
+	STREAM;
+}
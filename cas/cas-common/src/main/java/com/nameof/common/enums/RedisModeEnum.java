@@ -0,0 +1,7 @@
+package com.nameof.common.enums;
+
+public enum RedisModeEnum {
+	STANDALONE,
+	SENTINEL,
+	CLUSTER;
+}
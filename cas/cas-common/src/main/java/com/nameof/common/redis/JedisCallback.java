@@ -0,0 +1,12 @@
+package com.nameof.common.redis;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 在{@link JedisTemplate}借出的连接上执行的操作，不要在回调之外持有jedis实例
+ * @author ChengPan
+ */
+public interface JedisCallback<T> {
+
+	T doInJedis(Jedis jedis);
+}
@@ -0,0 +1,120 @@
+package com.nameof.common.redis;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableMBeanExport;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * 由Spring管理的Jedis连接池，供RedisCacheDao和注销消息队列使用，连接池参数见cas-config.properties.<br>
+ *
+ * 按{@link RedisTopology}创建单机、哨兵或集群连接，集群模式下连接池参数作用于每个节点
+ * @author ChengPan
+ */
+@Configuration
+@EnableMBeanExport
+public class JedisPoolConfiguration {
+	
+	private static final Logger logger = LoggerFactory.getLogger(JedisPoolConfiguration.class);
+	
+	@Autowired
+	private RedisTopology topology;
+	
+	@Value("${redis.pool.maxTotal:64}")
+	private int maxTotal;
+	
+	@Value("${redis.pool.maxIdle:16}")
+	private int maxIdle;
+	
+	@Value("${redis.pool.minIdle:0}")
+	private int minIdle;
+	
+	@Value("${redis.pool.maxWaitMillis:1000}")
+	private long maxWaitMillis;
+	
+	@Value("${redis.pool.testOnBorrow:false}")
+	private boolean testOnBorrow;
+	
+	@Value("${redis.timeout.connect:" + Protocol.DEFAULT_TIMEOUT + "}")
+	private int connectTimeout;
+	
+	@Value("${redis.timeout.socket:" + Protocol.DEFAULT_TIMEOUT + "}")
+	private int socketTimeout;
+	
+	@Bean
+	public JedisTemplate jedisTemplate() {
+		JedisPoolConfig config = poolConfig();
+		switch (topology.getMode()) {
+			case CLUSTER:
+				return new JedisTemplate(new JedisSlotBasedConnectionHandler(topology.getHostAndPorts(),
+						config, connectTimeout, socketTimeout, null));
+			case SENTINEL:
+				JedisSentinelPool master = new JedisSentinelPool(topology.getSentinelMaster(),
+						new HashSet<>(topology.getNodes()), config, connectTimeout, socketTimeout, null,
+						Protocol.DEFAULT_DATABASE);
+				if (topology.isReadFromReplica()) {
+					return new JedisTemplate(master, replicaPools(config));
+				}
+				return new JedisTemplate(master);
+			default:
+				return new JedisTemplate(new JedisPool(config, topology.getHost(), topology.getPort(),
+						connectTimeout, socketTimeout, null, Protocol.DEFAULT_DATABASE, null, false,
+						null, null, null));
+		}
+	}
+	
+	private JedisPoolConfig poolConfig() {
+		JedisPoolConfig config = new JedisPoolConfig();
+		config.setMaxTotal(maxTotal);
+		config.setMaxIdle(maxIdle);
+		config.setMinIdle(minIdle);
+		//连接池耗尽时最多等待maxWaitMillis，而不是无限期阻塞请求线程
+		config.setMaxWaitMillis(maxWaitMillis);
+		config.setTestOnBorrow(testOnBorrow);
+		config.setJmxNamePrefix("cas-redis-pool");
+		return config;
+	}
+	
+	/**
+	 * 向哨兵查询当前在线的从节点并为每个从节点创建连接池，
+	 * 启动之后新增的从节点不会被使用，从节点下线时读操作回退到主节点
+	 */
+	private List<JedisPool> replicaPools(JedisPoolConfig config) {
+		for (HostAndPort sentinel : topology.getHostAndPorts()) {
+			try (Jedis jedis = new Jedis(sentinel.getHost(), sentinel.getPort(), connectTimeout, socketTimeout)) {
+				List<JedisPool> pools = new ArrayList<>();
+				for (Map<String, String> replica : jedis.sentinelSlaves(topology.getSentinelMaster())) {
+					String flags = replica.get("flags");
+					if (flags != null && (flags.contains("s_down") || flags.contains("disconnected"))) {
+						continue;
+					}
+					pools.add(new JedisPool(config, replica.get("ip"), Integer.parseInt(replica.get("port")),
+							connectTimeout, socketTimeout, null, Protocol.DEFAULT_DATABASE, null, false,
+							null, null, null));
+				}
+				logger.info("redis sentinel {} reports {} online replicas", sentinel, pools.size());
+				return pools;
+			} catch (JedisException e) {
+				logger.warn("can not get replicas from sentinel {}", sentinel, e);
+			}
+		}
+		return new ArrayList<>();
+	}
+}
@@ -0,0 +1,329 @@
+package com.nameof.common.redis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisSlotBasedConnectionHandler;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+
+/**
+ * 以操作为单位从连接池借出连接，回调执行完毕后立即归还，
+ * 连接不再与线程绑定，任何线程都可以安全使用.<br>
+ *
+ * 支持三种部署方式：
+ * <ul>
+ * <li>单机/哨兵：所有命令发往{@link JedisPool}或{@link redis.clients.jedis.JedisSentinelPool}维护的主节点，
+ * 哨兵模式下可以额外提供从节点连接池，{@link #read(String, JedisCallback)}优先从从节点读取</li>
+ * <li>集群：按key计算hash slot，从对应主节点借出连接，收到MOVED/ASK重定向时刷新slot缓存后重试</li>
+ * </ul>
+ *
+ * 同时统计借出次数、连接池耗尽次数等指标，连同连接池的活跃数、空闲数和等待时间通过JMX暴露，
+ * 集群模式下为所有节点连接池的汇总
+ * @author ChengPan
+ */
+@ManagedResource(objectName = "com.nameof:type=JedisPool,name=cas", description = "cas redis connection pool")
+public class JedisTemplate implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(JedisTemplate.class);
+
+	private static final int MAX_REDIRECTIONS = 5;
+
+	private final Pool<Jedis> pool;
+
+	private final List<? extends Pool<Jedis>> replicaPools;
+
+	private final JedisSlotBasedConnectionHandler cluster;
+
+	private final AtomicInteger replicaIndex = new AtomicInteger();
+
+	private final AtomicLong borrowCount = new AtomicLong();
+
+	private final AtomicLong exhaustedCount = new AtomicLong();
+
+	private final AtomicLong connectionFailureCount = new AtomicLong();
+
+	private final AtomicLong redirectionCount = new AtomicLong();
+
+	private final AtomicLong replicaReadCount = new AtomicLong();
+
+	private final AtomicLong replicaFailureCount = new AtomicLong();
+
+	public JedisTemplate(Pool<Jedis> pool) {
+		this(pool, Collections.<Pool<Jedis>>emptyList());
+	}
+
+	/**
+	 * @param replicaPools 从节点连接池，为空时读操作也发往主节点
+	 */
+	public JedisTemplate(Pool<Jedis> pool, List<? extends Pool<Jedis>> replicaPools) {
+		this.pool = pool;
+		this.replicaPools = replicaPools;
+		this.cluster = null;
+	}
+
+	public JedisTemplate(JedisSlotBasedConnectionHandler cluster) {
+		this.pool = null;
+		this.replicaPools = Collections.emptyList();
+		this.cluster = cluster;
+	}
+
+	/**
+	 * 计算key所在的hash slot，key中包含{tag}时只对tag计算
+	 */
+	public static int slot(String key) {
+		return JedisClusterCRC16.getSlot(key);
+	}
+
+	public boolean isCluster() {
+		return cluster != null;
+	}
+
+	/**
+	 * 执行与具体key无关的命令，如发布订阅，集群模式下使用任意一个节点
+	 */
+	public <T> T execute(JedisCallback<T> callback) {
+		return execute(null, callback);
+	}
+
+	/**
+	 * 执行只访问key（或与key处于同一slot的其他key）的命令，集群模式下发往key所在的节点
+	 */
+	public <T> T execute(String key, JedisCallback<T> callback) {
+		if (cluster == null) {
+			return doExecute(getResource(pool), callback);
+		}
+		if (key == null) {
+			return doExecute(getClusterResource(-1), callback);
+		}
+		int slot = slot(key);
+		Jedis jedis = getClusterResource(slot);
+		for (int redirections = 0; ; redirections++) {
+			try {
+				return doExecute(jedis, callback);
+			} catch (JedisRedirectionException e) {
+				if (redirections >= MAX_REDIRECTIONS) {
+					throw e;
+				}
+				redirectionCount.incrementAndGet();
+				if (e instanceof JedisAskDataException) {
+					//slot正在迁移，只对本次命令使用目标节点
+					jedis = getClusterNodeResource(e);
+					asking(jedis);
+				}
+				else {
+					cluster.renewSlotCache();
+					jedis = getClusterResource(slot);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 执行只读命令，配置了从节点时轮询从节点，从节点不可用或命令在从节点上失败时回退到主节点.<br>
+	 * 从节点为异步复制，可能读到稍旧的数据
+	 */
+	public <T> T read(String key, JedisCallback<T> callback) {
+		if (replicaPools.isEmpty()) {
+			return execute(key, callback);
+		}
+		Pool<Jedis> replica = replicaPools.get((replicaIndex.getAndIncrement() & Integer.MAX_VALUE) % replicaPools.size());
+		Jedis jedis;
+		try {
+			jedis = getResource(replica);
+		} catch (JedisConnectionException e) {
+			logger.warn("redis replica unavailable, reading from master", e);
+			return execute(key, callback);
+		}
+		try {
+			T result = doExecute(jedis, callback);
+			replicaReadCount.incrementAndGet();
+			return result;
+		} catch (JedisException e) {
+			//从节点正在同步（LOADING、MASTERDOWN）或连接中断
+			replicaFailureCount.incrementAndGet();
+			logger.warn("redis replica read failed, reading from master", e);
+			return execute(key, callback);
+		}
+	}
+
+	private <T> T doExecute(Jedis jedis, JedisCallback<T> callback) {
+		try {
+			return callback.doInJedis(jedis);
+		} catch (JedisConnectionException e) {
+			connectionFailureCount.incrementAndGet();
+			throw e;
+		} finally {
+			//close会将连接归还连接池，已断开的连接会被销毁
+			jedis.close();
+		}
+	}
+
+	private Jedis getResource(Pool<Jedis> from) {
+		borrowCount.incrementAndGet();
+		try {
+			return from.getResource();
+		} catch (JedisConnectionException e) {
+			handleBorrowFailure(e);
+			throw e;
+		}
+	}
+
+	private Jedis getClusterResource(int slot) {
+		borrowCount.incrementAndGet();
+		try {
+			return slot < 0 ? cluster.getConnection() : cluster.getConnectionFromSlot(slot);
+		} catch (JedisConnectionException e) {
+			handleBorrowFailure(e);
+			throw e;
+		}
+	}
+
+	private Jedis getClusterNodeResource(JedisRedirectionException redirection) {
+		borrowCount.incrementAndGet();
+		try {
+			return cluster.getConnectionFromNode(redirection.getTargetNode());
+		} catch (JedisConnectionException e) {
+			handleBorrowFailure(e);
+			throw e;
+		}
+	}
+
+	private void asking(Jedis jedis) {
+		try {
+			jedis.asking();
+		} catch (RuntimeException e) {
+			jedis.close();
+			throw e;
+		}
+	}
+
+	private void handleBorrowFailure(JedisConnectionException e) {
+		if (e.getCause() instanceof NoSuchElementException) {
+			//等待maxWaitMillis之后仍然没有可用连接
+			exhaustedCount.incrementAndGet();
+			logger.warn("redis pool exhausted, active {}, idle {}, waiters {}",
+					new Object[]{getNumActive(), getNumIdle(), getNumWaiters()});
+		}
+		else {
+			connectionFailureCount.incrementAndGet();
+		}
+	}
+
+	private Collection<? extends Pool<Jedis>> pools() {
+		if (cluster != null) {
+			return cluster.getNodes().values();
+		}
+		List<Pool<Jedis>> pools = new ArrayList<>(replicaPools.size() + 1);
+		pools.add(pool);
+		pools.addAll(replicaPools);
+		return pools;
+	}
+
+	@Override
+	public void close() {
+		if (cluster != null) {
+			cluster.close();
+			return;
+		}
+		for (Pool<Jedis> p : pools()) {
+			p.close();
+		}
+	}
+
+	@ManagedAttribute(description = "number of connections currently borrowed")
+	public int getNumActive() {
+		int n = 0;
+		for (Pool<Jedis> p : pools()) {
+			n += p.getNumActive();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "number of idle connections")
+	public int getNumIdle() {
+		int n = 0;
+		for (Pool<Jedis> p : pools()) {
+			n += p.getNumIdle();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "number of threads waiting for a connection")
+	public int getNumWaiters() {
+		int n = 0;
+		for (Pool<Jedis> p : pools()) {
+			n += p.getNumWaiters();
+		}
+		return n;
+	}
+
+	@ManagedAttribute(description = "mean time spent waiting for a connection in milliseconds")
+	public long getMeanBorrowWaitTimeMillis() {
+		Collection<? extends Pool<Jedis>> pools = pools();
+		if (pools.isEmpty()) {
+			return 0;
+		}
+		long sum = 0;
+		for (Pool<Jedis> p : pools) {
+			sum += p.getMeanBorrowWaitTimeMillis();
+		}
+		return sum / pools.size();
+	}
+
+	@ManagedAttribute(description = "max time spent waiting for a connection in milliseconds")
+	public long getMaxBorrowWaitTimeMillis() {
+		long max = 0;
+		for (Pool<Jedis> p : pools()) {
+			max = Math.max(max, p.getMaxBorrowWaitTimeMillis());
+		}
+		return max;
+	}
+
+	@ManagedAttribute(description = "total number of borrow attempts")
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	@ManagedAttribute(description = "number of borrow attempts that timed out because the pool was exhausted")
+	public long getExhaustedCount() {
+		return exhaustedCount.get();
+	}
+
+	@ManagedAttribute(description = "number of failures to connect or talk to redis")
+	public long getConnectionFailureCount() {
+		return connectionFailureCount.get();
+	}
+
+	@ManagedAttribute(description = "number of MOVED/ASK redirections followed in cluster mode")
+	public long getRedirectionCount() {
+		return redirectionCount.get();
+	}
+
+	@ManagedAttribute(description = "number of reads served by replicas")
+	public long getReplicaReadCount() {
+		return replicaReadCount.get();
+	}
+
+	@ManagedAttribute(description = "number of replica reads that failed and were retried on the master")
+	public long getReplicaFailureCount() {
+		return replicaFailureCount.get();
+	}
+}
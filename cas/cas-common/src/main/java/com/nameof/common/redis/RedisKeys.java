@@ -0,0 +1,21 @@
+package com.nameof.common.redis;
+
+/**
+ * 会话相关key的命名.<br>
+ *
+ * 集群模式下redis只对key中第一对{}之间的内容计算hash slot，会话的附属key统一命名为"{token}:后缀"，
+ * 与会话hash本身（key为token）落在同一个slot，可以在同一个pipeline、事务或lua脚本中一起访问
+ * @author ChengPan
+ */
+public final class RedisKeys {
+
+	private RedisKeys() {
+	}
+
+	/**
+	 * 与会话key处于同一slot的附属key
+	 */
+	public static String sessionTagged(String sessionKey, String suffix) {
+		return "{" + sessionKey + "}:" + suffix;
+	}
+}
@@ -0,0 +1,86 @@
+package com.nameof.common.redis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import redis.clients.jedis.HostAndPort;
+
+import com.nameof.common.enums.RedisModeEnum;
+
+/**
+ * redis部署方式，由JedisTemplate、Redisson和RedisTemplate的配置共用，配置项见cas-config.properties.<br>
+ *
+ * STANDALONE使用redis.host和redis.port，SENTINEL的redis.nodes为哨兵地址，CLUSTER的redis.nodes为集群种子节点
+ * @author ChengPan
+ */
+@Component
+public class RedisTopology {
+	
+	@Value("${redis.mode:STANDALONE}")
+	private RedisModeEnum mode = RedisModeEnum.STANDALONE;
+	
+	@Value("${redis.host}")
+	private String host;
+	
+	@Value("${redis.port}")
+	private int port;
+	
+	@Value("${redis.nodes:}")
+	private String nodes;
+	
+	@Value("${redis.sentinel.master:mymaster}")
+	private String sentinelMaster;
+	
+	@Value("${redis.readFromReplica:false}")
+	private boolean readFromReplica;
+
+	public RedisModeEnum getMode() {
+		return mode;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public String getSentinelMaster() {
+		return sentinelMaster;
+	}
+
+	public boolean isReadFromReplica() {
+		return readFromReplica;
+	}
+
+	/**
+	 * redis.nodes中的节点地址，格式为host:port
+	 */
+	public List<String> getNodes() {
+		List<String> list = new ArrayList<>();
+		for (String node : nodes.split(",")) {
+			node = node.trim();
+			if (!node.isEmpty()) {
+				list.add(node);
+			}
+		}
+		if (list.isEmpty()) {
+			throw new IllegalStateException("redis.nodes is required in " + mode + " mode");
+		}
+		return list;
+	}
+
+	public Set<HostAndPort> getHostAndPorts() {
+		Set<HostAndPort> set = new LinkedHashSet<>();
+		for (String node : getNodes()) {
+			set.add(HostAndPort.parseString(node));
+		}
+		return set;
+	}
+}
@@ -26,7 +26,15 @@ public class LogoutMessage extends Message{
 	}
 	
 	public LogoutMessage(String token, List<String> logoutUrls) {
+		this(token, logoutUrls, 0);
+	}
+	
+	/**
+	 * @param attempts 已经发送过的次数，重试时使用
+	 */
+	public LogoutMessage(String token, List<String> logoutUrls, int attempts) {
 		logoutMessage = new InnerMessage(token, logoutUrls);
+		logoutMessage.setAttempts(attempts);
 		refreshContent();
 	}
 	
@@ -38,6 +46,10 @@ public class LogoutMessage extends Message{
 		return logoutMessage.getLogoutUrls();
 	}
 	
+	public int getAttempts() {
+		return logoutMessage.getAttempts();
+	}
+	
 	public void setToken(String token) {
 		logoutMessage.setToken(token);
 		refreshContent();
@@ -58,6 +70,9 @@ public class LogoutMessage extends Message{
 		
 		private List<String> logoutUrls;
 		
+		/** 已经发送过的次数 */
+		private int attempts;
+		
 		public InnerMessage() {}
 		
 		public InnerMessage(String token, List<String> logoutUrls) {
@@ -80,5 +95,13 @@ public class LogoutMessage extends Message{
 		public void setLogoutUrls(List<String> logoutUrls) {
 			this.logoutUrls = logoutUrls;
 		}
+
+		public int getAttempts() {
+			return attempts;
+		}
+
+		public void setAttempts(int attempts) {
+			this.attempts = attempts;
+		}
 	}
 }
@@ -18,6 +18,12 @@ public class Message implements Serializable{
 	
 	private String content;
 	
+	/** 消息的创建时间，用于统计从发送到处理完成的延迟 */
+	private long createTime = System.currentTimeMillis();
+	
+	/** 消息在队列中的ID，由支持确认的队列在取出时设置，不参与序列化 */
+	private transient String messageId;
+	
 	public Message() {}
 
 	public Message(String content) {
@@ -31,5 +37,21 @@ public class Message implements Serializable{
 	public void setContent(String content) {
 		this.content = content;
 	}
+
+	public long getCreateTime() {
+		return createTime;
+	}
+
+	public void setCreateTime(long createTime) {
+		this.createTime = createTime;
+	}
+
+	public String getMessageId() {
+		return messageId;
+	}
+
+	public void setMessageId(String messageId) {
+		this.messageId = messageId;
+	}
 	
 }
@@ -1,5 +1,8 @@
 package com.nameof.mq.queue;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,4 +20,27 @@ public abstract class MessageQueue {
 	public abstract void push(Message message);
 	
 	public abstract Message pop();
+	
+	/**
+	 * 批量取出消息，没有消息时与{@link #pop()}一样等待一段时间，默认每次只取出一条
+	 * @param max 最多取出的消息数
+	 * @return 按入队顺序排列的消息，没有消息时返回空列表
+	 */
+	public List<Message> pop(int max) {
+		Message message = pop();
+		return message == null ? Collections.<Message>emptyList() : Collections.singletonList(message);
+	}
+	
+	/**
+	 * 确认消息已处理完成，之后不会再投递，默认什么也不做
+	 */
+	public void ack(Message message) {
+	}
+	
+	/**
+	 * 放弃处理已取出的消息，使其可以被重新投递，默认重新放入队列
+	 */
+	public void release(Message message) {
+		push(message);
+	}
 }
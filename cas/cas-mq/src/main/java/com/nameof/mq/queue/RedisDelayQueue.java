@@ -0,0 +1,85 @@
+package com.nameof.mq.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
+import com.nameof.common.utils.JsonUtils;
+import com.nameof.mq.message.Message;
+
+/**
+ * 基于redis sorted set实现的延迟队列，score为消息的到期时间（毫秒）.<br>
+ *
+ * 到期消息的读取和删除在同一个Lua脚本中执行，多个节点同时读取时每条消息只会被其中一个取出
+ * @author ChengPan
+ */
+public class RedisDelayQueue {
+
+	private static final String POLL_SCRIPT =
+			"local r = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+			+ "if #r > 0 then redis.call('ZREM', KEYS[1], unpack(r)) end "
+			+ "return r";
+
+	private final JedisTemplate jedisTemplate;
+
+	private final String queueName;
+
+	public RedisDelayQueue(JedisTemplate jedisTemplate, String queueName) {
+		this.jedisTemplate = jedisTemplate;
+		this.queueName = queueName;
+	}
+
+	/**
+	 * @param dueTime 到期时间，单位为毫秒
+	 */
+	public void schedule(final Message message, final long dueTime) {
+		jedisTemplate.execute(queueName, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.zadd(queueName, dueTime, JsonUtils.toJSONString(message));
+			}
+		});
+	}
+
+	/**
+	 * 取出并删除最多max条已到期的消息，按到期时间排列
+	 */
+	public List<Message> pollDue(final int max) {
+		Object result = jedisTemplate.execute(queueName, new JedisCallback<Object>() {
+			@Override
+			public Object doInJedis(Jedis jedis) {
+				return jedis.eval(POLL_SCRIPT, Collections.singletonList(queueName),
+						Arrays.asList(String.valueOf(System.currentTimeMillis()), String.valueOf(max)));
+			}
+		});
+		if (!(result instanceof List)) {
+			return Collections.emptyList();
+		}
+		List<?> values = (List<?>) result;
+		List<Message> messages = new ArrayList<>(values.size());
+		for (Object value : values) {
+			Message message = JsonUtils.toBean((String) value, Message.class);
+			if (message != null) {
+				messages.add(message);
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * 等待到期的消息数
+	 */
+	public long size() {
+		return jedisTemplate.execute(queueName, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.zcard(queueName);
+			}
+		});
+	}
+}
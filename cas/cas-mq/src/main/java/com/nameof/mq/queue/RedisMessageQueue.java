@@ -1,9 +1,16 @@
 package com.nameof.mq.queue;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
 import com.nameof.common.utils.JsonUtils;
-import com.nameof.common.utils.RedisUtil;
 import com.nameof.mq.message.Message;
 
 /**
@@ -13,21 +20,78 @@ import com.nameof.mq.message.Message;
  */
 public class RedisMessageQueue extends MessageQueue {
 
+	/** 阻塞获取消息的超时时间，超时后归还连接，使消费线程可以检查退出标志 */
+	private static final int POP_TIMEOUT_SECONDS = 1;
+	
+	private final JedisTemplate jedisTemplate;
+	
 	private final String queueName;
 	
-	public RedisMessageQueue(String queueName) {
+	public RedisMessageQueue(JedisTemplate jedisTemplate, String queueName) {
+		this.jedisTemplate = jedisTemplate;
 		this.queueName = queueName;
 	}
 	
 	@Override
 	public void push(Message message) {
-		RedisUtil.getJedis().lpush(queueName, JsonUtils.toJSONString(message));
+		final String json = JsonUtils.toJSONString(message);
+		jedisTemplate.execute(queueName, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.lpush(queueName, json);
+			}
+		});
 	}
 
 	@Override
 	public Message pop() {
 		//redis阻塞操作队列，获取成功返回2个元素，第一个是list的key，第二个是值
-		List<String> list = RedisUtil.getJedis().brpop(0, queueName);
+		List<String> list = jedisTemplate.execute(queueName, new JedisCallback<List<String>>() {
+			@Override
+			public List<String> doInJedis(Jedis jedis) {
+				return jedis.brpop(POP_TIMEOUT_SECONDS, queueName);
+			}
+		});
+		if (list == null || list.size() < 2) {
+			return null;
+		}
 		return JsonUtils.toBean(list.get(1), Message.class);
 	}
+
+	/**
+	 * 阻塞取出一条消息之后，在同一连接上通过事务中的LRANGE和LTRIM不阻塞地取出队尾其余的最多max-1条消息
+	 */
+	@Override
+	public List<Message> pop(final int max) {
+		List<String> values = jedisTemplate.execute(queueName, new JedisCallback<List<String>>() {
+			@Override
+			public List<String> doInJedis(Jedis jedis) {
+				List<String> popped = jedis.brpop(POP_TIMEOUT_SECONDS, queueName);
+				if (popped == null || popped.size() < 2) {
+					return Collections.emptyList();
+				}
+				List<String> values = new ArrayList<>(max);
+				values.add(popped.get(1));
+				if (max > 1) {
+					Transaction tx = jedis.multi();
+					Response<List<String>> rest = tx.lrange(queueName, -(max - 1), -1);
+					tx.ltrim(queueName, 0, -max);
+					tx.exec();
+					//队尾是最早入队的消息
+					List<String> tail = new ArrayList<>(rest.get());
+					Collections.reverse(tail);
+					values.addAll(tail);
+				}
+				return values;
+			}
+		});
+		List<Message> messages = new ArrayList<>(values.size());
+		for (String value : values) {
+			Message message = JsonUtils.toBean(value, Message.class);
+			if (message != null) {
+				messages.add(message);
+			}
+		}
+		return messages;
+	}
 }
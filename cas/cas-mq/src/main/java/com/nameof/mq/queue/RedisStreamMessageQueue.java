@@ -0,0 +1,319 @@
+package com.nameof.mq.queue;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import redis.clients.jedis.Jedis;
+
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
+import com.nameof.common.utils.JsonUtils;
+import com.nameof.mq.message.Message;
+
+/**
+ * 基于Redis Streams和消费者组实现的消息队列，需要Redis 6.2及以上版本.<br>
+ *
+ * 每个节点（进程）是消费者组中的一个消费者，消息只投递给其中一个节点，处理完成后{@link #ack(Message)}确认；
+ * 取出但未确认的消息保存在消费者组的待确认列表中，节点崩溃后由其他节点在消息空闲超过claimIdle之后
+ * 通过XAUTOCLAIM接管，重启或正常关闭时不需要重新放入队列.<br>
+ *
+ * 本节点已读取但尚未确认的消息（包括在调用方缓冲中等待处理的）每隔claimIdle/3通过XCLAIM JUSTID重置空闲时间，
+ * 等待处理的时间超过claimIdle也不会被其他节点接管；{@link #release(Message)}之后不再续期.<br>
+ *
+ * 写入时按maxLen近似裁剪stream；已被裁剪的待确认消息在接管时直接确认丢弃.
+ * 长期空闲且没有待确认消息的消费者（已退出的节点）在接管时从消费者组中删除.<br>
+ *
+ * Jedis 2.9没有stream命令，命令通过Lua脚本执行；脚本中不能阻塞，没有新消息时等待一段时间后再读取
+ * @author ChengPan
+ */
+public class RedisStreamMessageQueue extends MessageQueue implements Closeable {
+
+	private static final String FIELD = "m";
+
+	/** 没有消息时的等待时间 */
+	private static final long POLL_INTERVAL_MILLIS = 500;
+
+	/** 每次接管的最大消息数 */
+	private static final int CLAIM_COUNT = 32;
+
+	/** 空闲超过该时间且没有待确认消息的消费者会被删除 */
+	private static final long DEAD_CONSUMER_IDLE_MILLIS = 60 * 60 * 1000;
+
+	private static final String PUSH_SCRIPT =
+			"return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], '*', '" + FIELD + "', ARGV[2])";
+
+	/** 消费者组不存在（首次使用或stream被删除）时从头创建 */
+	private static final String READ_SCRIPT =
+			"local function read() "
+			+ "return redis.pcall('XREADGROUP', 'GROUP', ARGV[1], ARGV[2], 'COUNT', ARGV[3], 'STREAMS', KEYS[1], '>') end "
+			+ "local r = read() "
+			+ "if type(r) == 'table' and r.err then "
+			+ "  redis.call('XGROUP', 'CREATE', KEYS[1], ARGV[1], '0', 'MKSTREAM') "
+			+ "  r = read() "
+			+ "  if type(r) == 'table' and r.err then return redis.error_reply(r.err) end "
+			+ "end "
+			+ "local out = {} "
+			+ "if not r then return out end "
+			+ "for _, e in ipairs(r[1][2]) do "
+			+ "  out[#out + 1] = e[1] "
+			+ "  out[#out + 1] = e[2][2] "
+			+ "end "
+			+ "return out";
+
+	/**
+	 * 返回下一次的游标和接管的消息，已被裁剪的消息直接确认；顺便删除已退出的消费者.
+	 * stream或消费者组尚未创建时（首次启动）不接管
+	 */
+	private static final String CLAIM_SCRIPT =
+			"local r = redis.pcall('XAUTOCLAIM', KEYS[1], ARGV[1], ARGV[2], ARGV[3], ARGV[4], 'COUNT', ARGV[5]) "
+			+ "if type(r) == 'table' and r.err then return {'0-0'} end "
+			+ "local out = {r[1]} "
+			+ "for _, e in ipairs(r[2]) do "
+			+ "  if type(e) == 'table' then "
+			+ "    if e[2] then "
+			+ "      out[#out + 1] = e[1] "
+			+ "      out[#out + 1] = e[2][2] "
+			+ "    else "
+			+ "      redis.call('XACK', KEYS[1], ARGV[1], e[1]) "
+			+ "    end "
+			+ "  end "
+			+ "end "
+			+ "local consumers = redis.pcall('XINFO', 'CONSUMERS', KEYS[1], ARGV[1]) "
+			+ "if type(consumers) == 'table' and not consumers.err then "
+			+ "  for _, c in ipairs(consumers) do "
+			+ "    local info = {} "
+			+ "    for i = 1, #c, 2 do info[c[i]] = c[i + 1] end "
+			+ "    if info['pending'] == 0 and info['idle'] > tonumber(ARGV[6]) and info['name'] ~= ARGV[2] then "
+			+ "      redis.call('XGROUP', 'DELCONSUMER', KEYS[1], ARGV[1], info['name']) "
+			+ "    end "
+			+ "  end "
+			+ "end "
+			+ "return out";
+
+	private static final String ACK_SCRIPT = "return redis.call('XACK', KEYS[1], ARGV[1], ARGV[2])";
+
+	/** 每次续期的最大消息数 */
+	private static final int RENEW_COUNT = 100;
+
+	/** 只续期仍属于本消费者的消息，已被其他节点接管的不再取回 */
+	private static final String RENEW_SCRIPT =
+			"local n = 0 "
+			+ "for i = 3, #ARGV do "
+			+ "  local p = redis.call('XPENDING', KEYS[1], ARGV[1], ARGV[i], ARGV[i], 1) "
+			+ "  if p[1] and p[1][2] == ARGV[2] then "
+			+ "    redis.call('XCLAIM', KEYS[1], ARGV[1], ARGV[2], 0, ARGV[i], 'JUSTID') "
+			+ "    n = n + 1 "
+			+ "  end "
+			+ "end "
+			+ "return n";
+
+	private final JedisTemplate jedisTemplate;
+
+	private final String streamName;
+
+	private final String group;
+
+	private final String consumer = ManagementFactory.getRuntimeMXBean().getName();
+
+	private final long maxLen;
+
+	private final long claimIdleMillis;
+
+	/** 已读取尚未交给调用方的消息，只由调用pop的线程访问 */
+	private final Deque<Message> fetched = new ArrayDeque<>();
+
+	private String claimCursor = "0-0";
+
+	private long lastClaimTime;
+
+	/** 已读取尚未确认或交还的消息ID */
+	private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final ScheduledExecutorService renewer;
+
+	/**
+	 * @param streamName stream的key
+	 * @param group 消费者组，所有节点使用同一个组
+	 * @param maxLen stream保留的最大消息数（近似）
+	 * @param claimIdleSeconds 待确认消息空闲超过该时间后可以被其他节点接管，需要大于处理一条消息的最长时间
+	 */
+	public RedisStreamMessageQueue(JedisTemplate jedisTemplate, String streamName, String group,
+			long maxLen, int claimIdleSeconds) {
+		this.jedisTemplate = jedisTemplate;
+		this.streamName = streamName;
+		this.group = group;
+		this.maxLen = maxLen;
+		this.claimIdleMillis = claimIdleSeconds * 1000L;
+		this.renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "logout-stream-renewer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long interval = Math.max(claimIdleMillis / 3, 1);
+		renewer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					renew();
+				} catch (RuntimeException e) {
+					logger.error("failed to renew pending logout messages", e);
+				}
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void push(Message message) {
+		eval(PUSH_SCRIPT, String.valueOf(maxLen), JsonUtils.toJSONString(message));
+	}
+
+	@Override
+	public Message pop() {
+		List<Message> messages = pop(1);
+		return messages.isEmpty() ? null : messages.get(0);
+	}
+
+	/**
+	 * 依次返回已读取的消息、接管的消息和新消息（XREADGROUP COUNT max），都没有时等待一段时间后返回空列表
+	 */
+	@Override
+	public List<Message> pop(int max) {
+		if (fetched.isEmpty()) {
+			long now = System.currentTimeMillis();
+			if (now - lastClaimTime >= claimIdleMillis) {
+				lastClaimTime = now;
+				claim();
+			}
+			if (fetched.isEmpty()) {
+				addAll(eval(READ_SCRIPT, group, consumer, String.valueOf(max)), 0);
+			}
+			if (fetched.isEmpty()) {
+				pause();
+				return Collections.emptyList();
+			}
+		}
+		List<Message> messages = new ArrayList<>(Math.min(max, fetched.size()));
+		while (messages.size() < max && !fetched.isEmpty()) {
+			messages.add(fetched.poll());
+		}
+		return messages;
+	}
+
+	/**
+	 * 接管其他节点空闲过久的待确认消息，游标回到起点之前每次继续上一次的位置
+	 */
+	private void claim() {
+		List<?> result = eval(CLAIM_SCRIPT, group, consumer, String.valueOf(claimIdleMillis), claimCursor,
+				String.valueOf(CLAIM_COUNT), String.valueOf(DEAD_CONSUMER_IDLE_MILLIS));
+		claimCursor = (String) result.get(0);
+		int before = fetched.size();
+		addAll(result, 1);
+		if (fetched.size() > before) {
+			logger.info("claimed {} pending logout messages from stale consumers", fetched.size() - before);
+		}
+	}
+
+	@Override
+	public void ack(Message message) {
+		if (message.getMessageId() != null) {
+			eval(ACK_SCRIPT, group, message.getMessageId());
+			inFlight.remove(message.getMessageId());
+		}
+	}
+
+	/**
+	 * 未确认的消息保留在待确认列表中，停止续期后由接管机制重新投递，不需要重新放入队列
+	 */
+	@Override
+	public void release(Message message) {
+		if (message.getMessageId() != null) {
+			inFlight.remove(message.getMessageId());
+		}
+	}
+
+	/**
+	 * 重置本节点未确认消息的空闲时间
+	 */
+	void renew() {
+		List<String> args = new ArrayList<>(RENEW_COUNT + 2);
+		for (String id : inFlight) {
+			if (args.isEmpty()) {
+				args.add(group);
+				args.add(consumer);
+			}
+			args.add(id);
+			if (args.size() == RENEW_COUNT + 2) {
+				eval(RENEW_SCRIPT, args.toArray(new String[args.size()]));
+				args.clear();
+			}
+		}
+		if (!args.isEmpty()) {
+			eval(RENEW_SCRIPT, args.toArray(new String[args.size()]));
+		}
+	}
+
+	/**
+	 * 停止续期
+	 */
+	@Override
+	public void close() {
+		renewer.shutdownNow();
+	}
+
+	/**
+	 * 无法解析的消息直接确认，避免被反复接管
+	 */
+	private void addAll(List<?> idAndContents, int from) {
+		for (int i = from; i + 1 < idAndContents.size(); i += 2) {
+			String id = (String) idAndContents.get(i);
+			String content = (String) idAndContents.get(i + 1);
+			Message message = null;
+			try {
+				message = JsonUtils.toBean(content, Message.class);
+			} catch (RuntimeException e) {
+				logger.warn("failed to parse logout message {}", id, e);
+			}
+			if (message == null) {
+				logger.warn("discard unparseable logout message {}: {}", id, content);
+				eval(ACK_SCRIPT, group, id);
+				continue;
+			}
+			message.setMessageId(id);
+			inFlight.add(id);
+			fetched.add(message);
+		}
+	}
+
+	private List<?> eval(final String script, final String... args) {
+		Object result = jedisTemplate.execute(streamName, new JedisCallback<Object>() {
+			@Override
+			public Object doInJedis(Jedis jedis) {
+				return jedis.eval(script, Collections.singletonList(streamName), Arrays.asList(args));
+			}
+		});
+		return result instanceof List ? (List<?>) result : Collections.emptyList();
+	}
+
+	private void pause() {
+		try {
+			Thread.sleep(POLL_INTERVAL_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.nameof.mq.receiver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * 按客户端站点主机熔断.<br>
+ *
+ * 同一主机连续失败failureThreshold次后熔断openSeconds秒，期间发往该主机的请求不再发送，直接作为失败处理，
+ * 避免已宕机的站点占用连接和处理线程；熔断时间过后只放行一个试探请求，成功则恢复，失败则再次熔断
+ * @author ChengPan
+ */
+@ManagedResource(objectName = "com.nameof:type=LogoutCircuitBreaker,name=cas", description = "logout host circuit breaker")
+public class HostCircuitBreaker {
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	private final ConcurrentMap<String, HostState> hosts = new ConcurrentHashMap<>();
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @param failureThreshold 熔断前的连续失败次数
+	 * @param openSeconds 熔断时间，单位为秒
+	 */
+	public HostCircuitBreaker(int failureThreshold, int openSeconds) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openSeconds * 1000L;
+	}
+
+	/**
+	 * 是否可以向该主机发送请求，返回true时调用方需要在请求完成后调用{@link #onSuccess}或{@link #onFailure}
+	 */
+	public boolean allowRequest(String host) {
+		HostState state = hosts.get(host);
+		if (state == null || state.allowRequest()) {
+			return true;
+		}
+		rejectedCount.incrementAndGet();
+		return false;
+	}
+
+	public void onSuccess(String host) {
+		HostState state = hosts.get(host);
+		if (state != null) {
+			state.onSuccess();
+		}
+	}
+
+	public void onFailure(String host) {
+		HostState state = hosts.get(host);
+		if (state == null) {
+			HostState created = new HostState();
+			state = hosts.putIfAbsent(host, created);
+			if (state == null) {
+				state = created;
+			}
+		}
+		state.onFailure();
+	}
+
+	/**
+	 * 熔断的剩余时间，未熔断或熔断时间已过、可以发送试探请求时返回0；
+	 * 试探请求尚未完成时返回完整的熔断时间，试探失败时将再次熔断这么久
+	 */
+	public long getRemainingOpenMillis(String host) {
+		HostState state = hosts.get(host);
+		return state == null ? 0 : state.remainingOpenMillis();
+	}
+
+	/**
+	 * 当前处于熔断状态的主机
+	 */
+	@ManagedAttribute(description = "hosts whose circuit is open")
+	public String[] getOpenHosts() {
+		List<String> open = new ArrayList<>();
+		for (Map.Entry<String, HostState> entry : hosts.entrySet()) {
+			if (entry.getValue().isOpen()) {
+				open.add(entry.getKey());
+			}
+		}
+		return open.toArray(new String[open.size()]);
+	}
+
+	/**
+	 * 因熔断未发送的请求数
+	 */
+	@ManagedAttribute(description = "number of requests not sent because the circuit was open")
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	private class HostState {
+
+		private int failures;
+
+		/** 熔断结束时间，为0表示未熔断 */
+		private long openUntil;
+
+		/** 熔断时间过后是否已放行试探请求 */
+		private boolean trialInFlight;
+
+		synchronized boolean allowRequest() {
+			if (openUntil == 0) {
+				return true;
+			}
+			if (System.currentTimeMillis() < openUntil || trialInFlight) {
+				return false;
+			}
+			trialInFlight = true;
+			return true;
+		}
+
+		synchronized void onSuccess() {
+			failures = 0;
+			openUntil = 0;
+			trialInFlight = false;
+		}
+
+		synchronized void onFailure() {
+			failures++;
+			if (trialInFlight || failures >= failureThreshold) {
+				openUntil = System.currentTimeMillis() + openMillis;
+			}
+			trialInFlight = false;
+		}
+
+		synchronized long remainingOpenMillis() {
+			if (openUntil == 0) {
+				return 0;
+			}
+			long remaining = openUntil - System.currentTimeMillis();
+			if (remaining > 0) {
+				return remaining;
+			}
+			return trialInFlight ? openMillis : 0;
+		}
+
+		synchronized boolean isOpen() {
+			return openUntil != 0;
+		}
+	}
+}
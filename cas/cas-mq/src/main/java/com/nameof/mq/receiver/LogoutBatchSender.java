@@ -0,0 +1,265 @@
+package com.nameof.mq.receiver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.FormBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nameof.mq.message.LogoutMessage;
+
+/**
+ * 按注销地址合并多个用户的注销请求.<br>
+ *
+ * 客户端站点在单个令牌的注销响应中带有{@link #BATCH_HEADER}响应头时，表示其支持批量注销，
+ * 之后发往该地址的令牌在windowMillis毫秒内或累积到maxTokens个时合并为一个POST请求，
+ * 请求体中包含多个token参数；不支持的站点仍然逐个发送.<br>
+ *
+ * 每个批量请求的响应也必须带有{@link #BATCH_HEADER}，否则认为站点已不支持批量注销（例如回滚到旧版本后只处理了第一个令牌），
+ * 该地址恢复逐个发送，批次中的令牌也逐个重新发送.<br>
+ *
+ * 合并的令牌在发送之前只保存在本节点内存中，批量请求失败时每个令牌交给{@link LogoutFailureHandler}分别重试
+ * @author ChengPan
+ */
+public class LogoutBatchSender implements Closeable {
+
+	/** 客户端站点支持批量注销时在响应中返回的响应头 */
+	public static final String BATCH_HEADER = "X-Logout-Batch";
+
+	private static final Logger logger = LoggerFactory.getLogger(LogoutBatchSender.class);
+
+	private final OkHttpClient client;
+
+	private final HostCircuitBreaker circuitBreaker;
+
+	private final LogoutFailureHandler failureHandler;
+
+	private final long windowMillis;
+
+	private final int maxTokens;
+
+	/** 已确认支持批量注销的地址 */
+	private final Set<String> batchUrls = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** 各地址正在累积的批次 */
+	private final Map<String, Batch> pending = new HashMap<>();
+
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * @param failureHandler 可以为null
+	 * @param windowMillis 合并的时间窗口，单位为毫秒
+	 * @param maxTokens 一个请求中最多的令牌数
+	 */
+	public LogoutBatchSender(OkHttpClient client, HostCircuitBreaker circuitBreaker,
+			LogoutFailureHandler failureHandler, long windowMillis, int maxTokens) {
+		this.client = client;
+		this.circuitBreaker = circuitBreaker;
+		this.failureHandler = failureHandler;
+		this.windowMillis = windowMillis;
+		this.maxTokens = maxTokens;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "logout-batch-sender");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * 根据单个令牌注销的响应记录地址是否支持批量注销
+	 */
+	void onSingleResponse(String logoutUrl, Response response) {
+		if (response.header(BATCH_HEADER) != null) {
+			batchUrls.add(logoutUrl);
+		}
+		else {
+			batchUrls.remove(logoutUrl);
+		}
+	}
+
+	boolean isBatchSupported(String logoutUrl) {
+		return batchUrls.contains(logoutUrl);
+	}
+
+	/**
+	 * 加入地址正在累积的批次，调用方需要已通过{@link HostCircuitBreaker#allowRequest}检查
+	 * @param host 地址的主机，用于熔断统计
+	 */
+	void add(final String logoutUrl, String host, LogoutMessage message) {
+		Batch full = null;
+		synchronized (pending) {
+			Batch batch = pending.get(logoutUrl);
+			if (batch == null) {
+				final Batch created = new Batch(host);
+				pending.put(logoutUrl, created);
+				batch = created;
+				timer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush(logoutUrl, created);
+					}
+				}, windowMillis, TimeUnit.MILLISECONDS);
+			}
+			batch.messages.add(message);
+			if (batch.messages.size() >= maxTokens) {
+				pending.remove(logoutUrl);
+				full = batch;
+			}
+		}
+		if (full != null) {
+			send(logoutUrl, full.host, full.messages);
+		}
+	}
+
+	/**
+	 * 时间窗口结束时发送，已因数量达到上限而发送的批次跳过
+	 */
+	private void flush(String logoutUrl, Batch batch) {
+		synchronized (pending) {
+			if (pending.get(logoutUrl) != batch) {
+				return;
+			}
+			pending.remove(logoutUrl);
+		}
+		send(logoutUrl, batch.host, batch.messages);
+	}
+
+	private void send(final String logoutUrl, final String host, final List<LogoutMessage> batch) {
+		FormBody.Builder body = new FormBody.Builder();
+		for (LogoutMessage message : batch) {
+			body.add("token", message.getToken());
+		}
+		logger.debug("{}：批量注销{}个令牌", logoutUrl, batch.size());
+		client.newCall(new Request.Builder().url(logoutUrl).post(body.build()).build()).enqueue(new Callback() {
+
+			@Override
+			public void onFailure(Call call, IOException e) {
+				circuitBreaker.onFailure(host);
+				logger.warn("{}：批量注销{}个令牌失败", new Object[]{logoutUrl, batch.size(), e});
+				fail(logoutUrl, batch);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				try {
+					if (response.code() >= 500) {
+						circuitBreaker.onFailure(host);
+					}
+					else {
+						circuitBreaker.onSuccess(host);
+					}
+					boolean batchSupported = response.header(BATCH_HEADER) != null;
+					if (!batchSupported) {
+						batchUrls.remove(logoutUrl);
+					}
+					if (!response.isSuccessful()) {
+						logger.warn("{}：批量注销{}个令牌失败，响应码{}", new Object[]{logoutUrl, batch.size(), response.code()});
+						fail(logoutUrl, batch);
+					}
+					else if (!batchSupported) {
+						logger.warn("{}：批量注销响应缺少{}，{}个令牌改为逐个发送", new Object[]{logoutUrl, BATCH_HEADER, batch.size()});
+						for (LogoutMessage message : batch) {
+							sendSingle(logoutUrl, host, message);
+						}
+					}
+				} finally {
+					response.close();
+				}
+			}
+		});
+	}
+
+	private void sendSingle(final String logoutUrl, final String host, final LogoutMessage message) {
+		RequestBody body = new FormBody.Builder().add("token", message.getToken()).build();
+		client.newCall(new Request.Builder().url(logoutUrl).post(body).build()).enqueue(new Callback() {
+
+			@Override
+			public void onFailure(Call call, IOException e) {
+				circuitBreaker.onFailure(host);
+				logger.warn("{}：{}注销失败", new Object[]{logoutUrl, message.getToken(), e});
+				fail(logoutUrl, Collections.singletonList(message));
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				try {
+					if (response.code() >= 500) {
+						circuitBreaker.onFailure(host);
+					}
+					else {
+						circuitBreaker.onSuccess(host);
+					}
+					onSingleResponse(logoutUrl, response);
+					if (!response.isSuccessful()) {
+						fail(logoutUrl, Collections.singletonList(message));
+					}
+				} finally {
+					response.close();
+				}
+			}
+		});
+	}
+
+	private void fail(String logoutUrl, List<LogoutMessage> batch) {
+		if (failureHandler == null) {
+			return;
+		}
+		List<String> failedUrls = Collections.singletonList(logoutUrl);
+		for (LogoutMessage message : batch) {
+			try {
+				failureHandler.handleFailure(message, failedUrls);
+			} catch (RuntimeException e) {
+				logger.error("{}：{}注销失败处理异常", new Object[]{message.getToken(), logoutUrl, e});
+			}
+		}
+	}
+
+	/**
+	 * 立即发送所有正在累积的批次
+	 */
+	@Override
+	public void close() {
+		timer.shutdownNow();
+		Map<String, Batch> batches;
+		synchronized (pending) {
+			batches = new HashMap<>(pending);
+			pending.clear();
+		}
+		for (Map.Entry<String, Batch> entry : batches.entrySet()) {
+			send(entry.getKey(), entry.getValue().host, entry.getValue().messages);
+		}
+	}
+
+	private static class Batch {
+
+		private final String host;
+
+		private final List<LogoutMessage> messages = new ArrayList<>();
+
+		Batch(String host) {
+			this.host = host;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package com.nameof.mq.receiver;
+
+import java.util.List;
+
+import com.nameof.mq.message.LogoutMessage;
+
+/**
+ * 处理{@link LogoutMessageReceiver}发送失败的注销地址，如延迟重试或放入死信
+ * @author ChengPan
+ */
+public interface LogoutFailureHandler {
+
+	/**
+	 * @param message 本次处理的注销消息，{@link LogoutMessage#getAttempts()}不包括本次发送
+	 * @param failedUrls 失败或超时的地址
+	 */
+	void handleFailure(LogoutMessage message, List<String> failedUrls);
+
+	/**
+	 * 地址所在主机处于熔断状态而未发送，不计入发送次数
+	 * @param retryAfterMillis 熔断的剩余时间，单位为毫秒
+	 */
+	void handleRejected(LogoutMessage message, String url, long retryAfterMillis);
+}
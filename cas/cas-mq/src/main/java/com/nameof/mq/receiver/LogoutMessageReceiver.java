@@ -1,27 +1,200 @@
 package com.nameof.mq.receiver;
 
-import com.nameof.common.utils.HttpRequest;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
 import com.nameof.mq.message.LogoutMessage;
 import com.nameof.mq.message.Message;
 
 /**
- * 注销消息接收者
+ * 注销消息接收者.<br>
+ *
+ * 一条消息中的所有注销地址通过{@link OkHttpClient}异步并行发送，连接按主机复用（keep-alive，
+ * HTTPS且平台支持ALPN时使用HTTP/2），每个主机的并发请求数由客户端的Dispatcher限制，见
+ * {@link com.nameof.mq.support.LogoutReceiverConfig}.<br>
+ *
+ * 所有地址都完成或超过总时限时返回，超时未完成的请求被取消.
+ * 失败和超时的地址交给{@link LogoutFailureHandler#handleFailure}；发往处于熔断状态的主机的地址不发送，
+ * 交给{@link LogoutFailureHandler#handleRejected}在熔断结束后重新发送，不计入发送次数.
+ * 没有设置LogoutFailureHandler时存在失败或未发送的地址则抛出异常.<br>
+ *
+ * 设置了{@link LogoutBatchSender}时，已确认支持批量注销的地址不在这里发送，交给其与其他用户的令牌合并后发送
  * 
  * @author ChengPan
  */
-public class LogoutMessageReceiver extends Receiver{
+public class LogoutMessageReceiver extends Receiver implements Closeable {
+	
+	private final OkHttpClient client;
+	
+	/** 一条消息所有地址的总时限 */
+	private final long deadlineMillis;
+	
+	private final HostCircuitBreaker circuitBreaker;
+	
+	private final LogoutFailureHandler failureHandler;
+	
+	private final LogoutBatchSender batchSender;
+	
+	/**
+	 * @param deadlineMillis 一条消息所有地址的总时限，单位为毫秒
+	 * @param failureHandler 可以为null
+	 * @param batchSender 可以为null，为null时不合并
+	 */
+	public LogoutMessageReceiver(OkHttpClient client, long deadlineMillis, HostCircuitBreaker circuitBreaker,
+			LogoutFailureHandler failureHandler, LogoutBatchSender batchSender) {
+		this.client = client;
+		this.deadlineMillis = deadlineMillis;
+		this.circuitBreaker = circuitBreaker;
+		this.failureHandler = failureHandler;
+		this.batchSender = batchSender;
+	}
 	
 	@Override
 	public void handleMessage(Message message) {
-		if (message != null) {
-			LogoutMessage logoutMsg = new LogoutMessage(message);
-			if (logoutMsg != null && logoutMsg.getLogoutUrls() != null) {
-				for (String logoutUrl : logoutMsg.getLogoutUrls()) {
-					logger.debug("{}：{}注销", logoutMsg.getToken(), logoutUrl);
-					HttpRequest.sendPost(logoutUrl, "token=" + logoutMsg.getToken(), null);
+		if (message == null) {
+			return;
+		}
+		LogoutMessage logoutMsg = new LogoutMessage(message);
+		final String token = logoutMsg.getToken();
+		List<String> logoutUrls = logoutMsg.getLogoutUrls();
+		if (logoutUrls == null || logoutUrls.isEmpty()) {
+			return;
+		}
+		
+		final CountDownLatch latch = new CountDownLatch(logoutUrls.size());
+		//按下标记录每个地址是否已完成（成功或无需重试），未完成的地址交给failureHandler
+		final AtomicIntegerArray done = new AtomicIntegerArray(logoutUrls.size());
+		List<Call> calls = new ArrayList<>(logoutUrls.size());
+		//因熔断未发送的地址及熔断的剩余时间
+		Map<String, Long> rejected = new LinkedHashMap<>();
+		RequestBody body = new FormBody.Builder().add("token", token).build();
+		for (int i = 0; i < logoutUrls.size(); i++) {
+			final String logoutUrl = logoutUrls.get(i);
+			final int index = i;
+			logger.debug("{}：{}注销", token, logoutUrl);
+			HttpUrl url = HttpUrl.parse(logoutUrl);
+			if (url == null) {
+				logger.warn("{}：无效的注销地址{}", token, logoutUrl);
+				done.set(index, 1);
+				latch.countDown();
+				continue;
+			}
+			final String host = url.host() + ":" + url.port();
+			if (!circuitBreaker.allowRequest(host)) {
+				logger.debug("{}：{}已熔断，暂不发送", token, host);
+				if (failureHandler != null) {
+					rejected.put(logoutUrl, circuitBreaker.getRemainingOpenMillis(host));
+					done.set(index, 1);
 				}
+				latch.countDown();
+				continue;
 			}
+			if (batchSender != null && batchSender.isBatchSupported(logoutUrl)) {
+				//失败由batchSender交给failureHandler；消息在批次发送之前即处理完成，因此批量注销不能与STREAM队列同时使用
+				batchSender.add(logoutUrl, host, logoutMsg);
+				done.set(index, 1);
+				latch.countDown();
+				continue;
+			}
+			Call call = client.newCall(new Request.Builder().url(url).post(body).build());
+			calls.add(call);
+			call.enqueue(new Callback() {
+
+				@Override
+				public void onFailure(Call call, IOException e) {
+					//包括超过总时限被取消的请求
+					circuitBreaker.onFailure(host);
+					if (!call.isCanceled()) {
+						logger.warn("{}：{}注销失败", new Object[]{token, logoutUrl, e});
+					}
+					latch.countDown();
+				}
+
+				@Override
+				public void onResponse(Call call, Response response) {
+					try {
+						//4xx说明站点可用，不计入熔断
+						if (response.code() >= 500) {
+							circuitBreaker.onFailure(host);
+						}
+						else {
+							circuitBreaker.onSuccess(host);
+						}
+						if (batchSender != null) {
+							batchSender.onSingleResponse(logoutUrl, response);
+						}
+						if (response.isSuccessful()) {
+							done.set(index, 1);
+						}
+						else {
+							logger.warn("{}：{}注销失败，响应码{}", new Object[]{token, logoutUrl, response.code()});
+						}
+					} finally {
+						response.close();
+						latch.countDown();
+					}
+				}
+			});
+		}
+		
+		boolean completed;
+		try {
+			completed = latch.await(deadlineMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			completed = false;
+		}
+		if (!completed) {
+			for (Call call : calls) {
+				call.cancel();
+			}
+		}
+		List<String> failedUrls = new ArrayList<>();
+		for (int i = 0; i < logoutUrls.size(); i++) {
+			if (done.get(i) == 0) {
+				failedUrls.add(logoutUrls.get(i));
+			}
+		}
+		for (Map.Entry<String, Long> entry : rejected.entrySet()) {
+			failureHandler.handleRejected(logoutMsg, entry.getKey(), entry.getValue());
+		}
+		if (failedUrls.isEmpty()) {
+			return;
+		}
+		if (failureHandler != null) {
+			failureHandler.handleFailure(logoutMsg, failedUrls);
+			return;
+		}
+		throw new IllegalStateException(String.format("%s：%d/%d个站点注销失败%s", token, failedUrls.size(),
+				logoutUrls.size(), completed ? "" : "（超过" + deadlineMillis + "ms未完成）"));
+	}
+	
+	/**
+	 * 发送正在合并的批次，停止发送线程，关闭空闲连接
+	 */
+	@Override
+	public void close() {
+		if (batchSender != null) {
+			batchSender.close();
 		}
+		client.dispatcher().executorService().shutdown();
+		client.connectionPool().evictAll();
 	}
 
 }
@@ -1,9 +1,10 @@
 package com.nameof.mq.sender;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.nameof.mq.message.Message;
-import com.nameof.mq.queue.RedisMessageQueue;
+import com.nameof.mq.queue.MessageQueue;
 
 /**
  * 注销消息发送者
@@ -13,9 +14,14 @@ import com.nameof.mq.queue.RedisMessageQueue;
 @Component
 public class LogoutMessageSender extends Sender {
 	
-	private static final String LOGOUT_QUEUE_NAME = "logoutQueue";
+	public static final String LOGOUT_QUEUE_NAME = "logoutQueue";
 
-	private static RedisMessageQueue queue = new RedisMessageQueue(LOGOUT_QUEUE_NAME);
+	private final MessageQueue queue;
+	
+	@Autowired
+	public LogoutMessageSender(MessageQueue logoutMessageQueue) {
+		this.queue = logoutMessageQueue;
+	}
 	
 	@Override
 	public void sendMessage(Message message) {
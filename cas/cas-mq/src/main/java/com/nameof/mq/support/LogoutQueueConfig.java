@@ -0,0 +1,49 @@
+package com.nameof.mq.support;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.nameof.common.enums.MessageQueueTypeEnum;
+import com.nameof.common.redis.JedisTemplate;
+import com.nameof.mq.queue.MessageQueue;
+import com.nameof.mq.queue.RedisMessageQueue;
+import com.nameof.mq.queue.RedisStreamMessageQueue;
+import com.nameof.mq.sender.LogoutMessageSender;
+
+/**
+ * 注销消息队列，由{@link com.nameof.mq.sender.LogoutMessageSender}和{@link LogoutReceiverDispatcher}共享.<br>
+ *
+ * LIST使用redis list，取出的消息只在本节点内存中缓冲，进程崩溃时丢失；
+ * STREAM使用Redis Streams的消费者组，消息处理完成后才确认，崩溃节点未确认的消息由其他节点接管
+ * @author ChengPan
+ */
+@Configuration
+public class LogoutQueueConfig {
+
+	public static final String LOGOUT_STREAM_NAME = "logoutStream";
+
+	public static final String LOGOUT_GROUP_NAME = "cas-logout";
+
+	@Autowired
+	private JedisTemplate jedisTemplate;
+
+	@Value("${logout.queue.type:LIST}")
+	private MessageQueueTypeEnum type;
+
+	@Value("${logout.queue.stream.maxLen:100000}")
+	private long streamMaxLen;
+
+	@Value("${logout.queue.stream.claimIdle:60}")
+	private int claimIdle;
+
+	@Bean
+	public MessageQueue logoutMessageQueue() {
+		if (type == MessageQueueTypeEnum.STREAM) {
+			return new RedisStreamMessageQueue(jedisTemplate, LOGOUT_STREAM_NAME, LOGOUT_GROUP_NAME,
+					streamMaxLen, claimIdle);
+		}
+		return new RedisMessageQueue(jedisTemplate, LogoutMessageSender.LOGOUT_QUEUE_NAME);
+	}
+}
@@ -0,0 +1,103 @@
+package com.nameof.mq.support;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.nameof.common.enums.MessageQueueTypeEnum;
+import com.nameof.mq.receiver.HostCircuitBreaker;
+import com.nameof.mq.receiver.LogoutBatchSender;
+import com.nameof.mq.receiver.LogoutMessageReceiver;
+
+/**
+ * 注销消息接收者，由{@link LogoutReceiverDispatcher}的所有处理线程共享同一个HTTP客户端.<br>
+ *
+ * 同时发送的注销请求总数不超过maxRequests，对同一主机不超过maxRequestsPerHost，超出的请求在客户端排队；
+ * 空闲连接保留keepAlive秒，最多保留maxIdleConnections个.<br>
+ *
+ * 同一主机连续失败logout.breaker.failureThreshold次后熔断，失败的地址由{@link LogoutRetryScheduler}延迟重试.<br>
+ *
+ * logout.batch.window大于0时，发往支持批量注销的客户端站点的令牌在该时间窗口内合并发送，见{@link LogoutBatchSender}；
+ * 令牌加入批次时消息即处理完成，STREAM队列会在批次发送之前确认消息，崩溃时批次中的令牌丢失，因此两者不能同时配置
+ * @author ChengPan
+ */
+@Configuration
+public class LogoutReceiverConfig {
+
+	@Value("${logout.http.maxRequests:64}")
+	private int maxRequests;
+
+	@Value("${logout.http.maxRequestsPerHost:8}")
+	private int maxRequestsPerHost;
+
+	@Value("${logout.http.maxIdleConnections:32}")
+	private int maxIdleConnections;
+
+	@Value("${logout.http.keepAlive:300}")
+	private int keepAlive;
+
+	@Value("${logout.http.connectTimeout:3}")
+	private int connectTimeout;
+
+	@Value("${logout.http.readTimeout:5}")
+	private int readTimeout;
+
+	@Value("${logout.http.deadline:10}")
+	private int deadline;
+
+	@Value("${logout.breaker.failureThreshold:5}")
+	private int failureThreshold;
+
+	@Value("${logout.breaker.openSeconds:30}")
+	private int openSeconds;
+
+	@Value("${logout.batch.window:0}")
+	private int batchWindow;
+
+	@Value("${logout.batch.maxTokens:100}")
+	private int batchMaxTokens;
+
+	@Value("${logout.queue.type:LIST}")
+	private MessageQueueTypeEnum queueType;
+
+	@Autowired
+	private LogoutRetryScheduler logoutRetryScheduler;
+
+	@Bean
+	public HostCircuitBreaker logoutCircuitBreaker() {
+		return new HostCircuitBreaker(failureThreshold, openSeconds);
+	}
+
+	@Bean
+	public LogoutMessageReceiver logoutMessageReceiver() {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(maxRequests);
+		dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+		OkHttpClient client = new OkHttpClient.Builder()
+				.dispatcher(dispatcher)
+				.connectionPool(new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.SECONDS))
+				.connectTimeout(connectTimeout, TimeUnit.SECONDS)
+				.readTimeout(readTimeout, TimeUnit.SECONDS)
+				.writeTimeout(readTimeout, TimeUnit.SECONDS)
+				.callTimeout(deadline, TimeUnit.SECONDS)
+				.build();
+		LogoutBatchSender batchSender = null;
+		if (batchWindow > 0) {
+			if (queueType == MessageQueueTypeEnum.STREAM) {
+				throw new IllegalStateException("logout.batch.window cannot be used with logout.queue.type=STREAM: "
+						+ "batched tokens would be acknowledged before they are sent");
+			}
+			batchSender = new LogoutBatchSender(client, logoutCircuitBreaker(), logoutRetryScheduler,
+					batchWindow, batchMaxTokens);
+		}
+		return new LogoutMessageReceiver(client, TimeUnit.SECONDS.toMillis(deadline),
+				logoutCircuitBreaker(), logoutRetryScheduler, batchSender);
+	}
+}
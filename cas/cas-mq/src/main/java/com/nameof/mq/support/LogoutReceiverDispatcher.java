@@ -1,45 +1,72 @@
 package com.nameof.mq.support;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
-import com.nameof.common.utils.RedisUtil;
 import com.nameof.mq.message.Message;
 import com.nameof.mq.queue.MessageQueue;
-import com.nameof.mq.queue.RedisMessageQueue;
-import com.nameof.mq.receiver.LogoutMessageReceiver;
 import com.nameof.mq.receiver.Receiver;
-import com.nameof.mq.sender.LogoutMessageSender;
-import com.nameof.mq.sender.Sender;
 
 /**
  * 注销消息调度器，开启一个{@link cas.mq.support.LogoutReceiverDispatcher.LogoutMessageHandler}线程
- * 处理注销消息
+ * 批量获取注销消息，交给可伸缩的线程池处理，处理的吞吐量和延迟通过JMX暴露
  * 
  * @author ChengPan
  */
 //FIXME 此处存在过度设计嫌疑
 @Component
+@ManagedResource(objectName = "com.nameof:type=LogoutDispatcher,name=cas", description = "logout message dispatcher")
 public class LogoutReceiverDispatcher{
 	
+	/** 停止时等待已获取的消息处理完成的最长时间 */
+	private static final long STOP_TIMEOUT_SECONDS = 10;
+	
 	/** 处理注销消息的线程实例 */
-	private static LogoutMessageHandler workerThread = new LogoutMessageHandler();;
+	private LogoutMessageHandler workerThread;
+	
+	/** 注销消息队列，见{@link LogoutQueueConfig} */
+	@Autowired
+	private MessageQueue logoutMessageQueue;
+	
+	/** 注销消息接收者，见{@link LogoutReceiverConfig} */
+	@Autowired
+	private Receiver logoutMessageReceiver;
 	
-	private static final Logger logger = LoggerFactory.getLogger(LogoutReceiverDispatcher.class);
+	/** 每次从队列中最多取出的消息数 */
+	@Value("${logout.dispatcher.batchSize:32}")
+	private int batchSize;
 	
-	private LogoutReceiverDispatcher() {}
+	/** 处理消息的常驻线程数 */
+	@Value("${logout.dispatcher.minThreads:2}")
+	private int minThreads;
 	
-	private static final LogoutReceiverDispatcher INSTANCE = new LogoutReceiverDispatcher();
+	/** 缓冲队列已满时最多扩充到的线程数 */
+	@Value("${logout.dispatcher.maxThreads:8}")
+	private int maxThreads;
+	
+	/** 等待处理的消息数上限，线程数已达上限且缓冲队列已满时停止获取消息 */
+	@Value("${logout.dispatcher.bufferSize:256}")
+	private int bufferSize;
+	
+	private final DispatchStats stats = new DispatchStats();
 
 	/** 任务状态 */
 	public static final int WORKER_STATE_INIT = 0;
@@ -53,11 +80,13 @@ public class LogoutReceiverDispatcher{
 	        AtomicIntegerFieldUpdater.newUpdater(LogoutReceiverDispatcher.class, "workerState");
 	
 	@PostConstruct
-	public static void start() {
+	public void start() {
 		
-		switch (WORKER_STATE_UPDATER.get(INSTANCE)) {
+		switch (WORKER_STATE_UPDATER.get(this)) {
 	        case WORKER_STATE_INIT:
-	            if (WORKER_STATE_UPDATER.compareAndSet(INSTANCE, WORKER_STATE_INIT, WORKER_STATE_STARTED)) {
+	            if (WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_INIT, WORKER_STATE_STARTED)) {
+	            	workerThread = new LogoutMessageHandler(logoutMessageQueue, logoutMessageReceiver,
+	            			batchSize, newExecutor(), stats);
 	                workerThread.start();
 	            }
 	            break;
@@ -70,75 +99,173 @@ public class LogoutReceiverDispatcher{
 		}
 	}
 	
+	/**
+	 * 常驻minThreads个线程，缓冲队列已满时临时扩充到maxThreads个线程，
+	 * 仍然处理不过来时由{@link BlockingPutPolicy}阻塞获取消息的线程
+	 */
+	private ThreadPoolExecutor newExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(minThreads, Math.max(minThreads, maxThreads),
+				60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(bufferSize), new ThreadFactory() {
+
+					private final AtomicInteger index = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "logout-dispatcher-" + index.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new BlockingPutPolicy());
+		stats.executor = executor;
+		return executor;
+	}
+	
+	/**
+	 * 停止获取消息，等待已获取的消息处理完成，超时未处理的消息交还给队列
+	 */
 	@PreDestroy
-	public static void stop() {
-		if (WORKER_STATE_UPDATER.compareAndSet(INSTANCE, WORKER_STATE_STARTED, WORKER_STATE_SHUTDOWN)) {
+	public void stop() {
+		if (WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_STARTED, WORKER_STATE_SHUTDOWN)) {
 			workerThread.setHandleMsg(false);
+			try {
+				workerThread.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS + 5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 	
+	@ManagedAttribute(description = "number of messages taken from the queue")
+	public long getReceivedCount() {
+		return stats.received.get();
+	}
+	
+	@ManagedAttribute(description = "number of messages handled")
+	public long getHandledCount() {
+		return stats.handled.get();
+	}
+	
+	@ManagedAttribute(description = "number of messages failed to handle")
+	public long getFailedCount() {
+		return stats.failed.get();
+	}
+	
+	@ManagedAttribute(description = "number of messages waiting for a worker thread")
+	public int getBacklog() {
+		ThreadPoolExecutor executor = stats.executor;
+		return executor == null ? 0 : executor.getQueue().size();
+	}
+	
+	@ManagedAttribute(description = "number of worker threads")
+	public int getPoolSize() {
+		ThreadPoolExecutor executor = stats.executor;
+		return executor == null ? 0 : executor.getPoolSize();
+	}
+	
+	@ManagedAttribute(description = "number of worker threads handling messages")
+	public int getActiveCount() {
+		ThreadPoolExecutor executor = stats.executor;
+		return executor == null ? 0 : executor.getActiveCount();
+	}
+	
+	@ManagedAttribute(description = "milliseconds from sending to handled of the last message")
+	public long getLastLagMillis() {
+		return stats.lastLag;
+	}
+	
+	@ManagedAttribute(description = "mean milliseconds from sending to handled")
+	public long getMeanLagMillis() {
+		long handled = stats.handled.get() + stats.failed.get();
+		return handled == 0 ? 0 : stats.totalLag.get() / handled;
+	}
+	
+	@ManagedAttribute(description = "max milliseconds from sending to handled")
+	public long getMaxLagMillis() {
+		return stats.maxLag.get();
+	}
+	
 	/**
 	 * 默认情况下{@link cas.mq.support.LogoutReceiverDispatcher.LogoutMessageHandler}会持续
-	 * 从缓存中获取注销消息，并存入msgBuffer缓冲队列。同时开启{@link cas.mq.support.LogoutReceiverDispatcher.LogoutMessageHandler#INIT_POOL_SIZE}
-	 * 个线程对缓存队列中的注销消息进行处理。
+	 * 从缓存中批量获取注销消息，每条消息作为一个{@link cas.mq.support.LogoutReceiverDispatcher.DispatchRuner}
+	 * 交给线程池处理，线程池的缓冲队列即msgBuffer。
 	 * @author ChengPan
 	 */
 	private static class LogoutMessageHandler extends Thread{
 
-		/** 处理注销消息的线程数量 */
-		private static final int INIT_POOL_SIZE = 2;
-		
-		private ExecutorService executor = Executors.newFixedThreadPool(INIT_POOL_SIZE);
+		/** 获取消息失败后的重试间隔 */
+		private static final long RETRY_INTERVAL = 1000;
 		
 		/** 线程运行标志 */
 		private volatile boolean handleMsg = true;
 
-		/** redis远程队列名 */
-		private static final String LOGOUT_QUEUE_NAME = "logoutQueue";
+		/** redis远程队列，线程退出时{@link #executor}未处理完成的Message交还给队列重新投递，做到消息可靠 */
+		private final MessageQueue queue;
 		
-		/** redis远程队列 */
-		private static final MessageQueue queue = new RedisMessageQueue(LOGOUT_QUEUE_NAME);
+		private final Receiver receiver;
 		
-		/** 用于线程退出时，将{@link #executor}未处理完成的Message，重发返到消息队列中，做到消息可靠 */
-		private static Sender logoutMessageSender = new LogoutMessageSender();
+		private final int batchSize;
 		
-		/** 消息缓冲队列 */
-		private static final BlockingQueue<Message> msgBuffer = new LinkedBlockingQueue<>();
+		private final ThreadPoolExecutor executor;
+		
+		private final DispatchStats stats;
 		
 		private static final Logger logger = LoggerFactory.getLogger(LogoutMessageHandler.class);
 		
+		LogoutMessageHandler(MessageQueue queue, Receiver receiver, int batchSize,
+				ThreadPoolExecutor executor, DispatchStats stats) {
+			super("logout-message-handler");
+			this.queue = queue;
+			this.receiver = receiver;
+			this.batchSize = batchSize;
+			this.executor = executor;
+			this.stats = stats;
+		}
+		
 		@Override
 		public void run() {
 			
 			logger.debug("handle message thread start");
 			
-			for(int i = 0; i < INIT_POOL_SIZE; i++) {
-				executor.execute(new DispatchRuner(msgBuffer));
-			}
-			
-			while (handleMsg) {
+			while (handleMsg && !isInterrupted()) {
+				List<Message> messages;
 				try {
-					Message message = queue.pop();
-					if (message != null) {
-						msgBuffer.put(message);
-					}
-				} catch (InterruptedException e) {
+					messages = queue.pop(batchSize);
+				} catch (RuntimeException e) {
+					//redis连接异常等，稍后重试，避免线程退出
 					logger.error("注销消息获取异常", e);
+					pause();
+					continue;
+				}
+				stats.received.addAndGet(messages.size());
+				for (Message message : messages) {
+					executor.execute(new DispatchRuner(message, queue, receiver, stats));
 				}
 			}
 			
-			executor.shutdownNow();
-
-			//重发消息到消息队列中
-			for (Message message : msgBuffer) {
-				logoutMessageSender.sendMessage(message);
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					logger.warn("logout messages not handled in {} seconds", STOP_TIMEOUT_SECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
 			
-			//释放Jedis资源
-			RedisUtil.returnResource();
+			//交还未处理的消息，list重新放入队列，stream留在待确认列表中等待接管
+			for (Runnable runner : executor.shutdownNow()) {
+				((DispatchRuner) runner).release();
+			}
 			
 			logger.debug("handle message thread quit");
 		}
+		
+		private void pause() {
+			try {
+				Thread.sleep(RETRY_INTERVAL);
+			} catch (InterruptedException e) {
+				handleMsg = false;
+			}
+		}
 
 		public boolean isHandleMsg() {
 			return this.handleMsg;
@@ -155,38 +282,110 @@ public class LogoutReceiverDispatcher{
 	}
 
 	/**
-	 * {@link cas.mq.support.LogoutReceiverDispatcher.DispatchRuner} 的任务是从缓冲队列中获取注销消息
-	 * 并使用{@link cas.mq.receiver.LogoutMessageReceiver}实例对消息进行处理
+	 * {@link cas.mq.support.LogoutReceiverDispatcher.DispatchRuner} 的任务是
+	 * 使用{@link cas.mq.receiver.LogoutMessageReceiver}实例处理一条注销消息，处理完成后向队列确认
 	 * @author ChengPan
 	 */
 	private static class DispatchRuner implements Runnable{
 
-		/** 消息缓冲队列 */
-		private BlockingQueue<Message> msgBuffer;
-		
-		/** 注销消息接收者 */
-		private Receiver logoutMessageReceiver = new LogoutMessageReceiver();
-		
 		private static final Logger logger = LoggerFactory.getLogger(DispatchRuner.class);
 
-		public DispatchRuner(BlockingQueue<Message> msgBuffer) {
-			this.msgBuffer = msgBuffer;
+		private final Message message;
+		
+		/** 消息处理完成后向其确认 */
+		private final MessageQueue queue;
+		
+		/** 注销消息接收者，所有任务共享 */
+		private final Receiver receiver;
+		
+		private final DispatchStats stats;
+		
+		DispatchRuner(Message message, MessageQueue queue, Receiver receiver, DispatchStats stats) {
+			this.message = message;
+			this.queue = queue;
+			this.receiver = receiver;
+			this.stats = stats;
 		}
 		
 		@Override
 		public void run() {
-			logger.debug("线程 {} 开始处理消息", Thread.currentThread().getId());
-			while (true) {
-				//处理异常，健壮执行
+			//处理异常，健壮执行，异常不会导致线程池中的线程退出
+			try {
+				receiver.handleMessage(message);
+				stats.handled.incrementAndGet();
+			} catch (RuntimeException e) {
+				stats.failed.incrementAndGet();
+				logger.error("注销消息处理异常", e);
+			}
+			stats.recordLag(System.currentTimeMillis() - message.getCreateTime());
+			try {
+				//处理失败也确认，避免同一条消息被反复接管重试
+				queue.ack(message);
+			} catch (RuntimeException e) {
+				logger.error("注销消息确认异常", e);
+			}
+		}
+		
+		/**
+		 * 放弃处理，交还给队列
+		 */
+		void release() {
+			try {
+				queue.release(message);
+			} catch (RuntimeException e) {
+				logger.error("注销消息交还异常", e);
+			}
+		}
+		
+	}
+	
+	/**
+	 * 线程数已达上限且缓冲队列已满时阻塞获取消息的线程，直到缓冲队列有空位，形成背压；
+	 * 线程池已关闭时交还消息
+	 */
+	private static class BlockingPutPolicy implements RejectedExecutionHandler {
+
+		@Override
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+			if (!executor.isShutdown()) {
 				try {
-					Message msg = msgBuffer.take();
-					logoutMessageReceiver.handleMessage(msg);
+					executor.getQueue().put(r);
+					return;
 				} catch (InterruptedException e) {
-					logger.error("注销消息处理异常", e);
+					Thread.currentThread().interrupt();
 				}
 			}
+			((DispatchRuner) r).release();
 		}
+	}
+	
+	/**
+	 * 处理统计
+	 */
+	private static class DispatchStats {
+		
+		private final AtomicLong received = new AtomicLong();
+		
+		private final AtomicLong handled = new AtomicLong();
+		
+		private final AtomicLong failed = new AtomicLong();
+		
+		private final AtomicLong totalLag = new AtomicLong();
 		
+		private final AtomicLong maxLag = new AtomicLong();
+		
+		private volatile long lastLag;
+		
+		private volatile ThreadPoolExecutor executor;
+		
+		void recordLag(long lag) {
+			lastLag = lag;
+			totalLag.addAndGet(lag);
+			long max = maxLag.get();
+			while (lag > max && !maxLag.compareAndSet(max, lag)) {
+				max = maxLag.get();
+			}
+		}
 	}
 	
 }
@@ -0,0 +1,256 @@
+package com.nameof.mq.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import redis.clients.jedis.Jedis;
+
+import com.nameof.common.redis.JedisCallback;
+import com.nameof.common.redis.JedisTemplate;
+import com.nameof.common.utils.JsonUtils;
+import com.nameof.mq.message.LogoutMessage;
+import com.nameof.mq.message.Message;
+import com.nameof.mq.queue.MessageQueue;
+import com.nameof.mq.queue.RedisDelayQueue;
+import com.nameof.mq.receiver.LogoutFailureHandler;
+
+/**
+ * 注销地址的失败重试.<br>
+ *
+ * 失败的地址逐个作为单独的注销消息放入{@link RedisDelayQueue}，第n次失败后等待
+ * min(baseDelay * 2^(n-1), maxDelay)秒，并在其一半到全部之间随机取值，避免同时失败的地址同时重试；
+ * 后台线程定时把到期的消息放回注销消息队列.<br>
+ *
+ * 发送maxAttempts次仍失败的地址放入死信列表，运维人员可以通过JMX（com.nameof:type=LogoutRetry,name=cas）
+ * 查看死信并重新投递
+ * @author ChengPan
+ */
+@Component
+@ManagedResource(objectName = "com.nameof:type=LogoutRetry,name=cas", description = "logout retry and dead letters")
+public class LogoutRetryScheduler implements LogoutFailureHandler {
+
+	public static final String LOGOUT_DELAY_QUEUE_NAME = "logoutDelayQueue";
+
+	public static final String LOGOUT_DEAD_LETTER_NAME = "logoutDeadLetter";
+
+	/** 检查到期消息的间隔 */
+	private static final long POLL_INTERVAL_MILLIS = 1000;
+
+	/** 每次取出的到期消息数 */
+	private static final int POLL_COUNT = 100;
+
+	private static final Logger logger = LoggerFactory.getLogger(LogoutRetryScheduler.class);
+
+	@Autowired
+	private JedisTemplate jedisTemplate;
+
+	@Autowired
+	private MessageQueue logoutMessageQueue;
+
+	@Value("${logout.retry.maxAttempts:6}")
+	private int maxAttempts;
+
+	@Value("${logout.retry.baseDelay:5}")
+	private int baseDelay;
+
+	@Value("${logout.retry.maxDelay:600}")
+	private int maxDelay;
+
+	@Value("${logout.retry.deadLetterMax:10000}")
+	private int deadLetterMax;
+
+	private RedisDelayQueue delayQueue;
+
+	private ScheduledExecutorService scheduler;
+
+	private final Random random = new Random();
+
+	private final AtomicLong scheduledCount = new AtomicLong();
+
+	private final AtomicLong deadLetterCount = new AtomicLong();
+
+	@PostConstruct
+	public void start() {
+		delayQueue = new RedisDelayQueue(jedisTemplate, LOGOUT_DELAY_QUEUE_NAME);
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "logout-retry-scheduler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					moveDue();
+				} catch (RuntimeException e) {
+					logger.error("注销重试消息投递异常", e);
+				}
+			}
+		}, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+
+	@Override
+	public void handleFailure(LogoutMessage message, List<String> failedUrls) {
+		int attempts = message.getAttempts() + 1;
+		for (String url : failedUrls) {
+			LogoutMessage retry = new LogoutMessage(message.getToken(), Collections.singletonList(url), attempts);
+			if (attempts >= maxAttempts) {
+				logger.warn("{}：{}注销{}次失败，放入死信", new Object[]{message.getToken(), url, attempts});
+				deadLetter(retry);
+				continue;
+			}
+			schedule(retry, backoffMillis(attempts));
+			logger.debug("{}：{}第{}次注销失败", new Object[]{message.getToken(), url, attempts});
+		}
+	}
+
+	/**
+	 * 熔断结束后重新发送，发送次数不变；加上最多baseDelay/2秒的随机延迟，避免熔断结束时同时发送
+	 */
+	@Override
+	public void handleRejected(LogoutMessage message, String url, long retryAfterMillis) {
+		LogoutMessage retry = new LogoutMessage(message.getToken(), Collections.singletonList(url),
+				message.getAttempts());
+		schedule(retry, retryAfterMillis + (long) (random.nextDouble() * baseDelay * 500L));
+	}
+
+	private void schedule(LogoutMessage retry, long delayMillis) {
+		long dueTime = System.currentTimeMillis() + delayMillis;
+		//延迟统计从到期时开始
+		retry.setCreateTime(dueTime);
+		delayQueue.schedule(retry, dueTime);
+		scheduledCount.incrementAndGet();
+	}
+
+	/**
+	 * 第attempts次失败后的等待时间
+	 */
+	private long backoffMillis(int attempts) {
+		long delay = Math.min(baseDelay * 1000L << Math.min(attempts - 1, 30), maxDelay * 1000L);
+		return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+	}
+
+	private void moveDue() {
+		List<Message> due;
+		do {
+			due = delayQueue.pollDue(POLL_COUNT);
+			for (Message message : due) {
+				logoutMessageQueue.push(message);
+			}
+		} while (due.size() == POLL_COUNT);
+	}
+
+	private void deadLetter(final Message message) {
+		jedisTemplate.execute(LOGOUT_DEAD_LETTER_NAME, new JedisCallback<Void>() {
+			@Override
+			public Void doInJedis(Jedis jedis) {
+				jedis.lpush(LOGOUT_DEAD_LETTER_NAME, JsonUtils.toJSONString(message));
+				jedis.ltrim(LOGOUT_DEAD_LETTER_NAME, 0, deadLetterMax - 1);
+				return null;
+			}
+		});
+		deadLetterCount.incrementAndGet();
+	}
+
+	/**
+	 * 最早放入死信的count条消息，每条为“令牌 地址 发送次数”
+	 */
+	@ManagedOperation(description = "list the oldest dead letters")
+	public String[] listDeadLetters(final int count) {
+		List<String> values = jedisTemplate.execute(LOGOUT_DEAD_LETTER_NAME, new JedisCallback<List<String>>() {
+			@Override
+			public List<String> doInJedis(Jedis jedis) {
+				return jedis.lrange(LOGOUT_DEAD_LETTER_NAME, -count, -1);
+			}
+		});
+		List<String> letters = new ArrayList<>(values.size());
+		for (int i = values.size() - 1; i >= 0; i--) {
+			Message message = JsonUtils.toBean(values.get(i), Message.class);
+			if (message != null) {
+				LogoutMessage logoutMessage = new LogoutMessage(message);
+				letters.add(logoutMessage.getToken() + " " + logoutMessage.getLogoutUrls() + " "
+						+ logoutMessage.getAttempts());
+			}
+		}
+		return letters.toArray(new String[letters.size()]);
+	}
+
+	/**
+	 * 把最早放入死信的count条消息重新放入注销消息队列，发送次数清零
+	 * @return 重新投递的消息数
+	 */
+	@ManagedOperation(description = "move the oldest dead letters back to the logout queue")
+	public int replayDeadLetters(int count) {
+		int replayed = 0;
+		while (replayed < count) {
+			String value = jedisTemplate.execute(LOGOUT_DEAD_LETTER_NAME, new JedisCallback<String>() {
+				@Override
+				public String doInJedis(Jedis jedis) {
+					return jedis.rpop(LOGOUT_DEAD_LETTER_NAME);
+				}
+			});
+			if (value == null) {
+				break;
+			}
+			Message message = JsonUtils.toBean(value, Message.class);
+			if (message != null) {
+				LogoutMessage logoutMessage = new LogoutMessage(message);
+				logoutMessageQueue.push(new LogoutMessage(logoutMessage.getToken(), logoutMessage.getLogoutUrls()));
+				replayed++;
+			}
+		}
+		return replayed;
+	}
+
+	@ManagedAttribute(description = "number of dead letters")
+	public long getDeadLetterSize() {
+		return jedisTemplate.execute(LOGOUT_DEAD_LETTER_NAME, new JedisCallback<Long>() {
+			@Override
+			public Long doInJedis(Jedis jedis) {
+				return jedis.llen(LOGOUT_DEAD_LETTER_NAME);
+			}
+		});
+	}
+
+	@ManagedAttribute(description = "number of retries waiting to be due")
+	public long getDelayedSize() {
+		return delayQueue.size();
+	}
+
+	@ManagedAttribute(description = "number of retries scheduled by this node")
+	public long getScheduledCount() {
+		return scheduledCount.get();
+	}
+
+	@ManagedAttribute(description = "number of messages moved to dead letters by this node")
+	public long getDeadLetterCount() {
+		return deadLetterCount.get();
+	}
+}
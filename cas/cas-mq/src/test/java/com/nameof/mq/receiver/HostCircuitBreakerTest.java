@@ -0,0 +1,99 @@
+package com.nameof.mq.receiver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * {@link HostCircuitBreaker}的状态变化：连续失败后熔断、熔断时间过后只放行一个试探请求、
+ * 试探成功恢复，失败再次熔断
+ * @author ChengPan
+ */
+public class HostCircuitBreakerTest {
+
+	private static final String HOST = "app.example.com";
+
+	private final HostCircuitBreaker circuitBreaker = new HostCircuitBreaker(3, 1);
+
+	@Test
+	public void staysClosedBelowTheThreshold() {
+		circuitBreaker.onFailure(HOST);
+		circuitBreaker.onFailure(HOST);
+
+		assertTrue(circuitBreaker.allowRequest(HOST));
+		assertEquals(0, circuitBreaker.getRemainingOpenMillis(HOST));
+		assertEquals(0, circuitBreaker.getOpenHosts().length);
+	}
+
+	@Test
+	public void successResetsTheFailureCount() {
+		circuitBreaker.onFailure(HOST);
+		circuitBreaker.onFailure(HOST);
+		circuitBreaker.onSuccess(HOST);
+		circuitBreaker.onFailure(HOST);
+		circuitBreaker.onFailure(HOST);
+
+		assertTrue(circuitBreaker.allowRequest(HOST));
+	}
+
+	@Test
+	public void opensAfterConsecutiveFailures() {
+		open();
+
+		assertFalse(circuitBreaker.allowRequest(HOST));
+		assertFalse(circuitBreaker.allowRequest(HOST));
+		assertEquals(2, circuitBreaker.getRejectedCount());
+		assertArrayEquals(new String[] { HOST }, circuitBreaker.getOpenHosts());
+		long remaining = circuitBreaker.getRemainingOpenMillis(HOST);
+		assertTrue(remaining > 0 && remaining <= 1000);
+		//其他主机不受影响
+		assertTrue(circuitBreaker.allowRequest("other.example.com"));
+	}
+
+	@Test
+	public void letsOneTrialThroughAfterTheOpenTime() throws InterruptedException {
+		open();
+		Thread.sleep(1100);
+		assertEquals(0, circuitBreaker.getRemainingOpenMillis(HOST));
+
+		assertTrue(circuitBreaker.allowRequest(HOST));
+		assertFalse(circuitBreaker.allowRequest(HOST));
+		//试探请求完成之前仍需要等待
+		assertEquals(1000, circuitBreaker.getRemainingOpenMillis(HOST));
+	}
+
+	@Test
+	public void closesWhenTheTrialSucceeds() throws InterruptedException {
+		open();
+		Thread.sleep(1100);
+		circuitBreaker.allowRequest(HOST);
+		circuitBreaker.onSuccess(HOST);
+
+		assertTrue(circuitBreaker.allowRequest(HOST));
+		assertTrue(circuitBreaker.allowRequest(HOST));
+		assertEquals(0, circuitBreaker.getOpenHosts().length);
+		assertEquals(0, circuitBreaker.getRemainingOpenMillis(HOST));
+	}
+
+	@Test
+	public void reopensWhenTheTrialFails() throws InterruptedException {
+		open();
+		Thread.sleep(1100);
+		circuitBreaker.allowRequest(HOST);
+		circuitBreaker.onFailure(HOST);
+
+		assertFalse(circuitBreaker.allowRequest(HOST));
+		assertTrue(circuitBreaker.getRemainingOpenMillis(HOST) > 0);
+		assertArrayEquals(new String[] { HOST }, circuitBreaker.getOpenHosts());
+	}
+
+	private void open() {
+		for (int i = 0; i < 3; i++) {
+			assertTrue(circuitBreaker.allowRequest(HOST));
+			circuitBreaker.onFailure(HOST);
+		}
+	}
+}
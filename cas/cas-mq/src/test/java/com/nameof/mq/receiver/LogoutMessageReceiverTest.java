@@ -0,0 +1,249 @@
+package com.nameof.mq.receiver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nameof.mq.message.LogoutMessage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 使用本地的桩HTTP服务器测试{@link LogoutMessageReceiver}的并行发送、每主机并发限制、总时限、熔断和批量注销
+ * @author ChengPan
+ */
+public class LogoutMessageReceiverTest {
+
+	/** 桩服务器处理每个请求的时间 */
+	private static final long HANDLE_MILLIS = 300;
+
+	private HttpServer server;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger concurrent = new AtomicInteger();
+
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+	/** 桩服务器逐个收到的令牌，批量请求记为多个令牌以逗号连接 */
+	private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+	private LogoutMessageReceiver receiver;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/logout", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respondAfter(exchange, HANDLE_MILLIS);
+			}
+		});
+		server.createContext("/error", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+			}
+		});
+		server.createContext("/downgraded", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				//只在第一个请求中声明支持批量注销，模拟之后回滚到旧版本的站点
+				String tokens = tokens(exchange.getRequestBody());
+				boolean first;
+				synchronized (received) {
+					first = received.isEmpty();
+					received.add(tokens);
+				}
+				if (first) {
+					exchange.getResponseHeaders().add(LogoutBatchSender.BATCH_HEADER, "1");
+				}
+				//先记录再计数，等待计数的测试随后读取received时能看到该请求
+				requests.incrementAndGet();
+				exchange.sendResponseHeaders(200, -1);
+				exchange.close();
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respondAfter(exchange, 5000);
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void stop() {
+		if (receiver != null) {
+			receiver.close();
+		}
+		server.stop(0);
+	}
+
+	@Test
+	public void sendsAllUrlsOfAMessageInParallel() {
+		receiver = newReceiver(16, 2000);
+		long start = System.currentTimeMillis();
+		receiver.handleMessage(new LogoutMessage("token", urls("/logout", 4)));
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertEquals(4, requests.get());
+		assertTrue("urls were sent one after another: " + elapsed + "ms", elapsed < HANDLE_MILLIS * 3);
+		assertTrue(maxConcurrent.get() > 1);
+	}
+
+	@Test
+	public void limitsConcurrentRequestsPerHost() {
+		receiver = newReceiver(2, 5000);
+		receiver.handleMessage(new LogoutMessage("token", urls("/logout", 6)));
+
+		assertEquals(6, requests.get());
+		assertEquals(2, maxConcurrent.get());
+	}
+
+	@Test
+	public void cancelsUnfinishedRequestsAtTheDeadline() {
+		receiver = newReceiver(16, 500);
+		List<String> urls = urls("/logout", 1);
+		urls.addAll(urls("/slow", 1));
+		long start = System.currentTimeMillis();
+		try {
+			receiver.handleMessage(new LogoutMessage("token", urls));
+			fail("the slow url should fail");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("1/2"));
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue("did not return at the deadline: " + elapsed + "ms", elapsed < 2000);
+	}
+
+	@Test
+	public void doesNotSendOrCountAttemptsWhileTheCircuitIsOpen() {
+		final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+		final List<Long> rejected = Collections.synchronizedList(new ArrayList<Long>());
+		receiver = new LogoutMessageReceiver(new OkHttpClient(), 2000, new HostCircuitBreaker(1, 30),
+				new LogoutFailureHandler() {
+					@Override
+					public void handleFailure(LogoutMessage message, List<String> failedUrls) {
+						failed.addAll(failedUrls);
+					}
+
+					@Override
+					public void handleRejected(LogoutMessage message, String url, long retryAfterMillis) {
+						rejected.add(retryAfterMillis);
+					}
+				}, null);
+		receiver.handleMessage(new LogoutMessage("token1", urls("/error", 1)));
+		receiver.handleMessage(new LogoutMessage("token2", urls("/error", 1)));
+
+		assertEquals(1, requests.get());
+		assertEquals(1, failed.size());
+		assertEquals(1, rejected.size());
+		assertTrue(rejected.get(0) > 25000);
+	}
+
+	@Test
+	public void resendsSinglyWhenABatchResponseLacksTheHeader() throws InterruptedException {
+		OkHttpClient client = new OkHttpClient();
+		HostCircuitBreaker circuitBreaker = new HostCircuitBreaker(100, 1);
+		LogoutBatchSender batchSender = new LogoutBatchSender(client, circuitBreaker, null, 100, 10);
+		receiver = new LogoutMessageReceiver(client, 2000, circuitBreaker, null, batchSender);
+		for (int i = 1; i <= 3; i++) {
+			receiver.handleMessage(new LogoutMessage("token" + i, urls("/downgraded", 1)));
+		}
+		waitForRequests(4);
+		receiver.handleMessage(new LogoutMessage("token4", urls("/downgraded", 1)));
+
+		assertEquals(5, requests.get());
+		assertEquals("token1", received.get(0));
+		assertEquals("token2,token3", received.get(1));
+		assertTrue(received.subList(2, 4).containsAll(Arrays.asList("token2", "token3")));
+		assertEquals("token4", received.get(4));
+		assertFalse(batchSender.isBatchSupported(urls("/downgraded", 1).get(0)));
+	}
+
+	private void waitForRequests(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 2000;
+		while (requests.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+	}
+
+	private static String tokens(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			out.write(buffer, 0, n);
+		}
+		StringBuilder tokens = new StringBuilder();
+		for (String pair : out.toString("UTF-8").split("&")) {
+			if (tokens.length() > 0) {
+				tokens.append(',');
+			}
+			tokens.append(URLDecoder.decode(pair.substring(pair.indexOf('=') + 1), "UTF-8"));
+		}
+		return tokens.toString();
+	}
+
+	private LogoutMessageReceiver newReceiver(int maxRequestsPerHost, long deadlineMillis) {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+		OkHttpClient client = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+		return new LogoutMessageReceiver(client, deadlineMillis, new HostCircuitBreaker(100, 1), null, null);
+	}
+
+	private List<String> urls(String path, int count) {
+		List<String> urls = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			urls.add("http://127.0.0.1:" + server.getAddress().getPort() + path + "?i=" + i);
+		}
+		return urls;
+	}
+
+	private void respondAfter(HttpExchange exchange, long millis) throws IOException {
+		requests.incrementAndGet();
+		int current = concurrent.incrementAndGet();
+		while (true) {
+			int max = maxConcurrent.get();
+			if (current <= max || maxConcurrent.compareAndSet(max, current)) {
+				break;
+			}
+		}
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			concurrent.decrementAndGet();
+		}
+		exchange.sendResponseHeaders(200, -1);
+		exchange.close();
+	}
+}
@@ -1,36 +1,133 @@
 package com.nameof.web.custom.component.factory;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
-import org.springframework.beans.BeansException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.VersionedCacheDao;
+import com.nameof.cache.affinity.AffinityCacheDao;
+import com.nameof.cache.writebehind.WriteBehindCacheDao;
+import com.nameof.common.enums.ConflictPolicyEnum;
+import com.nameof.web.custom.component.session.BufferedCacheHttpSession;
+import com.nameof.web.custom.component.session.DefaultCacheHttpSession;
 import com.nameof.web.custom.component.session.HttpSessionWrapper;
+import com.nameof.web.custom.component.session.LazyCacheHttpSession;
+import com.nameof.web.custom.component.session.TouchPolicy;
 
 /**
- * 实例化自定义HttpSession
+ * 实例化自定义HttpSession.<br>
+ *
+ * 会话在每个请求中创建，直接调用构造方法并注入{@link CacheDao}单例，
+ * 不再经过ApplicationContext查找prototype bean（构造方法解析、依赖注入和@PostConstruct处理）
  * @author ChengPan
  */
 @Component
-public class CacheHttpSessionFactory implements ApplicationContextAware {
+public class CacheHttpSessionFactory {
 
-	private ApplicationContext applicationCtx;
+	private static final Logger logger = LoggerFactory.getLogger(CacheHttpSessionFactory.class);
 
+	private static final String BUFFERED = "bufferedCacheHttpSession";
+
+	private static final String DEFAULT = "defaultCacheHttpSession";
+
+	/** bufferedCacheHttpSession或defaultCacheHttpSession */
 	@Value("${session.bean.name}")
 	private String sessionBeanName;
 	
+	/** spring-session下没有CacheDao */
+	@Autowired(required = false)
+	private CacheDao cacheDao;
+	
+	@Value("${session.writeBehind.enable:false}")
+	private boolean writeBehindEnable;
+	
+	@Value("${session.writeBehind.queueSize:10000}")
+	private int writeBehindQueueSize;
+	
+	@Value("${session.writeBehind.threads:2}")
+	private int writeBehindThreads;
+	
+	@Value("${session.writeBehind.batchSize:64}")
+	private int writeBehindBatchSize;
+	
+	/** bufferedCacheHttpSession并发提交的冲突策略 */
+	@Value("${session.buffered.conflictPolicy:NONE}")
+	private ConflictPolicyEnum conflictPolicy;
+	
+	/** 未修改的会话刷新访问时间和过期时间的粒度，秒数或maxInactiveInterval的百分比 */
+	@Value("${session.touchGranularity:0}")
+	private String touchGranularity;
+	
+	private TouchPolicy touchPolicy;
+	
+	private boolean buffered;
+	
+	private WriteBehindCacheDao writeBehind;
+	
+	@PostConstruct
+	public void init() {
+		if (!BUFFERED.equals(sessionBeanName) && !DEFAULT.equals(sessionBeanName)) {
+			throw new IllegalArgumentException("unknown session.bean.name: " + sessionBeanName);
+		}
+		buffered = BUFFERED.equals(sessionBeanName);
+		touchPolicy = TouchPolicy.parse(touchGranularity);
+		if (cacheDao instanceof AffinityCacheDao) {
+			//会话粘滞模式下读写本地副本，异步写入已在本地副本与远程缓存之间完成
+			writeBehindEnable = false;
+		}
+		if (writeBehindEnable && cacheDao != null) {
+			//会话的读写都经过同一个装饰器，本节点总能读到尚未写入缓存的提交
+			writeBehind = new WriteBehindCacheDao(cacheDao, writeBehindQueueSize, writeBehindThreads, writeBehindBatchSize);
+			cacheDao = writeBehind;
+		}
+		if (conflictPolicy != ConflictPolicyEnum.NONE && !isVersioningSupported()) {
+			logger.warn("session.buffered.conflictPolicy={} is not supported by {}, using NONE",
+					conflictPolicy, cacheDao == null ? null : cacheDao.getClass().getSimpleName());
+			conflictPolicy = ConflictPolicyEnum.NONE;
+		}
+	}
+	
+	private boolean isVersioningSupported() {
+		return cacheDao instanceof VersionedCacheDao && ((VersionedCacheDao) cacheDao).isVersioningSupported();
+	}
+	
+	@PreDestroy
+	public void destroy() {
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+	}
+	
 	public HttpSessionWrapper newSessionInstance(HttpSession session, String token) {
-		HttpSessionWrapper wrapper = (HttpSessionWrapper) 
-				applicationCtx.getBean(sessionBeanName, session, token);
+		if (buffered) {
+			BufferedCacheHttpSession wrapper = new BufferedCacheHttpSession(session, token, cacheDao, conflictPolicy);
+			wrapper.setTouchPolicy(touchPolicy);
+			wrapper.initialize();
+			return wrapper;
+		}
+		DefaultCacheHttpSession wrapper = new DefaultCacheHttpSession(session, token, cacheDao);
+		wrapper.setTouchPolicy(touchPolicy);
+		wrapper.initialize();
 		return wrapper;
 	}
-
-	@Override
-	public void setApplicationContext(ApplicationContext applicationCtx)
-			throws BeansException {
-		this.applicationCtx = applicationCtx;
+	
+	public TouchPolicy getTouchPolicy() {
+		return touchPolicy;
+	}
+	
+	/**
+	 * 创建延迟加载的会话，第一次访问之前不会访问缓存，也不会创建容器的HttpSession
+	 * @param request 原始请求
+	 */
+	public LazyCacheHttpSession newLazySessionInstance(HttpServletRequest request, String token) {
+		return new LazyCacheHttpSession(request, token, this, cacheDao);
 	}
 }
@@ -3,30 +3,19 @@ package com.nameof.web.custom.component.factory;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.springframework.beans.BeansException;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.nameof.web.custom.component.request.CustomHttpServletRequest;
 
 @Component
-public class CustomRequestFactory implements ApplicationContextAware {
+public class CustomRequestFactory {
 
-	private ApplicationContext applicationCtx;
-	
-	private String requestBeanName = "customHttpServletRequest";
-
-	@Override
-	public void setApplicationContext(ApplicationContext applicationCtx)
-			throws BeansException {
-		this.applicationCtx = applicationCtx;
-	}
+	@Autowired
+	private CacheHttpSessionFactory sessionFactory;
 	
 	public CustomHttpServletRequest getWrapperedRequest(HttpServletRequest req, HttpServletResponse resp) {
-		CustomHttpServletRequest wrapper = (CustomHttpServletRequest) 
-				applicationCtx.getBean(requestBeanName, req, resp);
-		return wrapper;
+		return new CustomHttpServletRequest(req, resp, sessionFactory);
 	}
 
 }
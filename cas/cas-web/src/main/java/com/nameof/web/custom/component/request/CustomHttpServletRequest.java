@@ -8,37 +8,35 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.config.ConfigurableBeanFactory;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Component;
 
 import com.nameof.common.constant.Constants;
 import com.nameof.common.utils.CookieUtil;
 import com.nameof.web.custom.component.factory.CacheHttpSessionFactory;
-import com.nameof.web.custom.component.session.HttpSessionWrapper;
 
 /**
  * HttpServletRequest的包装类，用于包装获取和创建HttpSession操作
  * 
  * @author ChengPan
  */
-@Component
-@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class CustomHttpServletRequest extends HttpServletRequestWrapper {  
   
     private HttpSession session;
     
-    private HttpServletResponse response;
+    private final HttpServletResponse response;
     
-    @Autowired
-    private CacheHttpSessionFactory sessionFactory;
+    private final CacheHttpSessionFactory sessionFactory;
     
-    public CustomHttpServletRequest(HttpServletRequest request, HttpServletResponse response) {  
+    public CustomHttpServletRequest(HttpServletRequest request, HttpServletResponse response,
+    		CacheHttpSessionFactory sessionFactory) {  
         super(request);
         this.response = response;
+        this.sessionFactory = sessionFactory;
     }
 
+	/**
+	 * create为false且本次请求尚未获取过会话时返回null，不访问缓存；
+	 * 否则返回延迟加载的会话，第一次访问属性时才从缓存加载，没有token cookie时生成新的token
+	 */
 	@Override
     public HttpSession getSession(boolean create) {  
         if (session != null) {  
@@ -52,9 +50,7 @@ public class CustomHttpServletRequest extends HttpServletRequestWrapper {
         	token = UUID.randomUUID().toString();
         	CookieUtil.addCookie(response, Constants.GLOBAL_SESSION_ID, token);
         }
-        HttpSessionWrapper session = sessionFactory.newSessionInstance(super.getSession(), token);
-        
-        this.session = session;
+        this.session = sessionFactory.newLazySessionInstance((HttpServletRequest) getRequest(), token);
         return session;
     }
     
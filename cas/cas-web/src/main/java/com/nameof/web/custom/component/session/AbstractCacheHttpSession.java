@@ -1,6 +1,9 @@
 package com.nameof.web.custom.component.session;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.http.HttpSessionContext;
@@ -8,8 +11,14 @@ import javax.servlet.http.HttpSessionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.LoadableCacheDao;
+
 /**
- * 由于session为全局共享，creationTime、lastAccessedTime等属性取决于多个webapp的访问
+ * 由于session为全局共享，creationTime、lastAccessedTime等属性取决于多个webapp的访问.<br>
+ * 
+ * 会话的元信息以定长二进制头保存在{@link #CACHE_METADATA_KEY}中，见{@link SessionMetadata}；
+ * 以@开头的属性是会话的内部属性（元信息、版本号等），不出现在属性名的枚举中
  * @author ChengPan
  */
 @SuppressWarnings("deprecation")
@@ -19,15 +28,21 @@ public abstract class AbstractCacheHttpSession extends HttpSessionWrapper {
 	
 	protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-	/** 存储maxInactiveInterval key */
+	/** 存储createTime、lastAccessedTime和maxInactiveInterval的二进制头 key */
+	protected static final String CACHE_METADATA_KEY = "@metadata";
+	
+	/** 旧版本存储maxInactiveInterval key，只用于读取升级前创建的会话 */
 	protected static final String CACHE_INTERVAL_KEY = "@maxInactiveInterval";
 	
-	/** 存储createTime key */
+	/** 旧版本存储createTime key，只用于读取升级前创建的会话 */
 	protected static final String CACHE_CREATE_TIME_KEY = "@sessionCreateTime";
 	
-	/** 存储lastAccessTime key */
+	/** 旧版本存储lastAccessTime key，只用于读取升级前创建的会话 */
 	protected static final String CACHE_LAST_ACCESSED_TIME_KEY = "@lastAccessedTime";
 	
+	protected static final List<String> LEGACY_METADATA_KEYS = Collections.unmodifiableList(
+			Arrays.asList(CACHE_CREATE_TIME_KEY, CACHE_LAST_ACCESSED_TIME_KEY, CACHE_INTERVAL_KEY));
+	
 	/** 默认过期时间为30分钟  */
 	protected static final int DEFAULT_INTERVAL = 60 * 30;
 	
@@ -47,6 +62,8 @@ public abstract class AbstractCacheHttpSession extends HttpSessionWrapper {
      *  TODO 不建议真的直接设置为永不失效的缓存，可以设置一个较长的过期时间
      */
 	private boolean isPersist = false;
+	
+	private TouchPolicy touchPolicy = TouchPolicy.ALWAYS;
     
 	/** session id */
     protected final String token;
@@ -79,6 +96,51 @@ public abstract class AbstractCacheHttpSession extends HttpSessionWrapper {
 		this.isPersist = isPersist;
 	}
 
+	public void setTouchPolicy(TouchPolicy touchPolicy) {
+		this.touchPolicy = touchPolicy;
+	}
+	
+	/**
+	 * 距上次写入缓存的访问时间是否已超过刷新粒度
+	 */
+	protected boolean isTouchDue() {
+		return touchPolicy.isDue(lastAccessedTime, accessedTime, isPersist ? -1 : maxInactiveInterval);
+	}
+
+	/**
+	 * 以@开头的内部属性不出现在属性名的枚举中
+	 */
+	protected static boolean isInternalAttribute(String name) {
+		return name.startsWith("@");
+	}
+	
+	/**
+	 * 本次访问时应写入缓存的元信息头
+	 */
+	byte[] metadataHeader() {
+		return new SessionMetadata(creationTime, accessedTime, isPersist ? -1 : maxInactiveInterval).toBytes();
+	}
+	
+	/**
+	 * 使用从缓存读取的元信息
+	 */
+	void applyMetadata(SessionMetadata metadata) {
+		this.creationTime = metadata.creationTime;
+		this.lastAccessedTime = metadata.lastAccessedTime;
+		this.maxInactiveInterval = metadata.maxInactiveInterval;
+		this.isPersist = metadata.maxInactiveInterval < 0;
+	}
+	
+	/**
+	 * @return 支持一次交互加载会话时返回cacheDao，否则返回null
+	 */
+	protected static LoadableCacheDao loader(CacheDao cacheDao) {
+		if (cacheDao instanceof LoadableCacheDao && ((LoadableCacheDao) cacheDao).isLoadSupported()) {
+			return (LoadableCacheDao) cacheDao;
+		}
+		return null;
+	}
+
 	protected void setLastAccessedTime(long lastAccessedTime) {
 		this.lastAccessedTime = lastAccessedTime;
 	}
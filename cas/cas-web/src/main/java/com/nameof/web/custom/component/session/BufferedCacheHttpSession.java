@@ -1,36 +1,47 @@
 package com.nameof.web.custom.component.session;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Future;
 
-import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpSession;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.config.ConfigurableBeanFactory;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Component;
-
+import com.nameof.cache.CacheBatch;
 import com.nameof.cache.CacheDao;
+import com.nameof.cache.CacheFuture;
+import com.nameof.cache.LoadableCacheDao;
+import com.nameof.cache.SessionSnapshot;
+import com.nameof.cache.VersionedCacheDao;
+import com.nameof.common.enums.ConflictPolicyEnum;
 
 /**
  * {@link cas.custom.component.session.BufferedCacheHttpSession}实例会在构造时
- * 尝试从缓存中加载所有的用户会话数据（包括所有属性和maxInactiveInterval） * 缓存到本地的
+ * 尝试从缓存中加载所有的用户会话数据（包括所有属性和元信息头）
+ * 缓存到本地的
  * {@link cas.custom.component.session.BufferedCacheHttpSession#attributes}中.<br>
  * 
  * 在当前会话期间，每一次对Session中Attribute的操作都是对于{@link cas.custom.component.session.BufferedCacheHttpSession}
  * 对象ConcurrentHashMap属性缓存的attributes操作.<br>
  * 
- * 当前请求完成之后，所有attributes通过{@link cas.filter.CacheSessionFilter}调用
- * {@link cas.custom.component.session.BufferedCacheHttpSession}的commit方法提交到缓存中，同时设置expire过期时间.
+ * 当前请求完成之后，通过{@link cas.filter.CacheSessionFilter}调用
+ * {@link cas.custom.component.session.BufferedCacheHttpSession}的commit方法，仅将本次请求中set或remove过的属性
+ * 连同元信息头、expire过期时间一次性提交到缓存中；没有修改的请求按{@link TouchPolicy}的粒度刷新.<br>
+ * 
+ * 同一会话的并发请求各自只提交自己修改过的属性，互不覆盖；冲突策略不为NONE时，
+ * 本次请求修改过属性的提交会检查会话的版本号（{@link VersionedCacheDao#VERSION_KEY}），
+ * 加载之后有其他请求提交过同一会话时，LAST_WRITER_WINS仍然写入，REJECT放弃本次请求对属性的修改，
+ * 只刷新lastAccessedTime和过期时间.<br>
+ * 
+ * 注意：只有通过setAttribute设置的属性才会被标记为已修改，直接修改getAttribute返回的可变对象需要重新set.
  * 
  * @author ChengPan
  */
-@Component
-@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class BufferedCacheHttpSession extends AbstractCacheHttpSession
 			implements CustomSessionProcessor {
 	
@@ -39,94 +50,166 @@ public class BufferedCacheHttpSession extends AbstractCacheHttpSession
     /** 本地属性集合 */
     private Map<String,Object> attributes = new HashMap<>();
     
-    @Autowired
-    private CacheDao cacheDao;
+    /** 本次请求中新增或修改的属性名 */
+    private Set<String> dirtyAttributes = new HashSet<>();
+    
+    /** 本次请求中移除的属性名 */
+    private Set<String> removedAttributes = new HashSet<>();
+    
+    /** 本次请求是否修改过maxInactiveInterval，或者缓存中的元信息需要重写 */
+    private boolean metadataChanged;
+    
+    /** 缓存中的会话是否是以三个属性分别保存元信息的旧格式 */
+    private boolean legacyMetadata;
+    
+    private final CacheDao cacheDao;
+    
+    private final ConflictPolicyEnum conflictPolicy;
     
-	public BufferedCacheHttpSession(HttpSession session, String token) {
+    /** 加载会话时读取到的版本号 */
+    private long loadedVersion;
+    
+	public BufferedCacheHttpSession(HttpSession session, String token, CacheDao cacheDao) {
+		this(session, token, cacheDao, ConflictPolicyEnum.NONE);
+	}
+	
+	/**
+	 * @param conflictPolicy 不为NONE时cacheDao必须是支持版本号的{@link VersionedCacheDao}
+	 */
+	public BufferedCacheHttpSession(HttpSession session, String token, CacheDao cacheDao,
+			ConflictPolicyEnum conflictPolicy) {
 		super(session, token);
+		this.cacheDao = cacheDao;
+		this.conflictPolicy = conflictPolicy;
 	}
 
 	/**
 	 * 初始化session属性信息
 	 */
 	@Override
-	@PostConstruct
 	public void initialize() {
 		
-		setNew(!cacheDao.exists(token));
-
-		//获取缓存中所有"Attribute"，缓存到本地
-		attributes.putAll(cacheDao.getAllAttribute(token));
-		
-		initCreateTime();
+		LoadableCacheDao loader = loader(cacheDao);
+		if (loader != null) {
+			//exists、所有"Attribute"和新会话createTime的写入由一次脚本调用完成
+			SessionSnapshot snapshot = loader.loadSession(token, null, CACHE_METADATA_KEY,
+					metadataHeader(), getMaxInactiveInterval());
+			setNew(!snapshot.isExisted());
+			attributes.putAll(snapshot.getAttributes());
+		}
+		else {
+			//exists与所有"Attribute"在一次batch中获取，缓存到本地
+			CacheBatch batch = cacheDao.batch();
+			Future<Boolean> exists = batch.exists(token);
+			Future<Map<String, Object>> all = batch.getAllAttribute(token);
+			batch.execute();
+			
+			setNew(!CacheFuture.getResult(exists));
+			
+			attributes.putAll(CacheFuture.getResult(all));
+		}
 		
-		initLastAccessedTime();
+		Number version = (Number) attributes.get(VersionedCacheDao.VERSION_KEY);
+		loadedVersion = version != null ? version.longValue() : 0;
 		
-		initMaxInactiveInterval();
+		initMetadata();
 		
 	}
 	
-	private void initCreateTime() {
-		if (isNew()) {
-			attributes.put(CACHE_CREATE_TIME_KEY, super.getCreationTime());
+	private void initMetadata() {
+		legacyMetadata = SessionMetadata.isLegacy(attributes);
+		SessionMetadata metadata = SessionMetadata.read(attributes);
+		//元信息不作为属性保存在本地
+		attributes.remove(CACHE_METADATA_KEY);
+		attributes.keySet().removeAll(LEGACY_METADATA_KEYS);
+		if (isNew() || metadata == null) {
+			//新的Session；或非新的Session，应当已存在元信息，但避免手动操作缓存将其清空，重新写入
+			//在首次访问情况下，LastAccessedTime=ThisAccessedTime=CreationTime
+			metadataChanged = true;
 			return;
 		}
-		//非新的Session，应当已存在createTime属性，但避免手动操作缓存，将属性清空，造成空指针和createTime丢失
-		Long createTime = (Long) attributes.get(CACHE_CREATE_TIME_KEY);
-		if (createTime == null) {
-			attributes.put(CACHE_CREATE_TIME_KEY, super.getCreationTime());
-		}
-		setCreationTime(createTime != null ? createTime : super.getCreationTime());
+		//从缓存加载的值无需再次提交
+		applyMetadata(metadata);
+		metadataChanged = legacyMetadata;
 	}
-	
-	private void initLastAccessedTime() {
-		Long lat = (Long) attributes.get(CACHE_LAST_ACCESSED_TIME_KEY);
+
+	@Override
+	public void commit() {
+		if (isInvalid()) {
+			//会话已销毁，避免重新写入属性
+			return;
+		}
 		
-		if (lat == null) {
-			//在首次访问情况下，LastAccessedTime为空，则返回当前会话创建时间，即此时LastAccessedTime=ThisAccessedTime=CreationTime
-			setLastAccessedTime(getCreationTime());
+		boolean attributesChanged = !dirtyAttributes.isEmpty() || !removedAttributes.isEmpty();
+		if (!isNew() && !metadataChanged && !attributesChanged && !isTouchDue()) {
+			//会话没有变化，且未到刷新访问时间和过期时间的粒度，不写缓存
 			return;
 		}
-		setLastAccessedTime(lat);
-	}
-	
-	private void initMaxInactiveInterval() {
-		// 从缓存中读取maxInactiveInterval信息
-		Integer originalExpire = (Integer) attributes.get(CACHE_INTERVAL_KEY);
-		if (originalExpire != null) {
-			setMaxInactiveInterval(originalExpire);
+		
+		Map<String, Object> changed = new HashMap<>();
+		for (String name : dirtyAttributes) {
+			changed.put(name, attributes.get(name));
 		}
-	}
-
-	@Override
-	public void commit() {
+		byte[] metadata = metadataHeader();
+		changed.put(CACHE_METADATA_KEY, metadata);
 		
-		storeLastAccessedTime();
+		Set<String> removed = removedAttributes;
+		if (legacyMetadata) {
+			removed = new HashSet<>(removedAttributes);
+			removed.addAll(LEGACY_METADATA_KEYS);
+		}
 		
-		//提交Session属性到缓存中
-		cacheDao.setAllAttributes(token, attributes);
+		int expire = isPersist() ? -1 : getMaxInactiveInterval();
+		if (conflictPolicy != ConflictPolicyEnum.NONE && attributesChanged) {
+			commitVersioned(changed, removed, metadata, expire);
+		}
+		else {
+			//仅提交变化的属性，并设置expire，一次性发送到缓存
+			cacheDao.updateAttributes(token, changed, removed, expire);
+		}
 		
-		//设置expire
-		setExpireToCache();
+		dirtyAttributes.clear();
+		removedAttributes.clear();
+		metadataChanged = false;
+		legacyMetadata = false;
 	}
 
-	private void storeLastAccessedTime() {
-		attributes.put(CACHE_LAST_ACCESSED_TIME_KEY, getAccessedTime());
+	/**
+	 * 检查版本号并提交，被拒绝时只提交会话元信息
+	 */
+	private void commitVersioned(Map<String, Object> changed, Set<String> removed, byte[] metadata, int expire) {
+		boolean force = conflictPolicy == ConflictPolicyEnum.LAST_WRITER_WINS;
+		long version = ((VersionedCacheDao) cacheDao).updateAttributesVersioned(token, changed, removed,
+				expire, loadedVersion, force);
+		if (version < 0) {
+			logger.warn("session {} was modified by a concurrent request, changes rejected: set {}, removed {}",
+					new Object[]{token, dirtyAttributes, removedAttributes});
+			Collection<String> legacy = legacyMetadata ? LEGACY_METADATA_KEYS : null;
+			cacheDao.updateAttributes(token, Collections.<String, Object>singletonMap(CACHE_METADATA_KEY, metadata),
+					legacy, expire);
+			return;
+		}
+		if (version != loadedVersion + 1) {
+			logger.info("session {} was modified by a concurrent request, overwriting: set {}, removed {}",
+					new Object[]{token, dirtyAttributes, removedAttributes});
+		}
+		loadedVersion = version;
+		attributes.put(VersionedCacheDao.VERSION_KEY, version);
 	}
-
+	
 	@Override
     public void setMaxInactiveInterval(int maxInactiveInterval) {
 		super.setMaxInactiveInterval(maxInactiveInterval);
-    	attributes.put(CACHE_INTERVAL_KEY, maxInactiveInterval);
+		metadataChanged = true;
     }
 	
-    private void setExpireToCache() {
-		if (isPersist()) {
-			cacheDao.setPersist(token);
-		}
-		else {
-			cacheDao.setExpire(token, getMaxInactiveInterval());
-		}
+	/**
+	 * 设置本地属性并标记为已修改
+	 */
+	private void putAttribute(String name, Object value) {
+		attributes.put(name, value);
+		dirtyAttributes.add(name);
+		removedAttributes.remove(name);
 	}
 
 	@Override
@@ -136,28 +219,50 @@ public class BufferedCacheHttpSession extends AbstractCacheHttpSession
 
 	@Override
 	protected Enumeration<String> getAttributeNamesInterval() {
-		return new Vector<String>(attributes.keySet()).elements();
+		return new Vector<String>(attributeNames()).elements();
 	}
 
 	@Override
 	protected String[] getValueNamesInterval() {
-		Set<String> keys = attributes.keySet();
+		Set<String> keys = attributeNames();
 		return keys.toArray(new String[keys.size()]);
 	}
+	
+	/**
+	 * 不包括内部属性的属性名
+	 */
+	private Set<String> attributeNames() {
+		Set<String> names = new HashSet<>();
+		for (String name : attributes.keySet()) {
+			if (!isInternalAttribute(name)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
 
 	@Override
 	protected void setAttributeInterval(String name, Object value) {
-		attributes.put(name, value);
+		if (value == null) {
+			//与servlet规范一致，set null等同于remove
+			removeAttributeInterval(name);
+			return;
+		}
+		putAttribute(name, value);
 	}
 
 	@Override
 	protected void removeAttributeInterval(String name) {
 		attributes.remove(name);
+		dirtyAttributes.remove(name);
+		removedAttributes.add(name);
 	}
 
 	@Override
 	protected void invalidateInterval() {
 		attributes.clear();
+		dirtyAttributes.clear();
+		removedAttributes.clear();
 		cacheDao.del(token);
 	}
 }
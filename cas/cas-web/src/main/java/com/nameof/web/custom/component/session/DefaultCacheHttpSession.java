@@ -1,143 +1,190 @@
 package com.nameof.web.custom.component.session;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Future;
 
-import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpSession;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.config.ConfigurableBeanFactory;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Component;
-
+import com.nameof.cache.CacheBatch;
 import com.nameof.cache.CacheDao;
+import com.nameof.cache.CacheFuture;
+import com.nameof.cache.LoadableCacheDao;
+import com.nameof.cache.SessionSnapshot;
 /**
  * 默认情况下，{@link cas.custom.component.session.DefaultCacheHttpSession}实例会在构造时尝试从缓存中
- * 加载maxInactiveInterval信息（如果有的话）.<br>
+ * 加载元信息头（如果有的话），exists与元信息通过一次batch加载；
+ * cacheDao支持时由一次脚本调用加载，并原子地写入新会话的元信息头.<br>
  * 
  * 每一次对Session中Attribute都会直接导致{@link cas.custom.component.session.DefaultCacheHttpSession}
- * 与缓存进行直接交互.<br>
+ * 与缓存进行直接交互；同一请求中读取过的属性会被记住（最多{@link #MAX_MEMOIZED}个），
+ * 重复读取不再访问缓存，本请求set或remove属性时同时更新记住的值.<br>
  * 
  * 当前请求完成之后，通过{@link cas.filter.CacheSessionFilter}调用{@link cas.custom.component.session.DefaultCacheHttpSession}
- * 的commit方法将expire（maxInactiveInterval）提交到缓存中.<br>
+ * 的commit方法将元信息头和expire（maxInactiveInterval）提交到缓存中，maxInactiveInterval没有修改时按{@link TouchPolicy}的粒度提交.<br>
  * 
  * @author ChengPan
  */
-@Component
-@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class DefaultCacheHttpSession extends AbstractCacheHttpSession implements
 		CustomSessionProcessor {
 
 	private static final long serialVersionUID = 3977740308601865675L;
 
-	@Autowired
-	private CacheDao cacheDao;
+	/** 元信息头，以及升级前分别保存的元信息属性 */
+	private static final List<String> METADATA_KEYS = Arrays.asList(CACHE_METADATA_KEY,
+			CACHE_CREATE_TIME_KEY, CACHE_LAST_ACCESSED_TIME_KEY, CACHE_INTERVAL_KEY);
+
+	/** 一个请求中最多记住的属性数 */
+	static final int MAX_MEMOIZED = 32;
+	
+	/** 记住的属性值不存在 */
+	private static final Object ABSENT = new Object();
+
+	private final CacheDao cacheDao;
+	
+	/** 本次请求中读取或写入过的属性值，会话只在一个请求内使用，不需要同步 */
+	private final Map<String, Object> memo = new HashMap<>();
 	
-	public DefaultCacheHttpSession(HttpSession session, String token) {
+	/** 本次请求是否修改过maxInactiveInterval，或者缓存中的元信息需要重写 */
+	private boolean metadataChanged;
+	
+	/** 缓存中的会话是否是以三个属性分别保存元信息的旧格式 */
+	private boolean legacyMetadata;
+	
+	public DefaultCacheHttpSession(HttpSession session, String token, CacheDao cacheDao) {
 		super(session, token);
+		this.cacheDao = cacheDao;
 	}
 
 	@Override
-	@PostConstruct
 	public void initialize() {
 		
-		setNew(!cacheDao.exists(token));
-		
-		initCreateTime();
-		
-		initLastAccessedTime();
-
-		initMaxInactiveInterval();
-	}
-
-	private void initCreateTime() {
-		if (isNew()) {
-			cacheDao.setAttribute(token, CACHE_CREATE_TIME_KEY, super.getCreationTime());
-			return;
+		Map<String, Object> metadata = new HashMap<>();
+		LoadableCacheDao loader = loader(cacheDao);
+		if (loader != null) {
+			SessionSnapshot snapshot = loader.loadSession(token, METADATA_KEYS, CACHE_METADATA_KEY,
+					metadataHeader(), getMaxInactiveInterval());
+			setNew(!snapshot.isExisted());
+			metadata.putAll(snapshot.getAttributes());
 		}
-		//非新的Session，应当已存在createTime属性，但避免手动操作缓存，将属性清空，造成空指针和createTime丢失
-		Long createTime = (Long) cacheDao.getAttribute(token, CACHE_CREATE_TIME_KEY);
-		if (createTime == null) {
-			cacheDao.setAttribute(token, CACHE_CREATE_TIME_KEY, super.getCreationTime());
+		else {
+			CacheBatch batch = cacheDao.batch();
+			Future<Boolean> exists = batch.exists(token);
+			Map<String, Future<Object>> values = new HashMap<>();
+			for (String name : METADATA_KEYS) {
+				values.put(name, batch.getAttribute(token, name));
+			}
+			batch.execute();
+			
+			setNew(!CacheFuture.getResult(exists));
+			for (Map.Entry<String, Future<Object>> entry : values.entrySet()) {
+				metadata.put(entry.getKey(), CacheFuture.getResult(entry.getValue()));
+			}
 		}
-		setCreationTime(createTime != null ? createTime : super.getCreationTime());
+		
+		initMetadata(metadata);
 	}
-	
 
-	private void initLastAccessedTime() {
-		Long lat = (Long) cacheDao.getAttribute(token, CACHE_LAST_ACCESSED_TIME_KEY);
-		if (lat == null) {
-			//在首次访问情况下，LastAccessedTime为空，则返回当前会话创建时间，即此时LastAccessedTime=ThisAccessedTime=CreationTime
-			setLastAccessedTime(getCreationTime());
+	private void initMetadata(Map<String, Object> values) {
+		legacyMetadata = SessionMetadata.isLegacy(values);
+		SessionMetadata metadata = SessionMetadata.read(values);
+		if (isNew() || metadata == null) {
+			//新的Session；或非新的Session，应当已存在元信息，但避免手动操作缓存将其清空，在请求结束时重新写入
+			//在首次访问情况下，LastAccessedTime=ThisAccessedTime=CreationTime
+			metadataChanged = true;
 			return;
 		}
-		setLastAccessedTime(lat);
-	}
-
-	private void initMaxInactiveInterval() {
-		// 从缓存中读取maxInactiveInterval信息
-		Integer originalExpire = (Integer) cacheDao.getAttribute(token, CACHE_INTERVAL_KEY);
-		if (originalExpire != null) {
-			setMaxInactiveInterval(originalExpire);
-		}
+		//从缓存加载的值无需再次写回
+		applyMetadata(metadata);
+		metadataChanged = legacyMetadata;
 	}
 
 	@Override
 	public void setMaxInactiveInterval(int maxInactiveInterval) {
 		super.setMaxInactiveInterval(maxInactiveInterval);
-		cacheDao.setAttribute(token, CACHE_INTERVAL_KEY, maxInactiveInterval);
+		metadataChanged = true;
 	}
 
 	@Override
 	public void commit() {
-		storeLastAccessedTime();
-		setExpireToCache();
-	}
-
-	private void storeLastAccessedTime() {
-		cacheDao.setAttribute(token, CACHE_LAST_ACCESSED_TIME_KEY, getAccessedTime());
-	}
-	
-	private void setExpireToCache() {
-		if (isPersist()) {
-			cacheDao.setPersist(token);
+		if (isInvalid()) {
+			return;
 		}
-		else {
-			cacheDao.setExpire(token, getMaxInactiveInterval());
+		if (!isNew() && !metadataChanged && !isTouchDue()) {
+			return;
 		}
+		//元信息头与expire一次性提交，旧格式的元信息属性同时删除
+		cacheDao.updateAttributes(token,
+				Collections.<String, Object>singletonMap(CACHE_METADATA_KEY, metadataHeader()),
+				legacyMetadata ? LEGACY_METADATA_KEYS : null, isPersist() ? -1 : getMaxInactiveInterval());
+		metadataChanged = false;
+		legacyMetadata = false;
 	}
 
 	@Override
 	protected Enumeration<String> getAttributeNamesInterval() {
-		Collection<String> keys = cacheDao.getAttributeKeys(token);
-		return new Vector<String>(keys).elements();
+		return new Vector<String>(attributeNames()).elements();
 	}
 
 	@Override
 	protected String[] getValueNamesInterval() {
-		Collection<String> keys = cacheDao.getAttributeKeys(token);
+		Collection<String> keys = attributeNames();
 		return keys.toArray(new String[keys.size()]);
 	}
+	
+	/**
+	 * 不包括内部属性的属性名
+	 */
+	private Collection<String> attributeNames() {
+		Collection<String> names = new ArrayList<>();
+		for (String name : cacheDao.getAttributeKeys(token)) {
+			if (!isInternalAttribute(name)) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
 
 	@Override
 	protected void setAttributeInterval(String name, Object value) {
 		cacheDao.setAttribute(token, name, value);
+		memoize(name, value);
 	}
 
 	@Override
 	protected void removeAttributeInterval(String name) {
 		cacheDao.removeAttribute(token, name);
+		memoize(name, null);
 	}
 
 	@Override
 	protected void invalidateInterval() {
+		memo.clear();
 		cacheDao.del(token);
 	}
 
 	@Override
 	protected Object getAttributeInterval(String name) {
-		return cacheDao.getAttribute(token, name);
+		Object value = memo.get(name);
+		if (value != null) {
+			return value == ABSENT ? null : value;
+		}
+		value = cacheDao.getAttribute(token, name);
+		memoize(name, value);
+		return value;
+	}
+	
+	private void memoize(String name, Object value) {
+		if (memo.size() >= MAX_MEMOIZED && !memo.containsKey(name)) {
+			return;
+		}
+		memo.put(name, value == null ? ABSENT : value);
 	}
 }
\ No newline at end of file
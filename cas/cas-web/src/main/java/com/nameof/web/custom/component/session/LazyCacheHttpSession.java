@@ -0,0 +1,242 @@
+package com.nameof.web.custom.component.session;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSessionContext;
+
+import com.nameof.cache.CacheBatch;
+import com.nameof.cache.CacheDao;
+import com.nameof.cache.CacheFuture;
+import com.nameof.web.custom.component.factory.CacheHttpSessionFactory;
+
+/**
+ * 延迟加载的会话代理，创建时不访问缓存.<br>
+ *
+ * 只读取属性时逐个从缓存中读取被访问的属性（redis中为HGET），第一次读取时在同一批命令中附带读取
+ * 元信息头，用于判断会话是否存在以及请求结束时按{@link TouchPolicy}刷新过期时间；
+ * 写入属性、枚举属性名、读取会话元信息或销毁会话时才通过{@link CacheHttpSessionFactory}
+ * 创建session.bean.name对应的完整会话，之后的所有操作都交给完整会话处理.<br>
+ *
+ * 没有访问过属性的请求（如匿名用户、静态资源）在整个请求期间不会访问缓存
+ * @author ChengPan
+ */
+@SuppressWarnings("deprecation")
+public class LazyCacheHttpSession extends HttpSessionWrapper implements CustomSessionProcessor {
+
+	private static final long serialVersionUID = 6312885215947460126L;
+
+	private final String token;
+
+	private final transient HttpServletRequest request;
+
+	private final transient CacheHttpSessionFactory sessionFactory;
+
+	private final transient CacheDao cacheDao;
+
+	/** 完整的会话，加载之前为null */
+	private HttpSessionWrapper delegate;
+
+	/** 已从缓存读取过的属性，值为null表示属性不存在 */
+	private final Map<String, Object> loaded = new HashMap<>();
+
+	/** 是否已读取过会话的元信息 */
+	private boolean metadataLoaded;
+
+	/** 缓存中的会话元信息，为null表示会话不存在 */
+	private SessionMetadata metadata;
+	
+	/** 缓存中的会话是否是以三个属性分别保存元信息的旧格式 */
+	private boolean legacyMetadata;
+	
+	private final long accessedTime = System.currentTimeMillis();
+
+	/**
+	 * @param request 原始请求，加载完整会话时用于获取容器的HttpSession
+	 */
+	public LazyCacheHttpSession(HttpServletRequest request, String token,
+			CacheHttpSessionFactory sessionFactory, CacheDao cacheDao) {
+		super(null);
+		this.request = request;
+		this.token = token;
+		this.sessionFactory = sessionFactory;
+		this.cacheDao = cacheDao;
+	}
+
+	/**
+	 * 完整会话是否已经加载
+	 */
+	public boolean isMaterialized() {
+		return delegate != null;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		if (delegate != null) {
+			return delegate.getAttribute(name);
+		}
+		if (loaded.containsKey(name)) {
+			return loaded.get(name);
+		}
+		Object value;
+		if (metadataLoaded) {
+			value = cacheDao.getAttribute(token, name);
+		}
+		else {
+			value = loadWithMetadata(name);
+		}
+		loaded.put(name, value);
+		return value;
+	}
+
+	/**
+	 * 读取属性的同时读取会话元信息，一次交互完成
+	 */
+	private Object loadWithMetadata(String name) {
+		CacheBatch batch = cacheDao.batch();
+		Future<Object> value = batch.getAttribute(token, name);
+		Future<Object> header = batch.getAttribute(token, AbstractCacheHttpSession.CACHE_METADATA_KEY);
+		//升级前创建的会话以三个属性分别保存元信息
+		Map<String, Future<Object>> legacy = new HashMap<>();
+		for (String key : AbstractCacheHttpSession.LEGACY_METADATA_KEYS) {
+			legacy.put(key, batch.getAttribute(token, key));
+		}
+		batch.execute();
+		metadataLoaded = true;
+		Map<String, Object> values = new HashMap<>();
+		values.put(AbstractCacheHttpSession.CACHE_METADATA_KEY, CacheFuture.getResult(header));
+		for (Map.Entry<String, Future<Object>> entry : legacy.entrySet()) {
+			values.put(entry.getKey(), CacheFuture.getResult(entry.getValue()));
+		}
+		legacyMetadata = SessionMetadata.isLegacy(values);
+		metadata = SessionMetadata.read(values);
+		return CacheFuture.getResult(value);
+	}
+
+	/**
+	 * 加载完整的会话，之后的所有操作都交给它处理
+	 */
+	private HttpSessionWrapper materialize() {
+		if (delegate == null) {
+			delegate = sessionFactory.newSessionInstance(request.getSession(), token);
+			loaded.clear();
+		}
+		return delegate;
+	}
+
+	@Override
+	public void initialize() {
+		//延迟到第一次访问时加载
+	}
+
+	/**
+	 * 加载过完整会话时提交完整会话；只读取过属性且会话存在时，按刷新粒度刷新lastAccessedTime和过期时间；
+	 * 没有访问过属性时什么也不做
+	 */
+	@Override
+	public void commit() {
+		if (delegate != null) {
+			if (delegate instanceof CustomSessionProcessor) {
+				((CustomSessionProcessor) delegate).commit();
+			}
+			return;
+		}
+		if (metadata == null) {
+			return;
+		}
+		int interval = metadata.maxInactiveInterval;
+		if (!legacyMetadata
+				&& !sessionFactory.getTouchPolicy().isDue(metadata.lastAccessedTime, accessedTime, interval)) {
+			return;
+		}
+		byte[] header = new SessionMetadata(metadata.creationTime, accessedTime, interval).toBytes();
+		cacheDao.updateAttributes(token,
+				Collections.<String, Object>singletonMap(AbstractCacheHttpSession.CACHE_METADATA_KEY, header),
+				legacyMetadata ? AbstractCacheHttpSession.LEGACY_METADATA_KEYS : null, interval);
+	}
+
+	@Override
+	public String getId() {
+		return token;
+	}
+
+	@Override
+	public Object getValue(String name) {
+		return getAttribute(name);
+	}
+
+	@Override
+	public long getCreationTime() {
+		return materialize().getCreationTime();
+	}
+
+	@Override
+	public long getLastAccessedTime() {
+		return materialize().getLastAccessedTime();
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return request.getServletContext();
+	}
+
+	@Override
+	public void setMaxInactiveInterval(int interval) {
+		materialize().setMaxInactiveInterval(interval);
+	}
+
+	@Override
+	public int getMaxInactiveInterval() {
+		return materialize().getMaxInactiveInterval();
+	}
+
+	@Override
+	public HttpSessionContext getSessionContext() {
+		return materialize().getSessionContext();
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return materialize().getAttributeNames();
+	}
+
+	@Override
+	public String[] getValueNames() {
+		return materialize().getValueNames();
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		materialize().setAttribute(name, value);
+	}
+
+	@Override
+	public void putValue(String name, Object value) {
+		setAttribute(name, value);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		materialize().removeAttribute(name);
+	}
+
+	@Override
+	public void removeValue(String name) {
+		removeAttribute(name);
+	}
+
+	@Override
+	public void invalidate() {
+		materialize().invalidate();
+	}
+
+	@Override
+	public boolean isNew() {
+		return materialize().isNew();
+	}
+}
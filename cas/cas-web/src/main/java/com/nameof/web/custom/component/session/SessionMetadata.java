@@ -0,0 +1,82 @@
+package com.nameof.web.custom.component.session;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * 会话元信息，在缓存中以定长的二进制头保存在{@link AbstractCacheHttpSession#CACHE_METADATA_KEY}属性中：
+ * createTime（8字节）、lastAccessedTime（8字节）、maxInactiveInterval（4字节），大端序，共20字节.<br>
+ *
+ * 读写元信息只需要读写一个字节数组，不需要反序列化对象；升级之前创建的会话仍以三个属性分别保存，
+ * 读取时兼容，下一次写入元信息时删除
+ * @author ChengPan
+ */
+final class SessionMetadata {
+
+	static final int LENGTH = 20;
+
+	final long creationTime;
+
+	final long lastAccessedTime;
+
+	/** 小于0表示永不过期 */
+	final int maxInactiveInterval;
+
+	SessionMetadata(long creationTime, long lastAccessedTime, int maxInactiveInterval) {
+		this.creationTime = creationTime;
+		this.lastAccessedTime = lastAccessedTime;
+		this.maxInactiveInterval = maxInactiveInterval;
+	}
+
+	byte[] toBytes() {
+		return ByteBuffer.allocate(LENGTH)
+				.putLong(creationTime)
+				.putLong(lastAccessedTime)
+				.putInt(maxInactiveInterval)
+				.array();
+	}
+
+	/**
+	 * @return 不是元信息头时返回null
+	 */
+	static SessionMetadata fromBytes(Object value) {
+		if (!(value instanceof byte[]) || ((byte[]) value).length != LENGTH) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap((byte[]) value);
+		return new SessionMetadata(buffer.getLong(), buffer.getLong(), buffer.getInt());
+	}
+
+	/**
+	 * 从读取到的属性中解析元信息，优先使用元信息头，没有时读取旧版本分别保存的属性
+	 * @return 都不存在时返回null
+	 */
+	static SessionMetadata read(Map<String, Object> attributes) {
+		SessionMetadata metadata = fromBytes(attributes.get(AbstractCacheHttpSession.CACHE_METADATA_KEY));
+		if (metadata != null || !isLegacy(attributes)) {
+			return metadata;
+		}
+		Long createTime = (Long) attributes.get(AbstractCacheHttpSession.CACHE_CREATE_TIME_KEY);
+		Long lastAccessedTime = (Long) attributes.get(AbstractCacheHttpSession.CACHE_LAST_ACCESSED_TIME_KEY);
+		Integer interval = (Integer) attributes.get(AbstractCacheHttpSession.CACHE_INTERVAL_KEY);
+		long creationTime = createTime != null ? createTime : System.currentTimeMillis();
+		return new SessionMetadata(creationTime,
+				lastAccessedTime != null ? lastAccessedTime : creationTime,
+				interval != null ? interval : AbstractCacheHttpSession.DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * 是否是升级之前创建、以三个属性分别保存元信息的会话
+	 */
+	static boolean isLegacy(Map<String, Object> attributes) {
+		if (attributes.get(AbstractCacheHttpSession.CACHE_METADATA_KEY) != null) {
+			return false;
+		}
+		for (String name : AbstractCacheHttpSession.LEGACY_METADATA_KEYS) {
+			if (attributes.get(name) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,78 @@
+package com.nameof.web.custom.component.session;
+
+/**
+ * 会话访问时间和过期时间的刷新粒度.<br>
+ *
+ * 请求没有修改会话时，只有距上次写入缓存的访问时间（lastAccessedTime）超过粒度才重新写入lastAccessedTime
+ * 并刷新过期时间，其余请求不写缓存；粒度可以是秒数（如"60"），也可以是maxInactiveInterval的百分比（如"10%"），
+ * 为0时每个请求都刷新.<br>
+ *
+ * 粒度最多为maxInactiveInterval的一半，持续访问的会话不会因为没有刷新而过期；
+ * getLastAccessedTime()返回的是上次写入的访问时间，与实际的误差不超过粒度
+ * @author ChengPan
+ */
+public final class TouchPolicy {
+
+	/** 每个请求都刷新 */
+	public static final TouchPolicy ALWAYS = new TouchPolicy(0, 0);
+
+	private final int seconds;
+
+	private final int percent;
+
+	private TouchPolicy(int seconds, int percent) {
+		this.seconds = seconds;
+		this.percent = percent;
+	}
+
+	/**
+	 * @param granularity 秒数或以%结尾的百分比，为空表示每个请求都刷新
+	 */
+	public static TouchPolicy parse(String granularity) {
+		String value = granularity == null ? "" : granularity.trim();
+		if (value.isEmpty() || "0".equals(value)) {
+			return ALWAYS;
+		}
+		try {
+			if (value.endsWith("%")) {
+				int percent = Integer.parseInt(value.substring(0, value.length() - 1).trim());
+				if (percent >= 0 && percent <= 100) {
+					return new TouchPolicy(0, percent);
+				}
+			}
+			else {
+				int seconds = Integer.parseInt(value);
+				if (seconds >= 0) {
+					return new TouchPolicy(seconds, 0);
+				}
+			}
+		} catch (NumberFormatException e) {
+			//统一在下面抛出
+		}
+		throw new IllegalArgumentException("invalid session touch granularity: " + granularity);
+	}
+
+	/**
+	 * 是否需要刷新访问时间和过期时间
+	 * @param lastAccessedTime 上次写入缓存的访问时间
+	 * @param accessedTime 本次访问时间
+	 * @param maxInactiveInterval 过期时间，单位为秒，小于0表示永不过期
+	 */
+	public boolean isDue(long lastAccessedTime, long accessedTime, int maxInactiveInterval) {
+		long threshold;
+		if (maxInactiveInterval < 0) {
+			//永不过期的会话只需要维护访问时间，百分比没有基准，按每次都刷新处理
+			threshold = percent > 0 ? 0 : seconds;
+		}
+		else {
+			threshold = percent > 0 ? maxInactiveInterval * percent / 100 : seconds;
+			threshold = Math.min(threshold, maxInactiveInterval / 2);
+		}
+		return accessedTime - lastAccessedTime >= threshold * 1000;
+	}
+
+	@Override
+	public String toString() {
+		return percent > 0 ? percent + "%" : seconds + "s";
+	}
+}
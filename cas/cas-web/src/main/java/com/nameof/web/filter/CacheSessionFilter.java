@@ -13,7 +13,6 @@ import javax.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.nameof.common.utils.RedisUtil;
 import com.nameof.web.filter.strategy.SessionFilterStrategy;
 
 /**
@@ -31,10 +30,6 @@ public class CacheSessionFilter implements Filter {
 			FilterChain chain) throws IOException, ServletException {
 		HttpServletRequest req = (HttpServletRequest)request;  
 	    HttpServletResponse resp = (HttpServletResponse)response; 
-		try {
-			filterStrategy.doFilter(req, resp, chain);
-		} finally {
-			RedisUtil.returnResource();//release redis
-		}
+		filterStrategy.doFilter(req, resp, chain);
 	}
 }
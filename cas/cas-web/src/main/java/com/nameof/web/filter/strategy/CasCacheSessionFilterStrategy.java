@@ -30,7 +30,8 @@ import com.nameof.web.filter.CacheSessionFilter;
  */
 @Component
 @Profile(value = {SessionAccessor.EHCACHE, SessionAccessor.MEMCACHED
-		, SessionAccessor.REDIS, SessionAccessor.REDIS_TEMPLATE, SessionAccessor.REDISSON})
+		, SessionAccessor.REDIS, SessionAccessor.REDIS_TEMPLATE, SessionAccessor.REDISSON
+		, SessionAccessor.LETTUCE, SessionAccessor.OFFHEAP})
 public class CasCacheSessionFilterStrategy implements SessionFilterStrategy {
 
 	private static final Logger LOG = LoggerFactory.getLogger(CacheSessionFilter.class);
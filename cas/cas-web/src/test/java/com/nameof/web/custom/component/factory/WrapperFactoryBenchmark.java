@@ -0,0 +1,132 @@
+package com.nameof.web.custom.component.factory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.AnnotationConfigUtils;
+import org.springframework.context.support.GenericApplicationContext;
+
+import com.nameof.cache.CacheDao;
+import com.nameof.common.enums.ConflictPolicyEnum;
+import com.nameof.web.custom.component.request.CustomHttpServletRequest;
+import com.nameof.web.custom.component.session.BufferedCacheHttpSession;
+
+/**
+ * 每个请求创建会话和请求包装类的开销：以prototype bean通过applicationCtx.getBean(name, args)创建（原来的方式），
+ * 与{@link CacheHttpSessionFactory}、{@link CustomRequestFactory}现在直接调用构造方法的对比.<br>
+ *
+ * 只比较创建本身，不包括会话的initialize（访问缓存）；ApplicationContext注册了注解处理器，
+ * 与web应用中getBean经过的BeanPostProcessor相同.<br>
+ *
+ * 运行：以测试classpath执行本类的main方法
+ * @author ChengPan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapperFactoryBenchmark {
+
+	private static final String SESSION_BEAN = "bufferedCacheHttpSession";
+
+	private static final String REQUEST_BEAN = "customHttpServletRequest";
+
+	private static final String TOKEN = "0123456789abcdef0123456789abcdef";
+
+	private GenericApplicationContext applicationCtx;
+
+	private HttpSession session;
+
+	private HttpServletRequest request;
+
+	private HttpServletResponse response;
+
+	private CacheDao cacheDao;
+
+	private CacheHttpSessionFactory sessionFactory;
+
+	@Setup
+	public void setUp() {
+		applicationCtx = new GenericApplicationContext();
+		AnnotationConfigUtils.registerAnnotationConfigProcessors(applicationCtx);
+		applicationCtx.registerBeanDefinition(SESSION_BEAN, prototype(BufferedCacheHttpSession.class));
+		applicationCtx.registerBeanDefinition(REQUEST_BEAN, prototype(CustomHttpServletRequest.class));
+		applicationCtx.refresh();
+		session = stub(HttpSession.class);
+		request = stub(HttpServletRequest.class);
+		response = stub(HttpServletResponse.class);
+		cacheDao = stub(CacheDao.class);
+		sessionFactory = new CacheHttpSessionFactory();
+	}
+
+	@TearDown
+	public void tearDown() {
+		applicationCtx.close();
+	}
+
+	@Benchmark
+	public Object sessionByGetBean() {
+		return applicationCtx.getBean(SESSION_BEAN, session, TOKEN, cacheDao, ConflictPolicyEnum.NONE);
+	}
+
+	@Benchmark
+	public Object sessionByConstructor() {
+		return new BufferedCacheHttpSession(session, TOKEN, cacheDao, ConflictPolicyEnum.NONE);
+	}
+
+	@Benchmark
+	public Object requestByGetBean() {
+		return applicationCtx.getBean(REQUEST_BEAN, request, response, sessionFactory);
+	}
+
+	@Benchmark
+	public Object requestByConstructor() {
+		return new CustomHttpServletRequest(request, response, sessionFactory);
+	}
+
+	private static BeanDefinition prototype(Class<?> beanClass) {
+		RootBeanDefinition definition = new RootBeanDefinition(beanClass);
+		definition.setScope(BeanDefinition.SCOPE_PROTOTYPE);
+		return definition;
+	}
+
+	/**
+	 * 创建时不会调用的接口，所有方法返回null
+	 */
+	private static <T> T stub(Class<T> type) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		}));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(WrapperFactoryBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,117 @@
+package com.nameof.web.custom.component.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.nameof.cache.impl.EhCacheDao;
+
+/**
+ * {@link DefaultCacheHttpSession}在一个请求中记住读取过的属性：不存在的属性同样被记住，
+ * 记住的属性数达到{@link DefaultCacheHttpSession#MAX_MEMOIZED}之后其余属性每次都读取缓存
+ * @author ChengPan
+ */
+public class DefaultCacheHttpSessionTest {
+
+	private static final String TOKEN = "token";
+
+	private CacheManager cacheManager;
+
+	private CountingCacheDao cacheDao;
+
+	private DefaultCacheHttpSession session;
+
+	@Before
+	public void setUp() {
+		cacheManager = new CacheManager(new Configuration().name("DefaultCacheHttpSessionTest"));
+		Cache cache = new Cache(new CacheConfiguration("sessions", 0));
+		cacheManager.addCache(cache);
+		cacheDao = new CountingCacheDao(cache);
+		session = new DefaultCacheHttpSession(null, TOKEN, cacheDao);
+	}
+
+	@After
+	public void tearDown() {
+		cacheManager.shutdown();
+	}
+
+	@Test
+	public void remembersAnAbsentAttribute() {
+		assertNull(session.getAttribute("missing"));
+		assertNull(session.getAttribute("missing"));
+
+		assertEquals(1, cacheDao.reads("missing"));
+	}
+
+	@Test
+	public void remembersWrittenAndRemovedAttributes() {
+		session.setAttribute("user", "tom");
+		assertEquals("tom", session.getAttribute("user"));
+		session.removeAttribute("user");
+		assertNull(session.getAttribute("user"));
+
+		assertEquals(0, cacheDao.reads("user"));
+	}
+
+	@Test
+	public void readsTheCacheOnceTheMemoIsFull() {
+		for (int i = 0; i < DefaultCacheHttpSession.MAX_MEMOIZED; i++) {
+			session.getAttribute("name" + i);
+		}
+		cacheDao.setAttribute(TOKEN, "extra", "value");
+		assertEquals("value", session.getAttribute("extra"));
+		assertEquals("value", session.getAttribute("extra"));
+		assertEquals(2, cacheDao.reads("extra"));
+
+		//已记住的属性不受影响，写入时仍然更新
+		session.setAttribute("name0", "updated");
+		assertEquals("updated", session.getAttribute("name0"));
+		assertEquals(1, cacheDao.reads("name0"));
+	}
+
+	@Test
+	public void writesBeyondTheLimitAreNotRemembered() {
+		for (int i = 0; i < DefaultCacheHttpSession.MAX_MEMOIZED; i++) {
+			session.getAttribute("name" + i);
+		}
+		session.setAttribute("extra", "value");
+		assertEquals("value", session.getAttribute("extra"));
+
+		assertEquals(1, cacheDao.reads("extra"));
+	}
+
+	/**
+	 * 记录每个属性读取缓存的次数
+	 */
+	private static class CountingCacheDao extends EhCacheDao {
+
+		private final Map<String, Integer> reads = new HashMap<>();
+
+		CountingCacheDao(Cache cache) {
+			super(cache);
+		}
+
+		@Override
+		public Object getAttribute(String key, String name) {
+			Integer count = reads.get(name);
+			reads.put(name, count == null ? 1 : count + 1);
+			return super.getAttribute(key, name);
+		}
+
+		int reads(String name) {
+			Integer count = reads.get(name);
+			return count == null ? 0 : count;
+		}
+	}
+}
@@ -9,25 +9,40 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import com.nameof.sso.client.web.session.LogedSessionManager;
 
 /**
- * 接收CAS的注销请求
+ * 接收CAS的注销请求，一个请求中可以包含多个token参数（批量注销）.<br>
+ *
+ * 响应中带有{@link #BATCH_HEADER}响应头，告知CAS本站点支持批量注销，CAS之后可以把多个用户的注销合并为一个请求
  * @author ChengPan
  */
 public class LogoutFilter implements Filter {
+	
+	/** 支持批量注销的响应头，与CAS一致 */
+	public static final String BATCH_HEADER = "X-Logout-Batch";
 
 	@Override
 	public void doFilter(ServletRequest req, ServletResponse resp,
 			FilterChain arg2) throws IOException, ServletException {
 		HttpServletRequest request = (HttpServletRequest) req;
-		String token = request.getParameter("token");//实际上就是cas的全局session Id
-		HttpSession session = LogedSessionManager.get(token);
-		if (session != null) {
-			session.invalidate();
+		String[] tokens = request.getParameterValues("token");//实际上就是cas的全局session Id
+		if (tokens != null) {
+			for (String token : tokens) {
+				HttpSession session = LogedSessionManager.get(token);
+				if (session != null) {
+					try {
+						session.invalidate();
+					} catch (IllegalStateException e) {
+						//已经失效，继续处理其他令牌
+					}
+				}
+			}
 		}
+		((HttpServletResponse) resp).setHeader(BATCH_HEADER, "1");
 	}
 	
 	@Override